@@ -0,0 +1,203 @@
+package projects;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import projects.dao.DbConnection;
+import projects.dao.Session;
+import projects.entity.Project;
+import projects.service.ProjectService;
+
+/**
+ * This class loads data for the console menu in the background while the user
+ * is reading or typing. The project list is fetched when the menu is shown,
+ * and the details of recently listed and selected projects are fetched as soon
+ * as the list arrives, so selecting a project usually finds it already loaded.
+ *
+ * Prefetched data is a hint, not a cache: it is dropped after every write made
+ * through the menu and after a short time to live, and anything not prefetched
+ * is fetched on demand as before.
+ *
+ * Background fetches run in the session of the thread that started them, so a
+ * fetch started after the menu wrote reads the write from the primary instead
+ * of a lagging replica.
+ */
+class ProjectPrefetcher {
+	private static final long TIME_TO_LIVE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	private final ProjectService projectService;
+	private final int maxWarmProjects;
+	private final ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+		Thread thread = new Thread(runnable, "project-prefetch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Prefetch<List<Project>> projectList;
+	private final Map<Integer, Prefetch<Project>> projectDetails = new LinkedHashMap<>();
+	private final LinkedHashSet<Integer> recentlySelected = new LinkedHashSet<>();
+
+	/**
+	 * @param projectService  The service used for all fetches.
+	 * @param maxWarmProjects The most project graphs kept warm at once.
+	 */
+	ProjectPrefetcher(ProjectService projectService, int maxWarmProjects) {
+		this.projectService = projectService;
+		this.maxWarmProjects = maxWarmProjects;
+	}
+
+	/**
+	 * Start fetching the project list unless a fresh one is already loading or
+	 * loaded. When it arrives, start warming project details.
+	 */
+	synchronized void prefetchProjectList() {
+		if (isFresh(projectList)) {
+			return;
+		}
+
+		Session session = DbConnection.currentSession();
+		CompletableFuture<List<Project>> future = fetchAsync(session, projectService::fetchAllProjects);
+		projectList = new Prefetch<>(future);
+		future.thenAccept(projects -> warmDetails(projects, session));
+	}
+
+	/**
+	 * @return The project list, waiting for the prefetch if one is running or
+	 *         fetching it now if not.
+	 */
+	List<Project> projectList() {
+		Prefetch<List<Project>> prefetch;
+
+		synchronized (this) {
+			prefetch = isFresh(projectList) ? projectList : null;
+			projectList = null;
+		}
+
+		List<Project> projects = Objects.isNull(prefetch) ? null : join(prefetch);
+		return Objects.isNull(projects) ? projectService.fetchAllProjects() : projects;
+	}
+
+	/**
+	 * Return a project with its details, using a prefetched copy if there is one.
+	 * The copy is handed out once, so the caller owns it.
+	 *
+	 * @param projectId The project ID.
+	 * @return The project.
+	 */
+	Project project(Integer projectId) {
+		Prefetch<Project> prefetch;
+
+		synchronized (this) {
+			recentlySelected.remove(projectId);
+			recentlySelected.add(projectId);
+
+			if (recentlySelected.size() > maxWarmProjects) {
+				Iterator<Integer> oldest = recentlySelected.iterator();
+				oldest.next();
+				oldest.remove();
+			}
+
+			prefetch = projectDetails.remove(projectId);
+		}
+
+		Project project = isFresh(prefetch) ? join(prefetch) : null;
+		return Objects.isNull(project) ? projectService.fetchProjectById(projectId) : project;
+	}
+
+	/**
+	 * Fetch a project in the background, for example after it was changed.
+	 *
+	 * @param projectId The project ID.
+	 * @return The pending project.
+	 */
+	CompletableFuture<Project> refresh(Integer projectId) {
+		return fetchAsync(DbConnection.currentSession(), () -> projectService.fetchProjectById(projectId));
+	}
+
+	/**
+	 * Drop everything prefetched. Call this after every write, since the
+	 * prefetched data may predate it.
+	 */
+	synchronized void invalidate() {
+		projectList = null;
+		projectDetails.clear();
+	}
+
+	/*
+	 * Warm the details of recently selected projects first, then of projects in
+	 * list order, up to the limit.
+	 */
+	private synchronized void warmDetails(List<Project> projects, Session session) {
+		LinkedHashSet<Integer> listed = new LinkedHashSet<>();
+		projects.forEach(project -> listed.add(project.getProjectId()));
+
+		List<Integer> candidates = new ArrayList<>();
+
+		for (Integer projectId : recentlySelected) {
+			if (listed.contains(projectId)) {
+				candidates.add(0, projectId);
+			}
+		}
+
+		for (Integer projectId : listed) {
+			if (candidates.size() >= maxWarmProjects) {
+				break;
+			}
+
+			if (!candidates.contains(projectId)) {
+				candidates.add(projectId);
+			}
+		}
+
+		projectDetails.keySet().retainAll(listed);
+
+		for (Integer projectId : candidates) {
+			if (projectDetails.size() >= maxWarmProjects) {
+				break;
+			}
+
+			if (!isFresh(projectDetails.get(projectId))) {
+				projectDetails.put(projectId,
+						new Prefetch<>(fetchAsync(session, () -> projectService.fetchProjectById(projectId))));
+			}
+		}
+	}
+
+	/* Run a fetch on the executor in the given session. */
+	private <T> CompletableFuture<T> fetchAsync(Session session, Supplier<T> fetch) {
+		return CompletableFuture.supplyAsync(() -> DbConnection.callInSession(session, fetch), executor);
+	}
+
+	private static boolean isFresh(Prefetch<?> prefetch) {
+		return Objects.nonNull(prefetch) && System.nanoTime() - prefetch.startNanos < TIME_TO_LIVE_NANOS;
+	}
+
+	/* A failed prefetch is ignored; the caller fetches again and sees the error itself. */
+	private static <T> T join(Prefetch<T> prefetch) {
+		try {
+			return prefetch.future.join();
+		} catch (CompletionException e) {
+			return null;
+		}
+	}
+
+	private static class Prefetch<T> {
+		private final CompletableFuture<T> future;
+		private final long startNanos = System.nanoTime();
+
+		Prefetch(CompletableFuture<T> future) {
+			this.future = future;
+		}
+	}
+}
@@ -1,11 +1,17 @@
 package projects;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import projects.entity.Project;
+import projects.entity.Step;
+import projects.entity.WorkLogEntry;
 import projects.exception.DbException;
+import projects.http.ProjectHttpServer;
 import projects.service.ProjectService;
 
 /**
@@ -21,6 +27,11 @@ public class ProjectsApp {
 	private ProjectService projectService = new ProjectService();
 	private Project curProject = null;
 
+	// Loads the project list and likely selections while the user is typing, and
+	// holds the background refresh of the current project after an update
+	private ProjectPrefetcher prefetcher = new ProjectPrefetcher(projectService, 8);
+	private CompletableFuture<Project> curProjectRefresh = null;
+
 	// @formatter:off
 	// List of operations that the user can select from the menu
 	private List<String> operations = List.of(
@@ -28,19 +39,35 @@ public class ProjectsApp {
 			"2) List projects",
 			"3) Select a project",
 			"4) Update project details",
-			"5) Delete a project"
+			"5) Delete a project",
+			"6) Log work on the current project"
 	);
 	// @formatter:on
 
 	/**
 	 * Entry point for Java application. Initializes the ProjectsApp and starts
-	 * processing user selections.
+	 * processing user selections. If the first argument is {@code --http}, the
+	 * embedded HTTP server is started instead, on the port given as the second
+	 * argument.
+	 * 
+	 * Either way, the schema is migrated first, and the application stops if that
+	 * fails.
 	 * 
-	 * @param args Unused.
+	 * @param args Optionally {@code --http [port]}.
+	 * @throws IOException Thrown if the HTTP server cannot bind its port.
+	 * @throws DbException Thrown if the schema cannot be migrated.
 	 */
 
-	public static void main(String[] args) {
-		new ProjectsApp().processUserSelections();
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("--http")) {
+			ProjectHttpServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		ProjectsApp app = new ProjectsApp();
+
+		app.projectService.migrateSchema();
+		app.processUserSelections();
 	}
 
 	/**
@@ -82,6 +109,10 @@ public class ProjectsApp {
 					deleteProject();
 					break;
 
+				case 6:
+					logWork();
+					break;
+
 				default:
 					System.out.println("\n" + selection + " is not a valid selection. Try again.");
 					break;
@@ -100,11 +131,18 @@ public class ProjectsApp {
 
 		Integer projectId = getIntInput("Enter the ID of the project to delete");
 
-		projectService.deleteProject(projectId);
+		/* If the current project is being deleted, only delete the version we saw. */
+		Integer version = Objects.nonNull(curProject) && curProject.getProjectId().equals(projectId)
+				? curProject.getVersion()
+				: null;
+
+		projectService.deleteProject(projectId, version);
+		prefetcher.invalidate();
 		System.out.println("Project " + projectId + " was deleted successfully.");
 
 		if (Objects.nonNull(curProject) && curProject.getProjectId().equals(projectId)) {
 			curProject = null;
+			curProjectRefresh = null;
 		}
 	}
 
@@ -120,25 +158,108 @@ public class ProjectsApp {
 		BigDecimal estimatedHours = getDecimalInput(
 				"Enter the estimated hours [" + curProject.getEstimatedHours() + "]");
 
-		BigDecimal actualHours = getDecimalInput("Enter the actual hours [" + curProject.getActualHours() + "]");
-
 		Integer difficulty = getIntInput("Enter the project difficulty (1-5) [" + curProject.getDifficulty() + "]");
 
 		String notes = getStringInput("Enter the project notes[" + curProject.getNotes() + "]");
 
 		Project project = new Project();
 
+		/* Copy the current project and mark it clean so only the edits are saved. */
 		project.setProjectId(curProject.getProjectId());
-		project.setProjectName(Objects.isNull(projectName) ? curProject.getProjectName() : projectName);
+		project.setProjectName(curProject.getProjectName());
+		project.setEstimatedHours(curProject.getEstimatedHours());
+		project.setActualHours(curProject.getActualHours());
+		project.setDifficulty(curProject.getDifficulty());
+		project.setNotes(curProject.getNotes());
+		project.setVersion(curProject.getVersion());
+		project.clearDirtyColumns();
+
+		if (Objects.nonNull(projectName)) {
+			project.setProjectName(projectName);
+		}
+
+		if (Objects.nonNull(estimatedHours)) {
+			project.setEstimatedHours(estimatedHours);
+		}
+
+		if (Objects.nonNull(difficulty)) {
+			project.setDifficulty(difficulty);
+		}
 
-		project.setEstimatedHours(Objects.isNull(estimatedHours) ? curProject.getEstimatedHours() : estimatedHours);
-		project.setActualHours(Objects.isNull(actualHours) ? curProject.getActualHours() : actualHours);
-		project.setDifficulty(Objects.isNull(difficulty) ? curProject.getDifficulty() : difficulty);
-		project.setNotes(Objects.isNull(notes) ? curProject.getNotes() : notes);
+		if (Objects.nonNull(notes)) {
+			project.setNotes(notes);
+		}
+
+		if (!project.isDirty()) {
+			System.out.println("Nothing was changed.");
+			return;
+		}
 
 		projectService.modifyProjectDetails(project);
+		prefetcher.invalidate();
+
+		/*
+		 * Show the edits at once and reload the project in the background. The
+		 * reloaded copy replaces this one when the menu is next shown.
+		 */
+		curProject.setProjectName(project.getProjectName());
+		curProject.setEstimatedHours(project.getEstimatedHours());
+		curProject.setDifficulty(project.getDifficulty());
+		curProject.setNotes(project.getNotes());
+		curProject.setVersion(project.getVersion());
+		curProject.clearDirtyColumns();
+
+		curProjectRefresh = prefetcher.refresh(curProject.getProjectId());
+	}
 
-		curProject = projectService.fetchProjectById(curProject.getProjectId());
+	// This method records time spent on the current project. The hours are added
+	// to its actual hours, which can only change this way once the project
+	// exists. If no project is currently selected, it notifies the user to select
+	// a project first.
+	private void logWork() {
+		if (Objects.isNull(curProject)) {
+			System.out.println("\nError: You are not working with a project. Please select a project first.");
+			return;
+		}
+
+		BigDecimal hours = getDecimalInput("Enter the hours worked (negative to correct an earlier entry)");
+		WorkLogEntry entry = projectService.logWork(curProject.getProjectId(), hours);
+		prefetcher.invalidate();
+		System.out.println("Logged " + entry.getHours() + " hours on project " + entry.getProjectId() + ".");
+
+		/* Show the new total at once and reload the project in the background. */
+		BigDecimal actualHours = Objects.isNull(curProject.getActualHours()) ? BigDecimal.ZERO
+				: curProject.getActualHours();
+		curProject.setActualHours(actualHours.add(entry.getHours()));
+		curProject.clearDirtyColumns();
+
+		curProjectRefresh = prefetcher.refresh(curProject.getProjectId());
+	}
+
+	/*
+	 * Swap in the reloaded current project if the background refresh has finished.
+	 * If it failed or is still running, or it read a version older than the one
+	 * we wrote, the locally updated copy is kept.
+	 */
+	private void applyCurProjectRefresh() {
+		if (Objects.isNull(curProjectRefresh) || !curProjectRefresh.isDone()) {
+			return;
+		}
+
+		CompletableFuture<Project> refresh = curProjectRefresh;
+		curProjectRefresh = null;
+
+		if (refresh.isCompletedExceptionally()) {
+			return;
+		}
+
+		Project refreshed = refresh.join();
+
+		if (Objects.nonNull(curProject) && Objects.nonNull(refreshed)
+				&& curProject.getProjectId().equals(refreshed.getProjectId())
+				&& refreshed.getVersion() >= curProject.getVersion()) {
+			curProject = refreshed;
+		}
 	}
 
 	// This method allows the user to select a project by its ID. If an invalid ID
@@ -149,9 +270,10 @@ public class ProjectsApp {
 
 		/* Unselect the current project. */
 		curProject = null;
+		curProjectRefresh = null;
 
 		/* This will throw an exception if an invalid project ID is entered. */
-		curProject = projectService.fetchProjectById(projectId);
+		curProject = prefetcher.project(projectId);
 
 		if (curProject == null) {
 			System.out.println("Invalid project ID selected.");
@@ -160,7 +282,7 @@ public class ProjectsApp {
 	
 	// This method lists all the projects in the project service.
 	private void listProjects() {
-		List<Project> projects = projectService.fetchAllProjects();
+		List<Project> projects = prefetcher.projectList();
 
 		System.out.println("\nProjects:");
 
@@ -189,6 +311,7 @@ public class ProjectsApp {
 		project.setNotes(notes);
 
 		Project dbProject = projectService.addProject(project);
+		prefetcher.invalidate();
 		System.out.println("You have successfully create project: " + dbProject);
 
 	}
@@ -233,6 +356,10 @@ public class ProjectsApp {
 	 * @return The menu selection as an int or -1 if nothing is selected.
 	 */
 	private int getUserSelection() {
+		/* Start loading the list before the user asks for it. */
+		prefetcher.prefetchProjectList();
+		applyCurProjectRefresh();
+
 		printOperations();
 
 		Integer input = getIntInput("Enter a menu selection");
@@ -291,6 +418,9 @@ public class ProjectsApp {
 		if (Objects.isNull(curProject)) {
 			System.out.println("\nYou are not working with a project.");
 		} else {
+			/* The menu shows the notes and steps in full, so decompress them. */
+			curProject.getNotes();
+			curProject.getSteps().forEach(Step::getStepText);
 			System.out.println("\nYou are working with project: " + curProject);
 		}
 	}
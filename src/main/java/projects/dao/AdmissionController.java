@@ -0,0 +1,220 @@
+package projects.dao;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import projects.exception.OverloadException;
+
+/**
+ * This class is a bulkhead in front of the database. At most {@code limit}
+ * operations run at once. Up to {@code maxQueue} more may wait, each for no
+ * longer than its deadline. Anything beyond that fails immediately with an
+ * {@link OverloadException} instead of opening another connection.
+ *
+ * With adaptive limits, the limit follows observed operation latency using
+ * additive increase and multiplicative decrease: after each window of
+ * completions it grows by one if the average latency stayed under the target
+ * while the limit was in use, and shrinks by a tenth if it did not.
+ */
+public class AdmissionController {
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition permitAvailable = lock.newCondition();
+
+	private final int maxQueue;
+	private final long maxWaitNanos;
+	private final boolean adaptive;
+	private final int minLimit;
+	private final int maxLimit;
+	private final long targetLatencyNanos;
+
+	private int limit;
+	private int inFlight;
+	private int waiting;
+
+	/* Statistics for the current adaptive window. */
+	private int windowCompletions;
+	private long windowLatencyNanos;
+	private boolean windowSaturated;
+
+	/**
+	 * Create a controller with a fixed limit.
+	 *
+	 * @param limit       The maximum number of concurrent operations.
+	 * @param maxQueue    The maximum number of operations waiting for a permit.
+	 * @param maxWaitTime The longest an operation waits for a permit.
+	 * @param timeUnit    The unit of the wait time.
+	 */
+	public AdmissionController(int limit, int maxQueue, long maxWaitTime, TimeUnit timeUnit) {
+		this(limit, maxQueue, maxWaitTime, timeUnit, false, limit, limit, 0);
+	}
+
+	/**
+	 * Create a controller whose limit adapts to observed latency.
+	 *
+	 * @param initialLimit     The starting number of concurrent operations.
+	 * @param maxQueue         The maximum number of operations waiting for a
+	 *                         permit.
+	 * @param maxWaitTime      The longest an operation waits for a permit.
+	 * @param timeUnit         The unit of the wait time and target latency.
+	 * @param adaptive         Whether the limit adapts.
+	 * @param minLimit         The lowest the limit may fall.
+	 * @param maxLimit         The highest the limit may rise.
+	 * @param targetLatency    The average latency above which the limit shrinks.
+	 */
+	public AdmissionController(int initialLimit, int maxQueue, long maxWaitTime, TimeUnit timeUnit, boolean adaptive,
+			int minLimit, int maxLimit, long targetLatency) {
+		this.limit = initialLimit;
+		this.maxQueue = maxQueue;
+		this.maxWaitNanos = timeUnit.toNanos(maxWaitTime);
+		this.adaptive = adaptive;
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = maxLimit;
+		this.targetLatencyNanos = timeUnit.toNanos(targetLatency);
+	}
+
+	/**
+	 * Build a controller from system properties. The defaults allow 32 concurrent
+	 * operations and 64 waiters for up to one second, without adaptation.
+	 *
+	 * <pre>
+	 * projects.db.maxConcurrent    initial limit
+	 * projects.db.maxQueue         waiters
+	 * projects.db.maxWaitMillis    longest wait
+	 * projects.db.adaptive         true to adapt the limit
+	 * projects.db.targetMillis     target average latency when adaptive
+	 * </pre>
+	 *
+	 * @return The controller.
+	 */
+	public static AdmissionController fromSystemProperties() {
+		int limit = Integer.getInteger("projects.db.maxConcurrent", 32);
+
+		return new AdmissionController(limit, Integer.getInteger("projects.db.maxQueue", 64),
+				Integer.getInteger("projects.db.maxWaitMillis", 1000), TimeUnit.MILLISECONDS,
+				Boolean.getBoolean("projects.db.adaptive"), 1, limit * 4,
+				Integer.getInteger("projects.db.targetMillis", 50));
+	}
+
+	/**
+	 * Wait for a permit to run one database operation.
+	 *
+	 * @return The time the permit was granted, which must be passed to
+	 *         {@link #release(long)}.
+	 * @throws OverloadException Thrown if the queue is full or no permit became
+	 *                           available within the wait time.
+	 */
+	public long acquire() {
+		return acquire(System.nanoTime() + maxWaitNanos);
+	}
+
+	/**
+	 * Wait for a permit until the given deadline or the configured wait time,
+	 * whichever comes first.
+	 *
+	 * @param deadlineNanos The {@link System#nanoTime()} after which to give up.
+	 * @return The time the permit was granted.
+	 * @throws OverloadException Thrown if the queue is full or no permit became
+	 *                           available in time.
+	 */
+	public long acquire(long deadlineNanos) {
+		long now = System.nanoTime();
+		long remaining = Math.min(deadlineNanos - now, maxWaitNanos);
+
+		lock.lock();
+
+		try {
+			if (inFlight < limit && waiting == 0) {
+				inFlight++;
+				return now;
+			}
+
+			if (waiting >= maxQueue) {
+				throw new OverloadException("The database is overloaded: " + inFlight + " operations running and "
+						+ waiting + " waiting.");
+			}
+
+			waiting++;
+			windowSaturated = true;
+
+			try {
+				while (inFlight >= limit) {
+					if (remaining <= 0) {
+						throw new OverloadException("Timed out waiting to access the database.");
+					}
+
+					remaining = permitAvailable.awaitNanos(remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OverloadException("Interrupted while waiting to access the database.");
+			} finally {
+				waiting--;
+			}
+
+			inFlight++;
+			return System.nanoTime();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return a permit and record how long the operation held it.
+	 *
+	 * @param acquiredNanos The value returned by {@code acquire}.
+	 */
+	public void release(long acquiredNanos) {
+		long latency = System.nanoTime() - acquiredNanos;
+
+		lock.lock();
+
+		try {
+			inFlight--;
+
+			if (adaptive) {
+				adapt(latency);
+			}
+
+			permitAvailable.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The current concurrency limit.
+	 */
+	public int getLimit() {
+		lock.lock();
+
+		try {
+			return limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void adapt(long latency) {
+		windowCompletions++;
+		windowLatencyNanos += latency;
+		windowSaturated |= inFlight + 1 >= limit;
+
+		if (windowCompletions < limit) {
+			return;
+		}
+
+		long average = windowLatencyNanos / windowCompletions;
+
+		if (average > targetLatencyNanos) {
+			limit = Math.max(minLimit, limit - Math.max(1, limit / 10));
+		} else if (windowSaturated) {
+			limit = Math.min(maxLimit, limit + 1);
+			permitAvailable.signal();
+		}
+
+		windowCompletions = 0;
+		windowLatencyNanos = 0;
+		windowSaturated = false;
+	}
+}
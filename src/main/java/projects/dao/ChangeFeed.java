@@ -0,0 +1,222 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import projects.entity.ProjectChange;
+import projects.exception.DbException;
+import provided.util.DaoBase;
+
+/**
+ * This class reads and prunes the change outbox that {@link ProjectDao} writes
+ * in the same transaction as every mutation. Consumers such as caches and
+ * search indexes poll it for the records after the last sequence number they
+ * processed, instead of re-reading every project.
+ *
+ * Sequence numbers come from AUTO_INCREMENT, so they are assigned when a record
+ * is written, not when its transaction commits. A slow transaction can commit a
+ * lower number after a higher one is visible. To avoid skipping it, records
+ * younger than the settle time are held back; the settle time should be longer
+ * than the longest write transaction.
+ *
+ * With shards, each shard has its own outbox and its own sequence.
+ */
+public class ChangeFeed extends DaoBase implements AutoCloseable {
+	private static final String CHANGE_TABLE = "project_change";
+
+	// The most records deleted per pruning transaction.
+	private static final int PRUNE_CHUNK_SIZE = 1000;
+
+	private final ShardRouter shards;
+	private volatile Duration settleTime = Duration.ofSeconds(5);
+
+	private ScheduledExecutorService scheduler;
+	private final AtomicLong pruned = new AtomicLong();
+
+	ChangeFeed(ShardRouter shards) {
+		this.shards = shards;
+	}
+
+	/**
+	 * @return The number of separate feeds, one per shard.
+	 */
+	public int shardCount() {
+		return Objects.isNull(shards) ? 1 : shards.shardCount();
+	}
+
+	/**
+	 * Change how long new records are held back before consumers see them.
+	 *
+	 * @param settleTime The settle time.
+	 */
+	public void setSettleTime(Duration settleTime) {
+		this.settleTime = settleTime;
+	}
+
+	/**
+	 * Read the next records from the feed of an unsharded database, or of the
+	 * first shard.
+	 *
+	 * @param afterSequence The last sequence number already processed, or 0 to
+	 *                      start from the oldest record kept.
+	 * @param limit         The most records to return.
+	 * @return The records in sequence order. An empty list means the consumer has
+	 *         caught up.
+	 * @throws DbException Thrown if an error occurs reading the records.
+	 */
+	public List<ProjectChange> fetchChanges(long afterSequence, int limit) {
+		return fetchChanges(0, afterSequence, limit);
+	}
+
+	/**
+	 * Read the next records from one shard's feed.
+	 *
+	 * @param shard         The zero-based shard index.
+	 * @param afterSequence The last sequence number already processed on that
+	 *                      shard.
+	 * @param limit         The most records to return.
+	 * @return The records in sequence order.
+	 * @throws DbException Thrown if an error occurs reading the records.
+	 */
+	public List<ProjectChange> fetchChanges(int shard, long afterSequence, int limit) {
+		// @formatter:off
+		String sql = ""
+				+ "SELECT * FROM " + CHANGE_TABLE + " "
+				+ "WHERE change_seq > ? "
+				+ "AND changed_at <= CURRENT_TIMESTAMP(3) - INTERVAL ? MICROSECOND "
+				+ "ORDER BY change_seq "
+				+ "LIMIT ?";
+		// @formatter:on
+
+		try (Connection conn = connect(shard)) {
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				/* DaoBase does not bind longs. */
+				stmt.setLong(1, afterSequence);
+				stmt.setLong(2, settleTime.toNanos() / 1000);
+				setParameter(stmt, 3, limit, Integer.class);
+
+				try (ResultSet rs = stmt.executeQuery()) {
+					List<ProjectChange> changes = new ArrayList<>();
+
+					while (rs.next()) {
+						changes.add(extract(rs, ProjectChange.class));
+					}
+
+					return changes;
+				}
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Delete records older than the retention period from every shard, a chunk
+	 * per transaction. Consumers that fall further behind than the retention
+	 * period must rebuild from the tables.
+	 *
+	 * @param retention How long records are kept.
+	 * @return The number of records deleted.
+	 * @throws DbException Thrown if a chunk fails. Earlier chunks stay deleted.
+	 */
+	public long prune(Duration retention) {
+		// @formatter:off
+		String sql = ""
+				+ "DELETE FROM " + CHANGE_TABLE + " "
+				+ "WHERE changed_at < CURRENT_TIMESTAMP(3) - INTERVAL ? SECOND "
+				+ "ORDER BY changed_at, change_seq "
+				+ "LIMIT ?";
+		// @formatter:on
+
+		long total = 0;
+
+		for (int shard = 0; shard < shardCount(); shard++) {
+			int deleted;
+
+			do {
+				try (Connection conn = connect(shard)) {
+					startTransaction(conn);
+
+					try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+						stmt.setLong(1, retention.toSeconds());
+						setParameter(stmt, 2, PRUNE_CHUNK_SIZE, Integer.class);
+
+						deleted = stmt.executeUpdate();
+						commitTransaction(conn);
+					} catch (Exception e) {
+						rollbackTransaction(conn);
+						throw e instanceof DbException ? (DbException) e : new DbException(e);
+					}
+				} catch (SQLException e) {
+					throw new DbException(e);
+				}
+
+				total += deleted;
+				pruned.addAndGet(deleted);
+			} while (deleted == PRUNE_CHUNK_SIZE);
+		}
+
+		return total;
+	}
+
+	/**
+	 * Prune in the background at a fixed interval.
+	 *
+	 * @param retention How long records are kept.
+	 * @param interval  The delay between pruning runs.
+	 */
+	public synchronized void startPruning(Duration retention, Duration interval) {
+		if (Objects.nonNull(scheduler)) {
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "change-feed-pruner");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long intervalMillis = Math.max(1, interval.toMillis());
+
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				prune(retention);
+			} catch (RuntimeException e) {
+				System.out.println("Unable to prune the change feed: " + e);
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return The number of records pruned since this feed was created.
+	 */
+	public long getPruned() {
+		return pruned.get();
+	}
+
+	/**
+	 * Stop background pruning.
+	 */
+	@Override
+	public synchronized void close() {
+		if (Objects.nonNull(scheduler)) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+	}
+
+	/* The feed is read from the primary, which has every committed record. */
+	private Connection connect(int shard) {
+		return Objects.isNull(shards) ? DbConnection.getConnection() : shards.getShardConnection(shard, Deadline.NONE);
+	}
+}
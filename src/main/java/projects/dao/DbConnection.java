@@ -1,16 +1,41 @@
 package projects.dao;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+import projects.exception.OverloadException;
 
 /**
  * This class returns a new connection when you call the static
- * {@link #getConnection()} method. To use this class, the schema must exist in
- * the MySQL database. It is best to minimize the allowed access by creating a
- * user with privileges granted to a single schema. If you use the root user,
- * you open yourself to errors in schemas that you didn't intend.
+ * {@link #getConnection()} method. Read-only operations can call
+ * {@link #getReadConnection()} instead, which routes to a read replica when
+ * replicas are configured. Every connection holds a permit from an
+ * {@link AdmissionController} until it is closed. To use this class, the
+ * schema must exist in the MySQL database. It can be empty: the applications
+ * create and upgrade the tables at startup from the scripts in migrations/
+ * (see {@link SchemaMigrator}). It is best to minimize the allowed
+ * access by creating a user with privileges granted to a single schema. If you
+ * use the root user, you open yourself to errors in schemas that you didn't
+ * intend.
  * 
  * @author Promineo
  *
@@ -31,27 +56,408 @@ public class DbConnection {
 	/* This is the port number. The default port for MySQL is 3306. */
 	private static String USER = "projects";
 
+	/* JDBC URLs of the read replicas. Reads go to the primary when this is empty. */
+	private static volatile List<Replica> replicas = parseReplicas(System.getProperty("projects.replicas"));
+	/* How replicas are chosen for reads. */
+	private static volatile ReplicaSelection selection = ReplicaSelection.ROUND_ROBIN;
+	/* After a session writes, its reads go to the primary for this long. */
+	private static volatile long readYourWritesMillis = 1000;
+	/* JDBC URL of the primary. When null, it is built from the constants above. */
+	private static volatile String primaryUri;
+
+	/* Limits how many database operations run and wait at once. */
+	private static volatile AdmissionController admission = AdmissionController.fromSystemProperties();
+
+	/* When set, sees the SQL and parameters of every prepared statement run. */
+	private static volatile BiConsumer<String, List<Object>> statementObserver;
+
+	private static final AtomicInteger nextReplica = new AtomicInteger();
+	/* The session each thread works for. A thread starts in a session of its own. */
+	private static final ThreadLocal<Session> currentSession = ThreadLocal.withInitial(Session::new);
+
 	/**
+	 * The strategies for choosing a read replica.
+	 */
+	public enum ReplicaSelection {
+		/* Each read goes to the next replica in turn. */
+		ROUND_ROBIN,
+		/* Each read goes to the replica with the fewest open read connections. */
+		LEAST_LOADED
+	}
+
+	/**
+	 * Configure read/write splitting. This is mostly useful for tests that point
+	 * the application at local database instances standing in for the primary and
+	 * the replicas. Replicas can also be given as a comma-separated list of JDBC
+	 * URLs in the system property {@code projects.replicas}.
 	 * 
-	 * @return Returns a Connection object if successful. Otherwise, the method
-	 *         throws an exception.
-	 * @throws DbException Thrown if an error occurs establishing a connection with
-	 *                     the MySQL server and schema.
+	 * @param primaryUrl           The JDBC URL of the primary, or {@code null} to
+	 *                             use the built-in host and schema.
+	 * @param replicaUrls          The JDBC URLs of the read replicas. May be
+	 *                             empty.
+	 * @param replicaSelection     How a replica is chosen for each read.
+	 * @param readYourWritesWindow How long after a write the same session keeps
+	 *                             reading from the primary.
 	 */
-	public static Connection getConnection() {
-		/* This is the JDBC connection string. */
-		String uri = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s", HOST, PORT, SCHEMA, USER, PASSWORD);
+	public static void configure(String primaryUrl, List<String> replicaUrls, ReplicaSelection replicaSelection,
+			Duration readYourWritesWindow) {
+		primaryUri = primaryUrl;
+		replicas = replicaUrls.stream().map(Replica::new).collect(Collectors.toUnmodifiableList());
+		selection = replicaSelection;
+		readYourWritesMillis = readYourWritesWindow.toMillis();
+	}
+
+	/**
+	 * @return The schema the applications use when no primary URL is configured.
+	 */
+	public static String getDefaultSchema() {
+		return SCHEMA;
+	}
+
+	/**
+	 * @return How long after a write a session keeps reading from the primary.
+	 */
+	public static Duration getReadYourWritesWindow() {
+		return Duration.ofMillis(readYourWritesMillis);
+	}
+
+	/**
+	 * @return The session the calling thread works for.
+	 */
+	public static Session currentSession() {
+		return currentSession.get();
+	}
+
+	/**
+	 * Run a call in a session, so its writes are recorded on that session and its
+	 * reads see them, whichever thread runs it. The thread's previous session is
+	 * restored afterwards.
+	 *
+	 * @param <T>     The result type.
+	 * @param session The session to work for.
+	 * @param call    The call.
+	 * @return The call's result.
+	 */
+	public static <T> T callInSession(Session session, Supplier<T> call) {
+		Session previous = currentSession.get();
+		currentSession.set(session);
+
+		try {
+			return call.get();
+		} finally {
+			currentSession.set(previous);
+		}
+	}
+
+	/**
+	 * Record that the current session has just committed a write. Its reads are
+	 * routed to the primary for the read-your-writes window so it does not see
+	 * stale data from a lagging replica.
+	 */
+	public static void recordWrite() {
+		currentSession().recordWrite();
+	}
+
+	/**
+	 * Return a connection for a read-only operation. It goes to a replica unless
+	 * there are none or the current session wrote recently. If the chosen replica
+	 * cannot be reached, the read falls back to the primary.
+	 * 
+	 * @return A connection to a replica or to the primary.
+	 * @throws DbException Thrown if no connection can be established.
+	 */
+	public static Connection getReadConnection() {
+		return getReadConnection(Deadline.NONE);
+	}
+
+	/**
+	 * Return a connection for a read-only operation, waiting for a database
+	 * permit no longer than the deadline allows.
+	 * 
+	 * @param deadline The caller's deadline.
+	 * @return A connection to a replica or to the primary.
+	 * @throws DbException Thrown if no connection can be established.
+	 */
+	public static Connection getReadConnection(Deadline deadline) {
+		List<Replica> candidates = replicas;
+
+		if (candidates.isEmpty() || wroteRecently()) {
+			return getConnection(deadline);
+		}
+
+		Replica replica = chooseReplica(candidates);
+
+		try {
+			return replica.connect(deadline);
+		} catch (SQLException e) {
+			/* The URI is not printed; it may hold a password. */
+			System.out.println("Unable to get a read connection to a replica. Using the primary.");
+			return getConnection(deadline);
+		}
+	}
+
+	/**
+	 * @param nanoTime A {@link System#nanoTime()} value.
+	 * @return {@code true} if the current session committed a write after that
+	 *         time.
+	 */
+	public static boolean wroteSince(long nanoTime) {
+		return currentSession().wroteSince(nanoTime);
+	}
+
+	/**
+	 * @return {@code true} if the current session wrote within the
+	 *         read-your-writes window, so its reads go to the primary.
+	 */
+	public static boolean wroteRecently() {
+		return currentSession().wroteRecently();
+	}
+
+	private static Replica chooseReplica(List<Replica> candidates) {
+		if (selection == ReplicaSelection.LEAST_LOADED) {
+			Replica best = candidates.get(0);
+
+			for (Replica replica : candidates) {
+				if (replica.inFlight.get() < best.inFlight.get()) {
+					best = replica;
+				}
+			}
+
+			return best;
+		}
+
+		return candidates.get(Math.floorMod(nextReplica.getAndIncrement(), candidates.size()));
+	}
+
+	private static List<Replica> parseReplicas(String urls) {
+		if (Objects.isNull(urls) || urls.isBlank()) {
+			return List.of();
+		}
+
+		return Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).map(Replica::new)
+				.collect(Collectors.toUnmodifiableList());
+	}
+
+	/*
+	 * A read replica and the number of connections currently open to it. The
+	 * count is decremented when the connection returned to the DAO is closed.
+	 */
+	private static class Replica {
+		private final String uri;
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		Replica(String uri) {
+			this.uri = uri;
+		}
+
+		Connection connect(Deadline deadline) throws SQLException {
+			inFlight.incrementAndGet();
+
+			try {
+				return open(uri, inFlight::decrementAndGet, deadline);
+			} catch (SQLException | RuntimeException e) {
+				inFlight.decrementAndGet();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Replace the admission controller that limits concurrent database
+	 * operations.
+	 * 
+	 * @param controller The new controller.
+	 */
+	public static void configureAdmission(AdmissionController controller) {
+		admission = controller;
+	}
+
+	/**
+	 * @return The admission controller that limits concurrent database
+	 *         operations.
+	 */
+	public static AdmissionController getAdmission() {
+		return admission;
+	}
+
+	/*
+	 * Open a connection once the admission controller grants a permit. The permit
+	 * is held until the connection is closed, so it covers the whole DAO operation
+	 * and its latency feeds the adaptive limit. The optional callback also runs on
+	 * close. A bounded deadline also limits how long to wait for the permit, and
+	 * every statement of the connection still running when it passes is
+	 * cancelled.
+	 */
+	static Connection open(String uri, Runnable onClose, Deadline deadline) throws SQLException {
+		AdmissionController controller = admission;
+		long permit;
+
+		deadline.check("opening a database connection");
+
+		try {
+			permit = deadline.isBounded() ? controller.acquire(deadline.nanoTime()) : controller.acquire();
+		} catch (OverloadException e) {
+			if (deadline.isExpired()) {
+				throw new DeadlineExceededException("Deadline exceeded waiting to access the database.", e);
+			}
+
+			throw e;
+		}
+
+		Connection conn;
 
 		try {
 			/*
 			 * DriverManager is the JDBC class that manages drivers and connections.
 			 */
-			Connection conn = DriverManager.getConnection(uri);
-			System.out.println("Connection to schema '" + SCHEMA + "' is successful.");
-			return conn;
+			conn = DriverManager.getConnection(uri);
+		} catch (SQLException | RuntimeException e) {
+			controller.release(permit);
+			throw e;
+		}
+
+		AtomicBoolean closed = new AtomicBoolean();
+		List<Statement> statements = new CopyOnWriteArrayList<>();
+		ScheduledFuture<?> canceller = deadline.atExpiry(() -> cancel(statements));
+
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+						controller.release(permit);
+
+						if (Objects.nonNull(canceller)) {
+							canceller.cancel(false);
+						}
+
+						if (Objects.nonNull(onClose)) {
+							onClose.run();
+						}
+					}
+
+					Object result;
+
+					try {
+						result = method.invoke(conn, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+
+					if (Objects.nonNull(canceller) && result instanceof Statement) {
+						statements.add((Statement) result);
+					}
+
+					BiConsumer<String, List<Object>> observer = statementObserver;
+
+					if (Objects.nonNull(observer) && result instanceof PreparedStatement) {
+						return observe((PreparedStatement) result, (String) args[0], observer);
+					}
+
+					return result;
+				});
+	}
+
+	/* Cancel the statements that are still running. The others ignore it. */
+	private static void cancel(List<Statement> statements) {
+		for (Statement stmt : statements) {
+			try {
+				stmt.cancel();
+			} catch (SQLException e) {
+				/* The statement was closed, or the server could not be reached to stop it. */
+			}
+		}
+	}
+
+	/*
+	 * Pass the SQL and parameters of every prepared statement to the observer as
+	 * it is executed or added to a batch. QueryPlanTest uses this to collect the
+	 * queries the DAOs really run. Statements prepared before this is called are
+	 * not seen. Pass null to stop.
+	 */
+	static void observeStatements(BiConsumer<String, List<Object>> observer) {
+		statementObserver = observer;
+	}
+
+	private static PreparedStatement observe(PreparedStatement stmt, String sql,
+			BiConsumer<String, List<Object>> observer) {
+		List<Object> parameters = new ArrayList<>();
+
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+					String name = method.getName();
+
+					/* Every parameter setter takes the one-based index and then the value. */
+					if (name.startsWith("set") && Objects.nonNull(args) && args.length >= 2 && args[0] instanceof Integer) {
+						int index = (Integer) args[0];
+
+						while (parameters.size() < index) {
+							parameters.add(null);
+						}
+
+						parameters.set(index - 1, name.equals("setNull") ? null : args[1]);
+					} else if (name.equals("clearParameters")) {
+						parameters.clear();
+					} else if ((name.equals("addBatch") || name.startsWith("execute") && !name.endsWith("Batch"))
+							&& (Objects.isNull(args) || args.length == 0)) {
+						observer.accept(sql, Collections.unmodifiableList(new ArrayList<>(parameters)));
+					}
+
+					try {
+						return method.invoke(stmt, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	/**
+	 * Return a connection to the primary. All writes use this connection.
+	 * 
+	 * @return Returns a Connection object if successful. Otherwise, the method
+	 *         throws an exception.
+	 * @throws DbException       Thrown if an error occurs establishing a
+	 *                           connection with the MySQL server and schema.
+	 * @throws OverloadException Thrown if too many database operations are
+	 *                           already running or waiting.
+	 */
+	public static Connection getConnection() {
+		return getConnection(Deadline.NONE);
+	}
+
+	/**
+	 * Return a connection to the primary, waiting for a database permit no longer
+	 * than the deadline allows.
+	 * 
+	 * @param deadline The caller's deadline.
+	 * @return The connection.
+	 * @throws DbException Thrown if the connection cannot be established in time.
+	 */
+	public static Connection getConnection(Deadline deadline) {
+		return connectToPrimary(primaryUri(), deadline);
+	}
+
+	/*
+	 * Return a connection to the primary whose update counts are the rows actually
+	 * changed, not the rows matched. INSERT ... ON DUPLICATE KEY UPDATE then
+	 * reports 1 for an insert, 2 for an update and 0 for a row that already had
+	 * the values, so upserts can tell the three apart.
+	 */
+	static Connection getAffectedRowsConnection(Deadline deadline) {
+		String uri = primaryUri();
+		return connectToPrimary(uri + (uri.contains("?") ? "&" : "?") + "useAffectedRows=true", deadline);
+	}
+
+	/* This is the JDBC connection string. */
+	private static String primaryUri() {
+		return Objects.nonNull(primaryUri) ? primaryUri
+				: String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s", HOST, PORT, SCHEMA, USER, PASSWORD);
+	}
+
+	private static Connection connectToPrimary(String uri, Deadline deadline) {
+		try {
+			return open(uri, null, deadline);
 		} catch (SQLException e) {
-			System.out.println("Unable to get connnection at " + uri);
-			throw new DbException("Unable to get connection at \" + uri");
+			/* Keep the cause so RetryPolicy sees its SQLState. The URI may hold a password. */
+			throw new DbException("Unable to get connection.", e);
 		}
 	}
 }
@@ -0,0 +1,168 @@
+package projects.dao;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import projects.exception.DeadlineExceededException;
+
+/**
+ * This class is the time budget for one call into the service or DAO. It is
+ * created by the caller and passed down, so every step of the call draws on the
+ * same budget: waiting for a database permit, each statement's query timeout,
+ * and the checks between the queries of a multi-query fetch and before a
+ * commit. A statement still running when the deadline passes is cancelled by
+ * its connection (see {@link DbConnection}).
+ */
+public class Deadline {
+	/**
+	 * A deadline that never expires. It is used by the methods that do not take a
+	 * deadline.
+	 */
+	public static final Deadline NONE = new Deadline(0, false);
+
+	/* Holds the timer, so it is only started once a bounded deadline needs it. */
+	private static class Timer {
+		private static final ScheduledThreadPoolExecutor EXECUTOR = newTimer();
+
+		private static ScheduledThreadPoolExecutor newTimer() {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, "deadline-timer");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+			/* Most deadlines are met, so their actions are cancelled and should not linger. */
+			timer.setRemoveOnCancelPolicy(true);
+			return timer;
+		}
+	}
+
+	private final long deadlineNanos;
+	private final boolean bounded;
+
+	private Deadline(long deadlineNanos, boolean bounded) {
+		this.deadlineNanos = deadlineNanos;
+		this.bounded = bounded;
+	}
+
+	/**
+	 * @param timeout How long the call may take from now.
+	 * @return A deadline that expires after the timeout.
+	 */
+	public static Deadline after(Duration timeout) {
+		return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+	}
+
+	/**
+	 * Return the deadline that expires last, for work done on behalf of several
+	 * callers at once, so that no caller is cut short by another's deadline.
+	 *
+	 * @param deadlines The callers' deadlines. There must be at least one.
+	 * @return The latest deadline, or {@link #NONE} if any is unbounded.
+	 */
+	public static Deadline latest(Collection<Deadline> deadlines) {
+		Deadline latest = null;
+
+		for (Deadline deadline : deadlines) {
+			if (!deadline.isBounded()) {
+				return NONE;
+			}
+
+			if (Objects.isNull(latest) || deadline.nanoTime() - latest.nanoTime() > 0) {
+				latest = deadline;
+			}
+		}
+
+		return latest;
+	}
+
+	/**
+	 * @return {@code true} if this deadline can expire.
+	 */
+	public boolean isBounded() {
+		return bounded;
+	}
+
+	/**
+	 * @return The {@link System#nanoTime()} at which the deadline expires. Only
+	 *         meaningful for a bounded deadline.
+	 */
+	public long nanoTime() {
+		return deadlineNanos;
+	}
+
+	/**
+	 * @return The time left in nanoseconds, which is negative once the deadline
+	 *         has passed, or {@link Long#MAX_VALUE} if it is not bounded.
+	 */
+	public long remainingNanos() {
+		return bounded ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return {@code true} if the deadline has passed.
+	 */
+	public boolean isExpired() {
+		return remainingNanos() <= 0;
+	}
+
+	/**
+	 * Throw if the deadline has passed. Call this before starting the next step of
+	 * an operation.
+	 *
+	 * @param step A description of the step that would start next.
+	 * @throws DeadlineExceededException Thrown if the deadline has passed.
+	 */
+	public void check(String step) {
+		if (isExpired()) {
+			throw new DeadlineExceededException("Deadline exceeded before " + step + ".");
+		}
+	}
+
+	/**
+	 * Run an action on a timer thread when the deadline passes.
+	 *
+	 * @param action The action.
+	 * @return The scheduled action, which the caller cancels if it is no longer
+	 *         needed, or {@code null} if the deadline is not bounded.
+	 */
+	ScheduledFuture<?> atExpiry(Runnable action) {
+		if (!bounded) {
+			return null;
+		}
+
+		return Timer.EXECUTOR.schedule(action, Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Set the statement's query timeout to the remaining time. This is only a
+	 * backstop: JDBC timeouts are whole seconds, so the remaining time is rounded
+	 * up, and the statement is cancelled at the deadline itself by its
+	 * connection.
+	 *
+	 * @param stmt The statement about to be executed.
+	 * @throws SQLException              Thrown if the timeout cannot be set.
+	 * @throws DeadlineExceededException Thrown if the deadline has already
+	 *                                   passed.
+	 */
+	public void applyTo(Statement stmt) throws SQLException {
+		if (!bounded) {
+			return;
+		}
+
+		long remaining = remainingNanos();
+
+		if (remaining <= 0) {
+			throw new DeadlineExceededException("Deadline exceeded before the query started.");
+		}
+
+		long seconds = TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1);
+		stmt.setQueryTimeout((int) Math.min(seconds, Integer.MAX_VALUE));
+	}
+}
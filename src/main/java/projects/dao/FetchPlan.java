@@ -0,0 +1,103 @@
+package projects.dao;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This class names the details of a project that a fetch reads along with the
+ * project row. Each detail costs one more query, so a caller that only shows
+ * the steps can ask for {@code FetchPlan.of(Association.STEPS)} and skip the
+ * other two.
+ *
+ * Details a plan does not fetch are empty lists, unless the plan is
+ * {@link #lazy() lazy}. A lazy plan gives them lists that read the rows, in
+ * their own short transaction, the first time they are used. A lazy list reads
+ * the rows as they are at that moment, not as they were when the project was
+ * fetched.
+ */
+public class FetchPlan {
+	/**
+	 * The details of a project, each stored in its own table.
+	 */
+	public enum Association {
+		MATERIALS, STEPS, CATEGORIES
+	}
+
+	/**
+	 * Fetch every detail. This is what fetches without a plan do.
+	 */
+	public static final FetchPlan ALL = new FetchPlan(EnumSet.allOf(Association.class), false);
+
+	/**
+	 * Fetch only the project row.
+	 */
+	public static final FetchPlan NONE = new FetchPlan(EnumSet.noneOf(Association.class), false);
+
+	private final Set<Association> fetched;
+	private final boolean lazy;
+
+	private FetchPlan(Set<Association> fetched, boolean lazy) {
+		this.fetched = Collections.unmodifiableSet(fetched);
+		this.lazy = lazy;
+	}
+
+	/**
+	 * Create a plan that fetches the given details with the project.
+	 *
+	 * @param associations The details to fetch.
+	 * @return The plan.
+	 */
+	public static FetchPlan of(Association... associations) {
+		EnumSet<Association> fetched = EnumSet.noneOf(Association.class);
+		fetched.addAll(Arrays.asList(associations));
+		return new FetchPlan(fetched, false);
+	}
+
+	/**
+	 * @return A plan that fetches the same details and loads the others on first
+	 *         use.
+	 */
+	public FetchPlan lazy() {
+		EnumSet<Association> copy = EnumSet.noneOf(Association.class);
+		copy.addAll(fetched);
+		return new FetchPlan(copy, true);
+	}
+
+	/**
+	 * @param association A detail.
+	 * @return {@code true} if the detail is read with the project.
+	 */
+	public boolean fetches(Association association) {
+		return fetched.contains(association);
+	}
+
+	/**
+	 * @return {@code true} if details that are not fetched load on first use.
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FetchPlan)) {
+			return false;
+		}
+
+		FetchPlan other = (FetchPlan) obj;
+		return fetched.equals(other.fetched) && lazy == other.lazy;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(fetched, lazy);
+	}
+
+	@Override
+	public String toString() {
+		return "fetch=" + fetched + (lazy ? ", lazy" : "");
+	}
+}
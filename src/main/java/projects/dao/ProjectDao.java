@@ -2,18 +2,30 @@ package projects.dao;
 
 import java.sql.SQLException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.*;
 
 import projects.entity.Category;
 import projects.entity.Material;
 import projects.entity.Project;
 import projects.entity.Step;
+import projects.entity.TextCodec;
+import projects.entity.WorkLogEntry;
 import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+import projects.exception.OptimisticLockException;
 import provided.util.DaoBase;
 
 /**
@@ -28,6 +40,174 @@ public class ProjectDao extends DaoBase {
 	private static final String PROJECT_TABLE = "project";
 	private static final String PROJECT_CATEGORY_TABLE = "project_category";
 	private static final String STEP_TABLE = "step";
+	private static final String CHANGE_TABLE = "project_change";
+	private static final String WORK_LOG_TABLE = "work_log";
+
+	// The most work-log rows per multi-row INSERT, which keeps the statement well
+	// under the limit on placeholders.
+	private static final int WORK_LOG_ROWS_PER_INSERT = 1000;
+
+	// The operations recorded in the change outbox.
+	private static final String OPERATION_INSERT = "INSERT";
+	private static final String OPERATION_UPDATE = "UPDATE";
+	private static final String OPERATION_DELETE = "DELETE";
+
+	// The updatable project columns in the order they appear in UPDATE statements.
+	private static final String[] PROJECT_DETAIL_COLUMNS = { "project_name", "estimated_hours", "actual_hours",
+			"difficulty", "notes" };
+
+	// UPDATE statements indexed by a bit mask of the changed columns. Races only
+	// build the same string twice, so no locking is needed.
+	private final String[] updateSqlCache = new String[1 << (PROJECT_DETAIL_COLUMNS.length + 1)];
+
+	// The order of fetchAllProjects when merging shards. It approximates the
+	// case-insensitive default collation of project_name.
+	private static final Comparator<Project> PROJECT_NAME_ORDER = Comparator.comparing(Project::getProjectName,
+			String.CASE_INSENSITIVE_ORDER);
+
+	// Routes projects to shards. When null, all projects are in one schema.
+	private final ShardRouter shards;
+
+	// Retries transactions that the database aborted because of contention.
+	private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+
+	// When true, deleteProject only flags the project and a ProjectPurger removes
+	// its rows later.
+	private volatile boolean softDelete = Boolean.getBoolean("projects.softDelete");
+
+	// Notes and step text at least this many bytes long are written compressed.
+	// Zero writes all text as it is.
+	private volatile int textCompressionThreshold = Integer.getInteger("projects.compressTextOver", 0);
+
+	/**
+	 * Create a DAO for a single schema, or for the shards named in the system
+	 * property {@code projects.shards} if it is set.
+	 */
+	public ProjectDao() {
+		this(ShardRouter.fromSystemProperty());
+	}
+
+	/**
+	 * Create a DAO that spreads projects across shards.
+	 * 
+	 * @param shards The shard router, or {@code null} for a single schema.
+	 */
+	public ProjectDao(ShardRouter shards) {
+		this.shards = shards;
+	}
+
+	/**
+	 * @return The policy used to retry transient failures. Its counters show how
+	 *         often operations hit deadlocks and lock wait timeouts.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Replace the policy used to retry transient failures.
+	 * 
+	 * @param retryPolicy The new policy. Use {@link RetryPolicy#none()} to turn
+	 *                    retries off.
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * @return Whether deleteProject soft-deletes projects.
+	 */
+	public boolean isSoftDelete() {
+		return softDelete;
+	}
+
+	/**
+	 * Choose how deleteProject removes a project. A hard delete removes the
+	 * project and, through ON DELETE CASCADE, all of its child rows in one
+	 * transaction, which holds locks for as long as that takes. A soft delete only
+	 * sets deleted_at, which hides the project from every fetch; a
+	 * {@link ProjectPurger} then removes the rows in small chunks.
+	 * 
+	 * @param softDelete {@code true} to soft-delete. The default comes from the
+	 *                   system property {@code projects.softDelete}.
+	 */
+	public void setSoftDelete(boolean softDelete) {
+		this.softDelete = softDelete;
+	}
+
+	/**
+	 * @return The smallest size, in bytes, at which notes and step text are
+	 *         compressed, or zero if compression is off.
+	 */
+	public int getTextCompressionThreshold() {
+		return textCompressionThreshold;
+	}
+
+	/**
+	 * Choose whether notes and step text are compressed when written. Text at
+	 * least the threshold long is stored in notes_compressed or
+	 * step_text_compressed instead of the TEXT column, which cuts the bytes read
+	 * from disk and sent over the network for long build instructions. Entities
+	 * decompress it the first time the getter is called. Rows are read correctly
+	 * in either mode, so compression can be turned on and off at any time.
+	 * 
+	 * @param threshold The size in UTF-8 bytes, or zero to write plain text. The
+	 *                  default comes from the system property
+	 *                  {@code projects.compressTextOver}.
+	 */
+	public void setTextCompressionThreshold(int threshold) {
+		this.textCompressionThreshold = Math.max(0, threshold);
+	}
+
+	/**
+	 * Create a migration that compresses the notes and step text already stored,
+	 * using this DAO's compression threshold.
+	 * 
+	 * @param batchSize The most rows converted per transaction.
+	 * @return The migration. It does nothing until it is run.
+	 * @throws DbException Thrown if compression is off.
+	 */
+	public TextCompressionMigration createTextCompressionMigration(int batchSize) {
+		if (textCompressionThreshold <= 0) {
+			throw new DbException("Text compression is off. Set a compression threshold first.");
+		}
+
+		return new TextCompressionMigration(shards, textCompressionThreshold, batchSize);
+	}
+
+	/**
+	 * Create a reader for the change records this DAO writes with every
+	 * mutation.
+	 * 
+	 * @return The change feed.
+	 */
+	public ChangeFeed createChangeFeed() {
+		return new ChangeFeed(shards);
+	}
+
+	/**
+	 * Create a purger for the projects soft-deleted through this DAO.
+	 * 
+	 * @param chunkSize The most child rows deleted per transaction.
+	 * @param pause     How long to wait between chunks, so other writers can get
+	 *                  the locks.
+	 * @return The purger. It does nothing until it is run or started.
+	 */
+	public ProjectPurger createPurger(int chunkSize, Duration pause) {
+		return new ProjectPurger(shards, chunkSize, pause);
+	}
+
+	/**
+	 * Bring the schema, or every shard's schema, up to the latest migration.
+	 *
+	 * @return The number of migrations applied. Zero means the schema was
+	 *         already current.
+	 * @throws DbException Thrown if a migration fails or an applied migration
+	 *                     has changed.
+	 */
+	public int migrateSchema() {
+		return new SchemaMigrator(shards).migrate();
+	}
 
 	/**
 	 * Insert a project row into the project table.
@@ -37,209 +217,1847 @@ public class ProjectDao extends DaoBase {
 	 * @throws DbException Thrown if an error occurs inserting the row.
 	 */
 	public Project insertProject(Project project) {
+		return insertProject(project, Deadline.NONE);
+	}
+
+	/**
+	 * Insert a project row within a deadline.
+	 * 
+	 * @param project  The project object to insert.
+	 * @param deadline The caller's deadline.
+	 * @return The Project object with the primary key.
+	 * @throws DeadlineExceededException Thrown if the deadline passes before the
+	 *                                   row is committed.
+	 * @throws DbException               Thrown if an error occurs inserting the
+	 *                                   row.
+	 */
+	public Project insertProject(Project project, Deadline deadline) {
+		return retryPolicy.execute(deadline, false, () -> insertProjectOnce(project, deadline));
+	}
+
+	// One attempt at inserting a project, in its own transaction.
+	private Project insertProjectOnce(Project project, Deadline deadline) {
 		// @formatter:off
 		String sql = ""
 				+ "INSERT INTO " + PROJECT_TABLE + " "
-				+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
+				+ "(project_id, project_name, estimated_hours, actual_hours, difficulty, notes, notes_compressed, "
+				+ "external_key) "
 				+ "VALUES "
-				+ "(?, ?, ?, ?, ?)";
+				+ "(?, ?, ?, ?, ?, ?, ?, ?)";
 		// @formatter:on
 
-		try (Connection conn = DbConnection.getConnection()) {
+		/* With shards, the ID is allocated up front so the owning shard is known. */
+		Integer allocatedId = Objects.isNull(shards) ? null : shards.allocateId();
+
+		try (Connection conn = writeConnection(allocatedId, deadline)) {
 			startTransaction(conn);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
+			try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+				setParameter(stmt, 1, allocatedId, Integer.class);
+				setParameter(stmt, 2, project.getProjectName(), String.class);
+				setParameter(stmt, 3, project.getEstimatedHours(), BigDecimal.class);
+				setParameter(stmt, 4, project.getActualHours(), BigDecimal.class);
+				setParameter(stmt, 5, project.getDifficulty(), Integer.class);
+				setText(stmt, 6, project.getNotes());
+				setParameter(stmt, 8, project.getExternalKey(), String.class);
+
+				stmt.executeUpdate();
+
+				Integer projectID = Objects.nonNull(allocatedId) ? allocatedId : getLastInsertId(conn, PROJECT_TABLE);
+
+				recordChanges(conn, PROJECT_TABLE, List.of(projectID), OPERATION_INSERT);
+				commitTransaction(conn, deadline);
+				DbConnection.recordWrite();
+				project.setProjectId(projectID);
+				project.setVersion(0);
+				project.clearDirtyColumns();
+				return project;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw failure(e, deadline);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Create a project from a template project. The project row and all of the
+	 * template's material, step and project_category rows are copied with
+	 * {@code INSERT ... SELECT} statements in one transaction, so the rows never
+	 * travel to the client and a clone costs four statements however large the
+	 * template is.
+	 * 
+	 * @param templateId The ID of the project to copy.
+	 * @param overrides  A project whose changed columns replace the template's
+	 *                   values, or {@code null} to copy the details as they are.
+	 * @return The ID of the new project, or empty if the template does not exist.
+	 * @throws DbException Thrown if an error occurs copying the rows. Nothing is
+	 *                     copied in that case.
+	 */
+	public Optional<Integer> cloneProject(Integer templateId, Project overrides) {
+		return cloneProject(templateId, overrides, Deadline.NONE);
+	}
+
+	/**
+	 * Create a project from a template project within a deadline.
+	 * 
+	 * @param templateId The ID of the project to copy.
+	 * @param overrides  A project whose changed columns replace the template's
+	 *                   values, or {@code null} to copy the details as they are.
+	 * @param deadline   The caller's deadline.
+	 * @return The ID of the new project, or empty if the template does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes before the
+	 *                                   copy is committed.
+	 */
+	public Optional<Integer> cloneProject(Integer templateId, Project overrides, Deadline deadline) {
+		Project changes = Objects.isNull(overrides) ? new Project() : overrides;
+		return retryPolicy.execute(deadline, false, () -> cloneProjectOnce(templateId, changes, deadline));
+	}
+
+	// One attempt at cloning a project, in its own transaction.
+	private Optional<Integer> cloneProjectOnce(Integer templateId, Project overrides, Deadline deadline) {
+		List<String> overridden = new ArrayList<>();
+		StringJoiner selected = new StringJoiner(", ");
+
+		List<String> inserted = new ArrayList<>();
+
+		for (String column : PROJECT_DETAIL_COLUMNS) {
+			boolean override = overrides.getDirtyColumns().contains(column);
+
+			if (override) {
+				overridden.add(column);
+			}
+
+			for (String stored : storedColumns(column)) {
+				inserted.add(stored);
+				selected.add(override ? "?" : stored);
+			}
+		}
+
+		// @formatter:off
+		String projectSql = ""
+				+ "INSERT INTO " + PROJECT_TABLE + " "
+				+ "(project_id, " + String.join(", ", inserted) + ") "
+				+ "SELECT ?, " + selected + " "
+				+ "FROM " + PROJECT_TABLE + " "
+				+ "WHERE project_id = ? AND deleted_at IS NULL";
+		String materialSql = ""
+				+ "INSERT INTO " + MATERIAL_TABLE + " "
+				+ "(project_id, material_name, num_required, cost) "
+				+ "SELECT ?, material_name, num_required, cost "
+				+ "FROM " + MATERIAL_TABLE + " "
+				+ "WHERE project_id = ? "
+				+ "ORDER BY material_id";
+		String stepSql = ""
+				+ "INSERT INTO " + STEP_TABLE + " "
+				+ "(project_id, step_text, step_text_compressed, step_order) "
+				+ "SELECT ?, step_text, step_text_compressed, step_order "
+				+ "FROM " + STEP_TABLE + " "
+				+ "WHERE project_id = ? "
+				+ "ORDER BY step_order";
+		String categorySql = ""
+				+ "INSERT INTO " + PROJECT_CATEGORY_TABLE + " "
+				+ "(project_id, category_id) "
+				+ "SELECT ?, category_id "
+				+ "FROM " + PROJECT_CATEGORY_TABLE + " "
+				+ "WHERE project_id = ?";
+		// @formatter:on
+
+		Integer allocatedId = Objects.isNull(shards) ? null : allocateIdOnShardOf(templateId);
+
+		try (Connection conn = writeConnection(templateId, deadline)) {
+			startTransaction(conn);
+
+			try {
+				Integer projectId;
+
+				try (PreparedStatement stmt = prepare(conn, projectSql, deadline)) {
+					int index = 1;
+					setParameter(stmt, index++, allocatedId, Integer.class);
+
+					for (String column : overridden) {
+						index = setProjectColumn(stmt, index, overrides, column);
+					}
+
+					setParameter(stmt, index, templateId, Integer.class);
+
+					if (stmt.executeUpdate() == 0) {
+						rollbackTransaction(conn);
+						return Optional.empty();
+					}
+
+					projectId = Objects.nonNull(allocatedId) ? allocatedId : getLastInsertId(conn, PROJECT_TABLE);
+				}
+
+				for (String sql : List.of(materialSql, stepSql, categorySql)) {
+					try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+						setParameter(stmt, 1, projectId, Integer.class);
+						setParameter(stmt, 2, templateId, Integer.class);
+						stmt.executeUpdate();
+					}
+				}
+
+				recordChanges(conn, PROJECT_TABLE, List.of(projectId), OPERATION_INSERT);
+				commitTransaction(conn, deadline);
+				DbConnection.recordWrite();
+				return Optional.of(projectId);
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw failure(e, deadline);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	// INSERT ... SELECT cannot cross shards, so keep allocating IDs until one
+	// lands on the template's shard. This takes about as many tries as there
+	// are shards, and the skipped IDs are simply never used.
+	private Integer allocateIdOnShardOf(Integer templateId) {
+		int shard = shards.shardFor(templateId);
+		Integer projectId;
+
+		do {
+			projectId = shards.allocateId();
+		} while (shards.shardFor(projectId) != shard);
+
+		return projectId;
+	}
+
+	/**
+	 * Insert a project, or update the project with the same external key. The
+	 * project's materials and steps are upserted the same way by their external
+	 * keys within the project. Nothing is read first, so there is no window in
+	 * which a concurrent writer can insert the same key.
+	 * 
+	 * @param project The project, with an external key, and its materials and
+	 *                steps, each with an external key.
+	 * @return What happened to each row.
+	 * @throws DbException Thrown if a key is missing or an error occurs writing
+	 *                     the rows.
+	 */
+	public UpsertResult upsertProject(Project project) {
+		return upsertProjects(List.of(project)).get(0);
+	}
+
+	/**
+	 * Upsert many projects in one transaction. Each table is written with one
+	 * batched {@code INSERT ... ON DUPLICATE KEY UPDATE} statement.
+	 * 
+	 * @param projects The projects to upsert.
+	 * @return What happened to each project, in the order given.
+	 * @throws DbException Thrown if a key is missing or an error occurs writing
+	 *                     the rows. No row is written in that case.
+	 */
+	public List<UpsertResult> upsertProjects(List<Project> projects) {
+		return upsertProjects(projects, Deadline.NONE);
+	}
+
+	/**
+	 * Upsert many projects in one transaction within a deadline.
+	 * 
+	 * @param projects The projects to upsert.
+	 * @param deadline The caller's deadline.
+	 * @return What happened to each project, in the order given.
+	 * @throws DeadlineExceededException Thrown if the deadline passes before the
+	 *                                   rows are committed.
+	 */
+	public List<UpsertResult> upsertProjects(List<Project> projects, Deadline deadline) {
+		if (Objects.nonNull(shards)) {
+			/* The owning shard depends on the project ID, which the key does not give. */
+			throw new DbException("Upserts by external key are not supported with shards.");
+		}
+
+		validateExternalKeys(projects);
+
+		/* Running an upsert twice leaves the same rows, so retrying is safe. */
+		return retryPolicy.execute(deadline, true, () -> upsertProjectsOnce(projects, deadline));
+	}
+
+	// One attempt at upserting a batch of projects, in a single transaction.
+	private List<UpsertResult> upsertProjectsOnce(List<Project> projects, Deadline deadline) {
+		// @formatter:off
+		String projectSql = ""
+				+ "INSERT INTO " + PROJECT_TABLE + " "
+				+ "(external_key, project_name, estimated_hours, actual_hours, difficulty, notes, notes_compressed) "
+				+ "VALUES (?, ?, ?, ?, ?, ?, ?) "
+				+ "ON DUPLICATE KEY UPDATE "
+				// The version is assigned first, while the columns still hold the old values.
+				+ "version = IF(deleted_at IS NULL "
+				+ "AND project_name <=> VALUES(project_name) "
+				+ "AND estimated_hours <=> VALUES(estimated_hours) "
+				+ "AND difficulty <=> VALUES(difficulty) "
+				+ "AND notes <=> VALUES(notes) "
+				+ "AND notes_compressed <=> VALUES(notes_compressed), version, version + 1), "
+				+ "project_name = VALUES(project_name), "
+				+ "estimated_hours = VALUES(estimated_hours), "
+				+ "difficulty = VALUES(difficulty), "
+				+ "notes = VALUES(notes), "
+				+ "notes_compressed = VALUES(notes_compressed), "
+				+ "deleted_at = NULL";
+		String materialSql = ""
+				+ "INSERT INTO " + MATERIAL_TABLE + " "
+				+ "(project_id, external_key, material_name, num_required, cost) "
+				+ "VALUES (?, ?, ?, ?, ?) "
+				+ "ON DUPLICATE KEY UPDATE "
+				+ "material_name = VALUES(material_name), "
+				+ "num_required = VALUES(num_required), "
+				+ "cost = VALUES(cost)";
+		String stepSql = ""
+				+ "INSERT INTO " + STEP_TABLE + " "
+				+ "(project_id, external_key, step_text, step_text_compressed, step_order) "
+				+ "VALUES (?, ?, ?, ?, ?) "
+				+ "ON DUPLICATE KEY UPDATE "
+				+ "step_text = VALUES(step_text), "
+				+ "step_text_compressed = VALUES(step_text_compressed), "
+				+ "step_order = VALUES(step_order)";
+		// @formatter:on
+
+		if (projects.isEmpty()) {
+			return List.of();
+		}
+
+		try (Connection conn = DbConnection.getAffectedRowsConnection(deadline)) {
+			startTransaction(conn);
+
+			try {
+				int[] projectCounts;
+
+				try (PreparedStatement stmt = prepare(conn, projectSql, deadline)) {
+					for (Project project : projects) {
+						setParameter(stmt, 1, project.getExternalKey(), String.class);
+						setParameter(stmt, 2, project.getProjectName(), String.class);
+						setParameter(stmt, 3, project.getEstimatedHours(), BigDecimal.class);
+						setParameter(stmt, 4, project.getActualHours(), BigDecimal.class);
+						setParameter(stmt, 5, project.getDifficulty(), Integer.class);
+						setText(stmt, 6, project.getNotes());
+						stmt.addBatch();
+					}
+
+					projectCounts = stmt.executeBatch();
+				}
+
+				/* A batch does not return the IDs of updated rows, so look them all up at once. */
+				Map<String, Integer[]> idsByKey = fetchIdsByExternalKey(conn, projects, deadline);
+
+				for (Project project : projects) {
+					Integer[] idAndVersion = idsByKey.get(project.getExternalKey());
+					project.setProjectId(idAndVersion[0]);
+					project.setVersion(idAndVersion[1]);
+				}
+
+				int[] materialCounts;
+
+				try (PreparedStatement stmt = prepare(conn, materialSql, deadline)) {
+					for (Project project : projects) {
+						for (Material material : project.getMaterials()) {
+							material.setProjectId(project.getProjectId());
+							setParameter(stmt, 1, material.getProjectId(), Integer.class);
+							setParameter(stmt, 2, material.getExternalKey(), String.class);
+							setParameter(stmt, 3, material.getMaterialName(), String.class);
+							setParameter(stmt, 4, material.getNumRequired(), Integer.class);
+							setParameter(stmt, 5, material.getCost(), BigDecimal.class);
+							stmt.addBatch();
+						}
+					}
+
+					materialCounts = stmt.executeBatch();
+				}
+
+				int[] stepCounts;
+
+				try (PreparedStatement stmt = prepare(conn, stepSql, deadline)) {
+					for (Project project : projects) {
+						for (Step step : project.getSteps()) {
+							step.setProjectId(project.getProjectId());
+							setParameter(stmt, 1, step.getProjectId(), Integer.class);
+							setParameter(stmt, 2, step.getExternalKey(), String.class);
+							setText(stmt, 3, step.getStepText());
+							setParameter(stmt, 5, step.getStepOrder(), Integer.class);
+							stmt.addBatch();
+						}
+					}
+
+					stepCounts = stmt.executeBatch();
+				}
+
+				List<UpsertResult> results = new ArrayList<>(projects.size());
+				int material = 0;
+				int step = 0;
+
+				for (int i = 0; i < projects.size(); i++) {
+					Project project = projects.get(i);
+					List<UpsertResult.Change> materialChanges = new ArrayList<>();
+					List<UpsertResult.Change> stepChanges = new ArrayList<>();
+
+					for (int j = 0; j < project.getMaterials().size(); j++) {
+						materialChanges.add(UpsertResult.fromUpdateCount(materialCounts[material++]));
+					}
+
+					for (int j = 0; j < project.getSteps().size(); j++) {
+						stepChanges.add(UpsertResult.fromUpdateCount(stepCounts[step++]));
+					}
+
+					results.add(new UpsertResult(project.getProjectId(),
+							UpsertResult.fromUpdateCount(projectCounts[i]), materialChanges, stepChanges));
+				}
+
+				List<Integer> inserted = new ArrayList<>();
+				List<Integer> updated = new ArrayList<>();
+
+				for (UpsertResult result : results) {
+					if (result.getProject() == UpsertResult.Change.INSERTED) {
+						inserted.add(result.getProjectId());
+					} else if (result.isChanged()) {
+						updated.add(result.getProjectId());
+					}
+				}
+
+				recordChanges(conn, PROJECT_TABLE, inserted, OPERATION_INSERT);
+				recordChanges(conn, PROJECT_TABLE, updated, OPERATION_UPDATE);
+				commitTransaction(conn, deadline);
+				DbConnection.recordWrite();
+				projects.forEach(Project::clearDirtyColumns);
+
+				return results;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw failure(e, deadline);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	// Return the ID and version of each upserted project, keyed by external key.
+	private Map<String, Integer[]> fetchIdsByExternalKey(Connection conn, List<Project> projects, Deadline deadline)
+			throws SQLException {
+		StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+		projects.forEach(project -> placeholders.add("?"));
+
+		String sql = "SELECT external_key, project_id, version FROM " + PROJECT_TABLE + " WHERE external_key IN "
+				+ placeholders;
+
+		try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+			int index = 1;
+
+			for (Project project : projects) {
+				setParameter(stmt, index++, project.getExternalKey(), String.class);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				Map<String, Integer[]> idsByKey = new HashMap<>();
+
+				while (rs.next()) {
+					idsByKey.put(rs.getString("external_key"),
+							new Integer[] { rs.getInt("project_id"), rs.getInt("version") });
+				}
+
+				return idsByKey;
+			}
+		}
+	}
+
+	// Without keys every upsert would insert, so rows without keys are refused
+	// before anything is written. Each project may appear only once per batch so
+	// that each result describes one row.
+	private void validateExternalKeys(List<Project> projects) {
+		Set<String> projectKeys = new HashSet<>();
+
+		for (Project project : projects) {
+			if (Objects.isNull(project.getExternalKey())) {
+				throw new DbException("Project " + project.getProjectName() + " has no external key.");
+			}
+
+			if (!projectKeys.add(project.getExternalKey())) {
+				throw new DbException("Project key " + project.getExternalKey() + " appears more than once.");
+			}
+
+			for (Material material : project.getMaterials()) {
+				if (Objects.isNull(material.getExternalKey())) {
+					throw new DbException("Material " + material.getMaterialName() + " of project "
+							+ project.getExternalKey() + " has no external key.");
+				}
+			}
+
+			for (Step step : project.getSteps()) {
+				if (Objects.isNull(step.getExternalKey())) {
+					throw new DbException("A step of project " + project.getExternalKey() + " has no external key.");
+				}
+			}
+		}
+	}
+
+	// This method fetches all projects from the project table. It starts a
+	// transaction, prepares the SQL statement, executes the query, and commits the
+	// transaction. In case of any exception, the transaction is rolled back.
+	// With shards, every shard is queried in parallel and the sorted results are
+	// merged by project name.
+	public List<Project> fetchAllProjects() {
+		return fetchAllProjects(Deadline.NONE);
+	}
+
+	/**
+	 * Fetch all projects without details within a deadline.
+	 * 
+	 * @param deadline The caller's deadline.
+	 * @return The projects in project name order.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public List<Project> fetchAllProjects(Deadline deadline) {
+		return retryPolicy.execute(deadline, true, () -> fetchAllProjectsOnce(deadline));
+	}
+
+	// One attempt at fetching all projects, in its own transaction.
+	private List<Project> fetchAllProjectsOnce(Deadline deadline) {
+		if (Objects.nonNull(shards)) {
+			return shards.scatterGather(conn -> fetchAllProjects(conn, deadline), PROJECT_NAME_ORDER, deadline);
+		}
+
+		try (Connection conn = DbConnection.getReadConnection(deadline)) {
+			return fetchAllProjects(conn, deadline);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private List<Project> fetchAllProjects(Connection conn, Deadline deadline) throws SQLException {
+		String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE deleted_at IS NULL ORDER BY project_name";
+
+		startTransaction(conn);
+
+		try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+			try (ResultSet rs = stmt.executeQuery()) {
+				List<Project> projects = new LinkedList<>();
+
+				while (rs.next()) {
+					projects.add(extract(rs, Project.class));
+				}
+
+				return projects;
+			}
+		} catch (Exception e) {
+			rollbackTransaction(conn);
+			throw failure(e, deadline);
+		}
+	}
+
+	// This method fetches a project by its ID from the project table. It also
+	// fetches related materials, steps, and categories for the project. It starts a
+	// transaction, prepares the SQL statement, executes the query, and commits the
+	// transaction. In case of any exception, the transaction is rolled back.
+	public Optional<Project> fetchProjectById(Integer projectId) {
+		return fetchProjectById(projectId, Deadline.NONE);
+	}
+
+	/**
+	 * Fetch a project with its details within a deadline. The remaining time is
+	 * checked before each of the four queries, and each query is cancelled if it
+	 * is still running when the deadline passes.
+	 * 
+	 * @param projectId The project ID.
+	 * @param deadline  The caller's deadline.
+	 * @return The project, or empty if it does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Optional<Project> fetchProjectById(Integer projectId, Deadline deadline) {
+		return fetchProjectById(projectId, FetchPlan.ALL, deadline);
+	}
+
+	/**
+	 * Fetch a project with only the details the plan names. One query is run for
+	 * the project and one for each detail fetched.
+	 * 
+	 * @param projectId The project ID.
+	 * @param plan      The details to fetch, and whether the others load on first
+	 *                  use.
+	 * @param deadline  The caller's deadline. Lazy loads are not bound by it.
+	 * @return The project, or empty if it does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Optional<Project> fetchProjectById(Integer projectId, FetchPlan plan, Deadline deadline) {
+		return retryPolicy.execute(deadline, true, () -> fetchProjectByIdOnce(projectId, plan, deadline));
+	}
+
+	// One attempt at fetching a project, in its own transaction.
+	private Optional<Project> fetchProjectByIdOnce(Integer projectId, FetchPlan plan, Deadline deadline) {
+		String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_at IS NULL";
+
+		try (Connection conn = readConnection(projectId, deadline)) {
+			startTransaction(conn);
+
+			try {
+				Project project = null;
+
+				try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+					setParameter(stmt, 1, projectId, Integer.class);
+
+					try (ResultSet rs = stmt.executeQuery()) {
+						if (rs.next()) {
+							project = extract(rs, Project.class);
+						}
+					}
+				}
+				if (Objects.nonNull(project)) {
+					if (plan.fetches(FetchPlan.Association.MATERIALS)) {
+						deadline.check("fetching materials");
+						project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId, deadline));
+					}
+
+					if (plan.fetches(FetchPlan.Association.STEPS)) {
+						deadline.check("fetching steps");
+						project.getSteps().addAll(fetchStepsForProject(conn, projectId, deadline));
+					}
+
+					if (plan.fetches(FetchPlan.Association.CATEGORIES)) {
+						deadline.check("fetching categories");
+						project.getCategories().addAll(fetchCategoriesForProject(conn, projectId, deadline));
+					}
+
+					attachLoaders(project, plan);
+				}
+
+				commitTransaction(conn, deadline);
+
+				return Optional.ofNullable(project);
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw failure(e, deadline);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Fetch many projects with their details using one query per table, with the
+	 * project IDs in an {@code IN (...)} list, instead of four queries per
+	 * project. With shards, each shard is queried for its own projects.
+	 * 
+	 * @param projectIds The project IDs.
+	 * @param deadline   The caller's deadline.
+	 * @return The projects that exist, keyed by project ID.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Map<Integer, Project> fetchProjectsByIds(Collection<Integer> projectIds, Deadline deadline) {
+		return fetchProjectsByIds(projectIds, FetchPlan.ALL, deadline);
+	}
+
+	/**
+	 * Fetch many projects with only the details the plan names, using one query
+	 * per table fetched. With a lazy plan, each project loads its other details
+	 * separately when they are first used.
+	 * 
+	 * @param projectIds The project IDs.
+	 * @param plan       The details to fetch, and whether the others load on first
+	 *                   use.
+	 * @param deadline   The caller's deadline. Lazy loads are not bound by it.
+	 * @return The projects that exist, keyed by project ID.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Map<Integer, Project> fetchProjectsByIds(Collection<Integer> projectIds, FetchPlan plan,
+			Deadline deadline) {
+		return retryPolicy.execute(deadline, true, () -> fetchProjectsByIdsOnce(projectIds, plan, deadline));
+	}
+
+	// One attempt at fetching a set of projects, one transaction per shard.
+	private Map<Integer, Project> fetchProjectsByIdsOnce(Collection<Integer> projectIds, FetchPlan plan,
+			Deadline deadline) {
+		Map<Integer, List<Integer>> idsByShard = new HashMap<>();
+
+		for (Integer projectId : new LinkedHashSet<>(projectIds)) {
+			int shard = Objects.isNull(shards) ? 0 : shards.shardFor(projectId);
+			idsByShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(projectId);
+		}
+
+		Map<Integer, Project> projects = new HashMap<>();
+
+		for (List<Integer> ids : idsByShard.values()) {
+			try (Connection conn = readConnection(ids.get(0), deadline)) {
+				projects.putAll(fetchProjectsByIds(conn, ids, plan, deadline));
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+		}
+
+		return projects;
+	}
+
+	private Map<Integer, Project> fetchProjectsByIds(Connection conn, List<Integer> projectIds, FetchPlan plan,
+			Deadline deadline) throws SQLException {
+		StringJoiner joiner = new StringJoiner(", ", "(", ")");
+		projectIds.forEach(projectId -> joiner.add("?"));
+		String ids = joiner.toString();
+
+		// @formatter:off
+		String projectSql = ""
+				+ "SELECT * FROM " + PROJECT_TABLE + " "
+				+ "WHERE project_id IN " + ids + " AND deleted_at IS NULL";
+		String materialSql = ""
+				+ "SELECT * FROM " + MATERIAL_TABLE + " "
+				+ "WHERE project_id IN " + ids + " "
+				+ "ORDER BY project_id, material_id";
+		String stepSql = ""
+				+ "SELECT * FROM " + STEP_TABLE + " "
+				+ "WHERE project_id IN " + ids + " "
+				+ "ORDER BY project_id, step_order";
+		String categorySql = ""
+				+ "SELECT pc.project_id, c.* FROM " + CATEGORY_TABLE + " c "
+				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+				+ "WHERE pc.project_id IN " + ids + " "
+				+ "ORDER BY pc.project_id, c.category_id";
+		// @formatter:on
+
+		startTransaction(conn);
+
+		try {
+			Map<Integer, Project> projects = new HashMap<>();
+
+			try (PreparedStatement stmt = prepare(conn, projectSql, deadline)) {
+				bindIds(stmt, projectIds);
+
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) {
+						Project project = extract(rs, Project.class);
+						projects.put(project.getProjectId(), project);
+					}
+				}
+			}
+
+			if (!projects.isEmpty()) {
+				if (plan.fetches(FetchPlan.Association.MATERIALS)) {
+					deadline.check("fetching materials");
+
+					try (PreparedStatement stmt = prepare(conn, materialSql, deadline)) {
+						bindIds(stmt, projectIds);
+
+						try (ResultSet rs = stmt.executeQuery()) {
+							while (rs.next()) {
+								Material material = extract(rs, Material.class);
+								Project project = projects.get(material.getProjectId());
+
+								if (Objects.nonNull(project)) {
+									project.getMaterials().add(material);
+								}
+							}
+						}
+					}
+				}
+
+				if (plan.fetches(FetchPlan.Association.STEPS)) {
+					deadline.check("fetching steps");
+
+					try (PreparedStatement stmt = prepare(conn, stepSql, deadline)) {
+						bindIds(stmt, projectIds);
+
+						try (ResultSet rs = stmt.executeQuery()) {
+							while (rs.next()) {
+								Step step = extract(rs, Step.class);
+								Project project = projects.get(step.getProjectId());
+
+								if (Objects.nonNull(project)) {
+									project.getSteps().add(step);
+								}
+							}
+						}
+					}
+				}
+
+				if (plan.fetches(FetchPlan.Association.CATEGORIES)) {
+					deadline.check("fetching categories");
+
+					try (PreparedStatement stmt = prepare(conn, categorySql, deadline)) {
+						bindIds(stmt, projectIds);
+
+						try (ResultSet rs = stmt.executeQuery()) {
+							while (rs.next()) {
+								Project project = projects.get(rs.getInt("project_id"));
+
+								if (Objects.nonNull(project)) {
+									project.getCategories().add(extract(rs, Category.class));
+								}
+							}
+						}
+					}
+				}
+
+				projects.values().forEach(project -> attachLoaders(project, plan));
+			}
+
+			commitTransaction(conn, deadline);
+			return projects;
+		} catch (Exception e) {
+			rollbackTransaction(conn);
+			throw failure(e, deadline);
+		}
+	}
+
+	private void bindIds(PreparedStatement stmt, List<Integer> projectIds) throws SQLException {
+		int index = 1;
+
+		for (Integer projectId : projectIds) {
+			setParameter(stmt, index++, projectId, Integer.class);
+		}
+	}
+
+	// Give a project fetched with a lazy plan lists that load the details the
+	// plan did not fetch. The loaders use this DAO, so they read from the same
+	// shard, or replica pool, with the same retry policy as the fetch.
+	private void attachLoaders(Project project, FetchPlan plan) {
+		if (!plan.isLazy()) {
+			return;
+		}
+
+		Integer projectId = project.getProjectId();
+
+		if (!plan.fetches(FetchPlan.Association.MATERIALS)) {
+			project.setMaterialsLoader(() -> loadDetails(projectId, this::fetchMaterialsForProject));
+		}
+
+		if (!plan.fetches(FetchPlan.Association.STEPS)) {
+			project.setStepsLoader(() -> loadDetails(projectId, this::fetchStepsForProject));
+		}
+
+		if (!plan.fetches(FetchPlan.Association.CATEGORIES)) {
+			project.setCategoriesLoader(() -> loadDetails(projectId, this::fetchCategoriesForProject));
+		}
+	}
+
+	// Read one detail of a project for a lazy list, in its own transaction. The
+	// deadline of the original fetch may have passed long before the list is
+	// used, so lazy loads run without one.
+	private <T> List<T> loadDetails(Integer projectId, DetailQuery<T> query) {
+		return retryPolicy.execute(Deadline.NONE, true, () -> {
+			try (Connection conn = readConnection(projectId, Deadline.NONE)) {
+				startTransaction(conn);
+
+				try {
+					List<T> details = query.fetch(conn, projectId, Deadline.NONE);
+					commitTransaction(conn);
+					return details;
+				} catch (Exception e) {
+					rollbackTransaction(conn);
+					throw failure(e, Deadline.NONE);
+				}
+			} catch (SQLException e) {
+				throw new DbException(e);
+			}
+		});
+	}
+
+	// One of the queries that read a detail of a single project.
+	@FunctionalInterface
+	private interface DetailQuery<T> {
+		List<T> fetch(Connection conn, Integer projectId, Deadline deadline) throws SQLException;
+	}
+
+	/**
+	 * Fetch every project together with its materials, steps and categories. The
+	 * whole graph is read in one transaction with one query per table rather than
+	 * four queries per project, so it is suitable for building a snapshot.
+	 * 
+	 * @return All projects in project name order with their details.
+	 * @throws DbException Thrown if an error occurs reading the rows.
+	 */
+	public List<Project> fetchAllProjectGraphs() {
+		if (Objects.nonNull(shards)) {
+			return shards.scatterGather(this::fetchAllProjectGraphs, PROJECT_NAME_ORDER);
+		}
+
+		try (Connection conn = DbConnection.getReadConnection()) {
+			return fetchAllProjectGraphs(conn);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private List<Project> fetchAllProjectGraphs(Connection conn) throws SQLException {
+		// @formatter:off
+		String projectSql = ""
+				+ "SELECT * FROM " + PROJECT_TABLE + " "
+				+ "WHERE deleted_at IS NULL "
+				+ "ORDER BY project_name";
+		String materialSql = ""
+				+ "SELECT m.* FROM " + MATERIAL_TABLE + " m "
+				+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+				+ "WHERE p.deleted_at IS NULL "
+				+ "ORDER BY m.project_id, m.material_id";
+		String stepSql = ""
+				+ "SELECT s.* FROM " + STEP_TABLE + " s "
+				+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+				+ "WHERE p.deleted_at IS NULL "
+				+ "ORDER BY s.project_id, s.step_order";
+		String categorySql = ""
+				+ "SELECT pc.project_id, c.* FROM " + CATEGORY_TABLE + " c "
+				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+				+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+				+ "WHERE p.deleted_at IS NULL "
+				+ "ORDER BY pc.project_id, c.category_id";
+		// @formatter:on
+
+		startTransaction(conn);
+
+		try {
+			List<Project> projects = new LinkedList<>();
+			Map<Integer, Project> projectsById = new HashMap<>();
+
+			try (PreparedStatement stmt = conn.prepareStatement(projectSql);
+					ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Project project = extract(rs, Project.class);
+					projects.add(project);
+					projectsById.put(project.getProjectId(), project);
+				}
+			}
+
+			try (PreparedStatement stmt = conn.prepareStatement(materialSql);
+					ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Material material = extract(rs, Material.class);
+					projectsById.get(material.getProjectId()).getMaterials().add(material);
+				}
+			}
+
+			try (PreparedStatement stmt = conn.prepareStatement(stepSql);
+					ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Step step = extract(rs, Step.class);
+					projectsById.get(step.getProjectId()).getSteps().add(step);
+				}
+			}
+
+			try (PreparedStatement stmt = conn.prepareStatement(categorySql);
+					ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					projectsById.get(rs.getInt("project_id")).getCategories().add(extract(rs, Category.class));
+				}
+			}
+
+			commitTransaction(conn);
+			return projects;
+		} catch (Exception e) {
+			rollbackTransaction(conn);
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Fetch the name of every project and of each of its materials, and nothing
+	 * else. This is the data a name index needs, at a fraction of the cost of the
+	 * full graph.
+	 * 
+	 * @return Projects holding only their ID and name, each with materials holding
+	 *         only their IDs and name.
+	 * @throws DbException Thrown if an error occurs reading the rows.
+	 */
+	public List<Project> fetchProjectAndMaterialNames() {
+		if (Objects.nonNull(shards)) {
+			return shards.scatterGather(this::fetchProjectAndMaterialNames, PROJECT_NAME_ORDER);
+		}
+
+		try (Connection conn = DbConnection.getReadConnection()) {
+			return fetchProjectAndMaterialNames(conn);
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private List<Project> fetchProjectAndMaterialNames(Connection conn) throws SQLException {
+		// @formatter:off
+		String projectSql = ""
+				+ "SELECT project_id, project_name FROM " + PROJECT_TABLE + " "
+				+ "WHERE deleted_at IS NULL "
+				+ "ORDER BY project_name";
+		String materialSql = ""
+				+ "SELECT m.material_id, m.project_id, m.material_name FROM " + MATERIAL_TABLE + " m "
+				+ "JOIN " + PROJECT_TABLE + " p USING (project_id) "
+				+ "WHERE p.deleted_at IS NULL";
+		// @formatter:on
+
+		startTransaction(conn);
+
+		try {
+			List<Project> projects = new ArrayList<>();
+			Map<Integer, Project> projectsById = new HashMap<>();
+
+			try (PreparedStatement stmt = conn.prepareStatement(projectSql);
+					ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Project project = extract(rs, Project.class);
+					projects.add(project);
+					projectsById.put(project.getProjectId(), project);
+				}
+			}
+
+			try (PreparedStatement stmt = conn.prepareStatement(materialSql);
+					ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Material material = extract(rs, Material.class);
+					projectsById.get(material.getProjectId()).getMaterials().add(material);
+				}
+			}
+
+			commitTransaction(conn);
+			return projects;
+		} catch (Exception e) {
+			rollbackTransaction(conn);
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Write the full project graph to a memory-mappable snapshot file.
+	 * 
+	 * @param path The snapshot file to create or replace.
+	 * @return The number of projects written.
+	 * @throws DbException Thrown if an error occurs reading the rows or writing
+	 *                     the file.
+	 */
+	public int writeSnapshot(Path path) {
+		List<Project> projects = fetchAllProjectGraphs();
+		ProjectSnapshot.write(path, projects);
+		return projects.size();
+	}
+
+	// Write a change record for each entity to the outbox, in the caller's
+	// transaction, so the feed has a record exactly when the change commits.
+	// Child tables are reported through their project's ID.
+	private void recordChanges(Connection conn, String entity, Collection<Integer> entityIds, String operation)
+			throws SQLException {
+		if (entityIds.isEmpty()) {
+			return;
+		}
+
+		String sql = "INSERT INTO " + CHANGE_TABLE + " (entity, entity_id, operation) VALUES (?, ?, ?)";
+
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			for (Integer entityId : entityIds) {
+				setParameter(stmt, 1, entity, String.class);
+				setParameter(stmt, 2, entityId, Integer.class);
+				setParameter(stmt, 3, operation, String.class);
+				stmt.addBatch();
+			}
+
+			stmt.executeBatch();
+		}
+	}
+
+	// Open a connection for reading a project. With shards, this is the shard that
+	// owns the project. Otherwise it may be a read replica.
+	private Connection readConnection(Integer projectId, Deadline deadline) {
+		return Objects.isNull(shards) ? DbConnection.getReadConnection(deadline)
+				: shards.getConnection(projectId, deadline);
+	}
+
+	// Open a connection for writing a project. With shards, this is the shard that
+	// owns the project. Otherwise it is the primary.
+	private Connection writeConnection(Integer projectId, Deadline deadline) {
+		return Objects.isNull(shards) ? DbConnection.getConnection(deadline) : shards.getConnection(projectId, deadline);
+	}
+
+	// Prepare a statement whose query timeout is the time left before the
+	// deadline, so the driver cancels it if it runs too long.
+	private PreparedStatement prepare(Connection conn, String sql, Deadline deadline) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(sql);
+
+		try {
+			deadline.applyTo(stmt);
+			return stmt;
+		} catch (SQLException | RuntimeException e) {
+			stmt.close();
+			throw e;
+		}
+	}
+
+	// Commit only if the deadline has not passed. A late transaction is rolled
+	// back by the caller instead.
+	private void commitTransaction(Connection conn, Deadline deadline) throws SQLException {
+		deadline.check("commit");
+		commitTransaction(conn);
+	}
+
+	// Convert a failure inside a transaction into the exception the caller sees.
+	// Exceptions that already describe the failure are passed through.
+	private DbException failure(Exception e, Deadline deadline) {
+		if (e instanceof DbException) {
+			return (DbException) e;
+		}
+
+		if (e instanceof SQLTimeoutException || deadline.isExpired()) {
+			return new DeadlineExceededException("Deadline exceeded while accessing the database.", e);
+		}
+
+		return new DbException(e);
+	}
+
+	// This method fetches categories related to a project by the project ID. It
+	// prepares the SQL statement, executes the query, and extracts the categories
+	// from the result set.
+	private List<Category> fetchCategoriesForProject(Connection conn, Integer projectId, Deadline deadline)
+			throws SQLException {
+		//* @formatter:off
+		String sql = ""
+				+ "SELECT c.* FROM " + CATEGORY_TABLE + " c "
+				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+				+ "WHERE project_id = ?";
+		//* @formatter:on
+
+		try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				List<Category> categories = new LinkedList<>();
+
+				while (rs.next()) {
+					categories.add(extract(rs, Category.class));
+				}
+
+				return categories;
+			}
+		}
+	}
+
+	// This method fetches steps related to a project by the project ID. It prepares
+	// the SQL statement, executes the query, and extracts the steps from the result
+	// set.
+	private List<Step> fetchStepsForProject(Connection conn, Integer projectId, Deadline deadline)
+			throws SQLException {
+		String sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ? ORDER BY step_order";
+
+		try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				List<Step> steps = new LinkedList<>();
+
+				while (rs.next()) {
+					steps.add(extract(rs, Step.class));
+				}
+
+				return steps;
+			}
+		}
+	}
+
+	// This method fetches materials related to a project by the project ID. It
+	// prepares the SQL statement, executes the query, and extracts the materials
+	// from the result set.
+	private List<Material> fetchMaterialsForProject(Connection conn, Integer projectId, Deadline deadline)
+			throws SQLException {
+		String sql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ? ORDER BY material_id";
+
+		try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				List<Material> materials = new LinkedList<>();
+
+				while (rs.next()) {
+					materials.add(extract(rs, Material.class));
+				}
+
+				return materials;
+			}
+		}
+	}
+
+	/**
+	 * Update only the columns of a project that changed since it was loaded. The
+	 * UPDATE statement for each combination of changed columns is built once and
+	 * cached. If nothing changed, the database is not contacted at all.
+	 * 
+	 * If the project carries a version, the update is a compare-and-set: it only
+	 * succeeds if the row still has that version, and the version is incremented.
+	 * A project without a version is updated unconditionally.
+	 * 
+	 * @param project The project with its changed columns.
+	 * @return {@code true} if the row was updated or there was nothing to update,
+	 *         {@code false} if the project does not exist.
+	 * @throws OptimisticLockException Thrown if the row was changed by someone
+	 *                                 else since the project was read.
+	 * @throws DbException             Thrown if an error occurs updating the row.
+	 */
+	public boolean modifyProjectDetails(Project project) {
+		return modifyProjectDetails(project, Deadline.NONE);
+	}
+
+	/**
+	 * Update the changed columns of a project within a deadline.
+	 * 
+	 * @param project  The project with its changed columns.
+	 * @param deadline The caller's deadline.
+	 * @return {@code true} if the row was updated or there was nothing to update,
+	 *         {@code false} if the project does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes before the
+	 *                                   update is committed.
+	 */
+	public boolean modifyProjectDetails(Project project, Deadline deadline) {
+		/* A versioned update that committed unseen would conflict with itself. */
+		boolean idempotent = Objects.isNull(project.getVersion());
+
+		return retryPolicy.execute(deadline, idempotent, () -> modifyProjectDetailsOnce(project, deadline));
+	}
+
+	// One attempt at updating a project, in its own transaction.
+	private boolean modifyProjectDetailsOnce(Project project, Deadline deadline) {
+		if (!project.isDirty()) {
+			return true;
+		}
+
+		List<String> columns = new ArrayList<>(project.getDirtyColumns().size());
+		String sql = updateSqlFor(project, columns);
+		Integer version = project.getVersion();
+
+		try (Connection conn = writeConnection(project.getProjectId(), deadline)) {
+			startTransaction(conn);
+
+			try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+				bindUpdate(stmt, project, columns);
+
+				boolean modified = stmt.executeUpdate() == 1;
+
+				if (!modified && Objects.nonNull(version)) {
+					checkVersionConflict(conn, project.getProjectId(), version, deadline);
+				}
+
+				if (modified) {
+					recordChanges(conn, PROJECT_TABLE, List.of(project.getProjectId()), OPERATION_UPDATE);
+				}
+
+				commitTransaction(conn, deadline);
+				DbConnection.recordWrite();
+
+				if (modified) {
+					project.clearDirtyColumns();
+
+					if (Objects.nonNull(version)) {
+						project.setVersion(version + 1);
+					}
+				}
+
+				return modified;
+
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw failure(e, deadline);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Update the changed columns of many projects in one transaction. Projects
+	 * that change the same set of columns share one statement, which is sent as a
+	 * JDBC batch. Projects with nothing changed are skipped.
+	 * 
+	 * @param projects The projects with their changed columns.
+	 * @return The number of rows updated. Projects that do not exist, or whose
+	 *         version no longer matches, are not counted.
+	 * @throws DbException Thrown if an error occurs updating the rows. No row is
+	 *                     updated in that case.
+	 */
+	public int modifyProjectDetails(Collection<Project> projects) {
+		if (Objects.nonNull(shards)) {
+			/* Projects are spread over shards, so each is its own transaction. */
+			int modified = 0;
+
+			for (Project project : projects) {
+				if (project.isDirty() && modifyProjectDetails(project)) {
+					modified++;
+				}
+			}
+
+			return modified;
+		}
+
+		/* As for one project, a versioned update that committed unseen would conflict with itself. */
+		boolean idempotent = projects.stream().allMatch(project -> Objects.isNull(project.getVersion()));
+
+		return retryPolicy.execute(Deadline.NONE, idempotent, () -> modifyProjectDetailsOnce(projects));
+	}
+
+	// One attempt at updating a batch of projects, in a single transaction.
+	private int modifyProjectDetailsOnce(Collection<Project> projects) {
+		Map<String, List<Project>> projectsBySql = new LinkedHashMap<>();
+		Map<Project, List<String>> columnsByProject = new IdentityHashMap<>();
+
+		for (Project project : projects) {
+			if (project.isDirty()) {
+				List<String> columns = new ArrayList<>(project.getDirtyColumns().size());
+				projectsBySql.computeIfAbsent(updateSqlFor(project, columns), sql -> new ArrayList<>()).add(project);
+				columnsByProject.put(project, columns);
+			}
+		}
+
+		if (projectsBySql.isEmpty()) {
+			return 0;
+		}
+
+		try (Connection conn = DbConnection.getConnection()) {
+			startTransaction(conn);
+
+			try {
+				List<Project> updated = new ArrayList<>();
+
+				for (Map.Entry<String, List<Project>> entry : projectsBySql.entrySet()) {
+					try (PreparedStatement stmt = conn.prepareStatement(entry.getKey())) {
+						for (Project project : entry.getValue()) {
+							bindUpdate(stmt, project, columnsByProject.get(project));
+							stmt.addBatch();
+						}
 
-				stmt.executeUpdate();
+						int[] counts = stmt.executeBatch();
 
-				Integer projectID = getLastInsertId(conn, PROJECT_TABLE);
+						for (int i = 0; i < counts.length; i++) {
+							if (counts[i] == 1) {
+								updated.add(entry.getValue().get(i));
+							}
+						}
+					}
+				}
 
+				List<Integer> updatedIds = new ArrayList<>(updated.size());
+				updated.forEach(project -> updatedIds.add(project.getProjectId()));
+				recordChanges(conn, PROJECT_TABLE, updatedIds, OPERATION_UPDATE);
 				commitTransaction(conn);
-				project.setProjectId(projectID);
-				return project;
+				DbConnection.recordWrite();
+
+				for (Project project : updated) {
+					project.clearDirtyColumns();
+
+					if (Objects.nonNull(project.getVersion())) {
+						project.setVersion(project.getVersion() + 1);
+					}
+				}
+
+				return updated.size();
 			} catch (Exception e) {
 				rollbackTransaction(conn);
-				throw new DbException(e);
+				throw failure(e, Deadline.NONE);
 			}
 		} catch (SQLException e) {
 			throw new DbException(e);
 		}
 	}
 
-	// This method fetches all projects from the project table. It starts a
-	// transaction, prepares the SQL statement, executes the query, and commits the
-	// transaction. In case of any exception, the transaction is rolled back.
-	public List<Project> fetchAllProjects() {
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_name";
+	// Fill in the project's changed columns, in statement order, and return the
+	// UPDATE statement for them.
+	private String updateSqlFor(Project project, List<String> columns) {
+		checkUpdatableColumns(project);
 
-		try (Connection conn = DbConnection.getConnection()) {
-			startTransaction(conn);
+		int mask = 0;
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				try (ResultSet rs = stmt.executeQuery()) {
-					List<Project> projects = new LinkedList<>();
+		for (int i = 0; i < PROJECT_DETAIL_COLUMNS.length; i++) {
+			if (project.getDirtyColumns().contains(PROJECT_DETAIL_COLUMNS[i])) {
+				columns.add(PROJECT_DETAIL_COLUMNS[i]);
+				mask |= 1 << i;
+			}
+		}
 
-					while (rs.next()) {
-						projects.add(extract(rs, Project.class));
-					}
+		if (Objects.nonNull(project.getVersion())) {
+			mask |= 1 << PROJECT_DETAIL_COLUMNS.length;
+		}
+
+		return updateSqlFor(mask, columns);
+	}
+
+	// Bind the changed columns, the project ID and, if present, the expected
+	// version to an UPDATE statement from updateSqlFor.
+	private void bindUpdate(PreparedStatement stmt, Project project, List<String> columns) throws SQLException {
+		int index = 1;
+
+		for (String column : columns) {
+			index = setProjectColumn(stmt, index, project, column);
+		}
+
+		setParameter(stmt, index++, project.getProjectId(), Integer.class);
 
-					return projects;
+		if (Objects.nonNull(project.getVersion())) {
+			setParameter(stmt, index, project.getVersion(), Integer.class);
+		}
+	}
+
+	// Return the cached UPDATE statement for a set of changed columns, building
+	// it the first time that combination is seen. The highest bit of the mask
+	// selects the compare-and-set form that checks the row version.
+	private String updateSqlFor(int mask, List<String> columns) {
+		String sql = updateSqlCache[mask];
+
+		if (Objects.isNull(sql)) {
+			StringJoiner assignments = new StringJoiner(", ");
+			columns.forEach(column -> storedColumns(column).forEach(stored -> assignments.add(stored + " = ?")));
+			assignments.add("version = version + 1");
+
+			sql = "UPDATE " + PROJECT_TABLE + " SET " + assignments + " WHERE project_id = ? AND deleted_at IS NULL";
+
+			if ((mask & (1 << PROJECT_DETAIL_COLUMNS.length)) != 0) {
+				sql += " AND version = ?";
+			}
+
+			updateSqlCache[mask] = sql;
+		}
+
+		return sql;
+	}
+
+	// Called when a compare-and-set matched no row. If the project still exists,
+	// its version changed, which is a conflict. Otherwise the project is missing
+	// and the caller reports that as usual.
+	private void checkVersionConflict(Connection conn, Integer projectId, Integer expectedVersion,
+			Deadline deadline) throws SQLException {
+		String sql = "SELECT version FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_at IS NULL";
+
+		try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					throw new OptimisticLockException("Project with ID=" + projectId + " was changed by another user"
+							+ " (expected version " + expectedVersion + ", found " + rs.getInt(1) + ").");
 				}
-			} catch (Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);
 			}
-		} catch (SQLException e) {
-			throw new DbException(e);
 		}
 	}
 
-	// This method fetches a project by its ID from the project table. It also
-	// fetches related materials, steps, and categories for the project. It starts a
-	// transaction, prepares the SQL statement, executes the query, and commits the
-	// transaction. In case of any exception, the transaction is rolled back.
-	public Optional<Project> fetchProjectById(Integer projectId) {
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+	// The table columns that hold a project detail column. Notes are stored in
+	// one of two columns, depending on whether they were compressed.
+	private static List<String> storedColumns(String column) {
+		return column.equals("notes") ? List.of("notes", "notes_compressed") : List.of(column);
+	}
 
-		try (Connection conn = DbConnection.getConnection()) {
+	// Bind text to two parameters, its TEXT column and the compressed column
+	// beside it. At most one of the two is non-null.
+	private void setText(PreparedStatement stmt, int index, String text) throws SQLException {
+		byte[] compressed = TextCodec.compress(text, textCompressionThreshold);
+
+		setParameter(stmt, index, Objects.isNull(compressed) ? text : null, String.class);
+
+		/* DaoBase does not bind byte arrays. */
+		if (Objects.isNull(compressed)) {
+			stmt.setNull(index + 1, Types.VARBINARY);
+		} else {
+			stmt.setBytes(index + 1, compressed);
+		}
+	}
+
+	// Bind the value of one project detail column to the parameters of its
+	// stored columns, and return the index of the next parameter.
+	private int setProjectColumn(PreparedStatement stmt, int index, Project project, String column)
+			throws SQLException {
+		switch (column) {
+		case "project_name":
+			setParameter(stmt, index, project.getProjectName(), String.class);
+			break;
+
+		case "estimated_hours":
+			setParameter(stmt, index, project.getEstimatedHours(), BigDecimal.class);
+			break;
+
+		case "actual_hours":
+			setParameter(stmt, index, project.getActualHours(), BigDecimal.class);
+			break;
+
+		case "difficulty":
+			setParameter(stmt, index, project.getDifficulty(), Integer.class);
+			break;
+
+		case "notes":
+			setText(stmt, index, project.getNotes());
+			return index + 2;
+
+		default:
+			throw new DbException("Unknown project column: " + column);
+		}
+
+		return index + 1;
+	}
+
+	/**
+	 * Append entries to the work log and add their hours to each project's actual
+	 * hours. All entries for a shard are written in one transaction: one
+	 * multi-row INSERT for the entries and one UPDATE per project that adds the
+	 * sum of its new hours, so a project's actual hours always equal its starting
+	 * value plus its logged hours. The version is not changed: nothing but the
+	 * log writes actual hours (see {@link #checkUpdatableColumns}), so an edit of
+	 * the project's details made with a version read before the time was logged
+	 * cannot overwrite it, and logging time does not make such edits fail.
+	 * 
+	 * @param entries  The entries to write. Their IDs and, if missing, their
+	 *                 times are filled in.
+	 * @param deadline The caller's deadline.
+	 * @return The entries that were written. Entries for projects that do not
+	 *         exist or are deleted are left out; the others are still written.
+	 * @throws DeadlineExceededException Thrown if the deadline passes before the
+	 *                                   entries are committed.
+	 * @throws DbException               Thrown if an error occurs writing the
+	 *                                   entries. None are written in that case.
+	 */
+	public List<WorkLogEntry> appendWorkLog(List<WorkLogEntry> entries, Deadline deadline) {
+		if (entries.isEmpty()) {
+			return List.of();
+		}
+
+		if (Objects.isNull(shards)) {
+			return retryPolicy.execute(deadline, false, () -> appendWorkLogOnce(entries, deadline));
+		}
+
+		Map<Integer, List<WorkLogEntry>> entriesByShard = new TreeMap<>();
+
+		for (WorkLogEntry entry : entries) {
+			entriesByShard.computeIfAbsent(shards.shardFor(entry.getProjectId()), shard -> new ArrayList<>())
+					.add(entry);
+		}
+
+		List<WorkLogEntry> written = new ArrayList<>();
+
+		for (List<WorkLogEntry> shardEntries : entriesByShard.values()) {
+			written.addAll(retryPolicy.execute(deadline, false, () -> appendWorkLogOnce(shardEntries, deadline)));
+		}
+
+		return written;
+	}
+
+	/**
+	 * Check that an update of a project changes only columns an update may
+	 * change. A project's actual hours are its starting value plus its logged
+	 * hours, so after the project is created only {@link #appendWorkLog} changes
+	 * them.
+	 * 
+	 * @param project The project with its changed columns.
+	 * @throws DbException Thrown if the actual hours were changed.
+	 */
+	public static void checkUpdatableColumns(Project project) {
+		if (project.getDirtyColumns().contains("actual_hours")) {
+			throw new DbException("The actual hours of project " + project.getProjectId()
+					+ " are the total of its work log. Log work to change them.");
+		}
+	}
+
+	// One attempt at appending entries that all belong to one shard, in a single
+	// transaction.
+	private List<WorkLogEntry> appendWorkLogOnce(List<WorkLogEntry> entries, Deadline deadline) {
+		String updateSql = "UPDATE " + PROJECT_TABLE
+				+ " SET actual_hours = COALESCE(actual_hours, 0) + ? WHERE project_id = ?";
+
+		try (Connection conn = writeConnection(entries.get(0).getProjectId(), deadline)) {
 			startTransaction(conn);
 
 			try {
-				Project project = null;
+				Set<Integer> projectIds = lockLiveProjects(conn, entries, deadline);
+				List<WorkLogEntry> written = new ArrayList<>();
+				Map<Integer, BigDecimal> hoursByProject = new TreeMap<>();
 
-				try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-					setParameter(stmt, 1, projectId, Integer.class);
+				for (WorkLogEntry entry : entries) {
+					if (projectIds.contains(entry.getProjectId())) {
+						written.add(entry);
+						hoursByProject.merge(entry.getProjectId(), entry.getHours(), BigDecimal::add);
+					}
+				}
 
-					try (ResultSet rs = stmt.executeQuery()) {
-						if (rs.next()) {
-							project = extract(rs, Project.class);
-						}
+				if (written.isEmpty()) {
+					rollbackTransaction(conn);
+					return written;
+				}
+
+				/* The rows get their times now; a retried attempt keeps them. */
+				LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+				for (WorkLogEntry entry : written) {
+					if (Objects.isNull(entry.getLoggedAt())) {
+						entry.setLoggedAt(now);
 					}
 				}
-				if (Objects.nonNull(project)) {
-					project.getMaterials().addAll(fetchMaterialsForProject(conn, projectId));
-					project.getSteps().addAll(fetchStepsForProject(conn, projectId));
-					project.getCategories().addAll(fetchCategoriesForProject(conn, projectId));
+
+				List<Long> workLogIds = new ArrayList<>(written.size());
+
+				for (int from = 0; from < written.size(); from += WORK_LOG_ROWS_PER_INSERT) {
+					List<WorkLogEntry> rows = written.subList(from,
+							Math.min(from + WORK_LOG_ROWS_PER_INSERT, written.size()));
+					workLogIds.addAll(insertWorkLogRows(conn, rows, deadline));
 				}
 
-				commitTransaction(conn);
+				/* Projects are updated in ID order, the order in which they were locked. */
+				try (PreparedStatement stmt = prepare(conn, updateSql, deadline)) {
+					for (Map.Entry<Integer, BigDecimal> hours : hoursByProject.entrySet()) {
+						setParameter(stmt, 1, hours.getValue(), BigDecimal.class);
+						setParameter(stmt, 2, hours.getKey(), Integer.class);
+						stmt.addBatch();
+					}
 
-				return Optional.ofNullable(project);
+					stmt.executeBatch();
+				}
+
+				recordChanges(conn, PROJECT_TABLE, hoursByProject.keySet(), OPERATION_UPDATE);
+				commitTransaction(conn, deadline);
+				DbConnection.recordWrite();
+
+				for (int i = 0; i < written.size(); i++) {
+					written.get(i).setWorkLogId(workLogIds.get(i));
+				}
+
+				return written;
 			} catch (Exception e) {
 				rollbackTransaction(conn);
-				throw new DbException(e);
+				throw failure(e, deadline);
 			}
 		} catch (SQLException e) {
 			throw new DbException(e);
 		}
 	}
 
-	// This method fetches categories related to a project by the project ID. It
-	// prepares the SQL statement, executes the query, and extracts the categories
-	// from the result set.
-	private List<Category> fetchCategoriesForProject(Connection conn, Integer projectId) throws SQLException {
-		//* @formatter:off
+	// Lock the rows of the entries' projects that exist and are not deleted, in
+	// ID order, and return their IDs.
+	private Set<Integer> lockLiveProjects(Connection conn, List<WorkLogEntry> entries, Deadline deadline)
+			throws SQLException {
+		List<Integer> requested = new ArrayList<>(new TreeSet<>(entries.stream().map(WorkLogEntry::getProjectId)
+				.filter(Objects::nonNull).toList()));
+		Set<Integer> projectIds = new HashSet<>();
+
+		if (requested.isEmpty()) {
+			return projectIds;
+		}
+
+		StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+		requested.forEach(projectId -> placeholders.add("?"));
+
+		// @formatter:off
 		String sql = ""
-				+ "SELECT c.* FROM " + CATEGORY_TABLE + " c "
-				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
-				+ "WHERE project_id = ?";
-		//* @formatter:on
+				+ "SELECT project_id FROM " + PROJECT_TABLE + " "
+				+ "WHERE project_id IN " + placeholders + " AND deleted_at IS NULL "
+				+ "ORDER BY project_id "
+				+ "FOR UPDATE";
+		// @formatter:on
 
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-			setParameter(stmt, 1, projectId, Integer.class);
+		try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
+			bindIds(stmt, requested);
 
 			try (ResultSet rs = stmt.executeQuery()) {
-				List<Category> categories = new LinkedList<>();
-
 				while (rs.next()) {
-					categories.add(extract(rs, Category.class));
+					projectIds.add(rs.getInt(1));
 				}
-
-				return categories;
 			}
 		}
+
+		return projectIds;
 	}
 
-	// This method fetches steps related to a project by the project ID. It prepares
-	// the SQL statement, executes the query, and extracts the steps from the result
-	// set.
-	private List<Step> fetchStepsForProject(Connection conn, Integer projectId) throws SQLException {
-		String sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ?";
+	// Insert work-log rows with one multi-row INSERT and return their IDs in
+	// order.
+	private List<Long> insertWorkLogRows(Connection conn, List<WorkLogEntry> rows, Deadline deadline)
+			throws SQLException {
+		StringJoiner values = new StringJoiner(", ");
+		rows.forEach(row -> values.add("(?, ?, ?)"));
 
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-			setParameter(stmt, 1, projectId, Integer.class);
+		String sql = "INSERT INTO " + WORK_LOG_TABLE + " (project_id, hours, logged_at) VALUES " + values;
 
-			try (ResultSet rs = stmt.executeQuery()) {
-				List<Step> steps = new LinkedList<>();
+		try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+			deadline.applyTo(stmt);
 
-				while (rs.next()) {
-					steps.add(extract(rs, Step.class));
+			int index = 1;
+
+			for (WorkLogEntry row : rows) {
+				setParameter(stmt, index++, row.getProjectId(), Integer.class);
+				setParameter(stmt, index++, row.getHours(), BigDecimal.class);
+
+				/* DaoBase does not bind timestamps. */
+				stmt.setTimestamp(index++, Timestamp.valueOf(row.getLoggedAt()));
+			}
+
+			stmt.executeUpdate();
+
+			try (ResultSet keys = stmt.getGeneratedKeys()) {
+				List<Long> workLogIds = new ArrayList<>(rows.size());
+
+				while (keys.next()) {
+					workLogIds.add(keys.getLong(1));
 				}
 
-				return steps;
+				return workLogIds;
 			}
 		}
 	}
 
-	// This method fetches materials related to a project by the project ID. It
-	// prepares the SQL statement, executes the query, and extracts the materials
-	// from the result set.
-	private List<Material> fetchMaterialsForProject(Connection conn, Integer projectId) throws SQLException {
-		String sql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ?";
+	/**
+	 * Fetch a project's work log, newest first.
+	 * 
+	 * @param projectId The project ID.
+	 * @param limit     The most entries to return.
+	 * @return The entries.
+	 * @throws DbException Thrown if an error occurs reading the rows.
+	 */
+	public List<WorkLogEntry> fetchWorkLog(Integer projectId, int limit) {
+		// @formatter:off
+		String sql = ""
+				+ "SELECT * FROM " + WORK_LOG_TABLE + " "
+				+ "WHERE project_id = ? "
+				+ "ORDER BY logged_at DESC, work_log_id DESC "
+				+ "LIMIT ?";
+		// @formatter:on
 
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-			setParameter(stmt, 1, projectId, Integer.class);
+		try (Connection conn = readConnection(projectId, Deadline.NONE)) {
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				setParameter(stmt, 1, projectId, Integer.class);
+				setParameter(stmt, 2, limit, Integer.class);
 
-			try (ResultSet rs = stmt.executeQuery()) {
-				List<Material> materials = new LinkedList<>();
+				try (ResultSet rs = stmt.executeQuery()) {
+					List<WorkLogEntry> entries = new ArrayList<>();
 
-				while (rs.next()) {
-					materials.add(extract(rs, Material.class));
+					while (rs.next()) {
+						entries.add(extract(rs, WorkLogEntry.class));
+					}
+
+					return entries;
 				}
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
 
-				return materials;
+	/**
+	 * Make a project's categories exactly the given set. The current links are
+	 * read once and compared with the new set, and only the links that differ
+	 * are inserted or deleted, each kind as one batch.
+	 * 
+	 * @param projectId   The project ID.
+	 * @param categoryIds The IDs of the categories the project should have.
+	 * @return The number of links inserted plus the number deleted.
+	 * @throws DbException Thrown if a project or category does not exist or an
+	 *                     error occurs writing the links.
+	 */
+	public int setProjectCategories(Integer projectId, Set<Integer> categoryIds) {
+		return setProjectCategories(Map.of(projectId, categoryIds));
+	}
+
+	/**
+	 * Set the categories of many projects in one transaction. The current links
+	 * of all of the projects are read with one query, and the differences are
+	 * applied as one batched delete and one batched insert.
+	 * 
+	 * @param categoryIdsByProject The category IDs each project should have,
+	 *                             keyed by project ID.
+	 * @return The number of links inserted plus the number deleted.
+	 * @throws DbException Thrown if a project or category does not exist or an
+	 *                     error occurs writing the links. No link is changed in
+	 *                     that case.
+	 */
+	public int setProjectCategories(Map<Integer, Set<Integer>> categoryIdsByProject) {
+		if (categoryIdsByProject.isEmpty()) {
+			return 0;
+		}
+
+		if (Objects.nonNull(shards)) {
+			/* Projects are spread over shards, so each is its own transaction. */
+			int changed = 0;
+
+			for (Map.Entry<Integer, Set<Integer>> entry : categoryIdsByProject.entrySet()) {
+				Map<Integer, Set<Integer>> single = Map.of(entry.getKey(), entry.getValue());
+				changed += retryPolicy.execute(Deadline.NONE, true, () -> setProjectCategoriesOnce(single));
 			}
+
+			return changed;
 		}
+
+		return retryPolicy.execute(Deadline.NONE, true, () -> setProjectCategoriesOnce(categoryIdsByProject));
 	}
 
-	// This method modifies the details of a project in the project table. It starts
-	// a transaction, prepares the SQL statement, executes the update, and commits
-	// the transaction. In case of any exception, the transaction is rolled back.
-	public boolean modifyProjectDetails(Project project) {
+	// One attempt at setting the categories of projects that share a schema, in
+	// a single transaction.
+	private int setProjectCategoriesOnce(Map<Integer, Set<Integer>> categoryIdsByProject) {
+		StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+		categoryIdsByProject.keySet().forEach(projectId -> placeholders.add("?"));
+
 		// @formatter:off
-		String sql = ""
-				+ "UPDATE " + PROJECT_TABLE + " SET "
-				+ "project_name = ?, "
-				+ "estimated_hours = ?, "
-				+ "actual_hours = ?, "
-				+ "difficulty = ?, "
-				+ "notes = ? "
-				+ "WHERE project_id = ?";
+		String selectSql = ""
+				+ "SELECT project_id, category_id FROM " + PROJECT_CATEGORY_TABLE + " "
+				+ "WHERE project_id IN " + placeholders + " "
+				+ "FOR UPDATE";
+		String deleteSql = ""
+				+ "DELETE FROM " + PROJECT_CATEGORY_TABLE + " "
+				+ "WHERE project_id = ? AND category_id = ?";
+		// The unique key turns inserting a link that already exists into a no-op.
+		String insertSql = ""
+				+ "INSERT INTO " + PROJECT_CATEGORY_TABLE + " (project_id, category_id) "
+				+ "VALUES (?, ?) "
+				+ "ON DUPLICATE KEY UPDATE category_id = category_id";
 		// @formatter:on
-		try (Connection conn = DbConnection.getConnection()) {
+
+		Integer anyProjectId = categoryIdsByProject.keySet().iterator().next();
+
+		try (Connection conn = writeConnection(anyProjectId, Deadline.NONE)) {
 			startTransaction(conn);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
-				setParameter(stmt, 6, project.getProjectId(), Integer.class);
+			try {
+				Map<Integer, Set<Integer>> current = new HashMap<>();
 
-				boolean modified = stmt.executeUpdate() == 1;
+				/* Locking the current links keeps concurrent setters from interleaving. */
+				try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+					int index = 1;
+
+					for (Integer projectId : categoryIdsByProject.keySet()) {
+						setParameter(stmt, index++, projectId, Integer.class);
+					}
+
+					try (ResultSet rs = stmt.executeQuery()) {
+						while (rs.next()) {
+							current.computeIfAbsent(rs.getInt("project_id"), projectId -> new HashSet<>())
+									.add(rs.getInt("category_id"));
+						}
+					}
+				}
+
+				int changed = 0;
+				List<Integer> changedProjects = new ArrayList<>();
+
+				try (PreparedStatement delete = conn.prepareStatement(deleteSql);
+						PreparedStatement insert = conn.prepareStatement(insertSql)) {
+					for (Map.Entry<Integer, Set<Integer>> entry : categoryIdsByProject.entrySet()) {
+						Integer projectId = entry.getKey();
+						Set<Integer> existing = current.getOrDefault(projectId, Set.of());
+						int changedBefore = changed;
+
+						for (Integer categoryId : existing) {
+							if (!entry.getValue().contains(categoryId)) {
+								setParameter(delete, 1, projectId, Integer.class);
+								setParameter(delete, 2, categoryId, Integer.class);
+								delete.addBatch();
+								changed++;
+							}
+						}
+
+						for (Integer categoryId : entry.getValue()) {
+							if (!existing.contains(categoryId)) {
+								setParameter(insert, 1, projectId, Integer.class);
+								setParameter(insert, 2, categoryId, Integer.class);
+								insert.addBatch();
+								changed++;
+							}
+						}
+
+						if (changed > changedBefore) {
+							changedProjects.add(projectId);
+						}
+					}
+
+					if (changed > 0) {
+						delete.executeBatch();
+						insert.executeBatch();
+					}
+				}
+
+				recordChanges(conn, PROJECT_CATEGORY_TABLE, changedProjects, OPERATION_UPDATE);
 				commitTransaction(conn);
 
-				return modified;
+				if (changed > 0) {
+					DbConnection.recordWrite();
+				}
 
+				return changed;
 			} catch (Exception e) {
 				rollbackTransaction(conn);
-				throw new DbException(e);
+				throw failure(e, Deadline.NONE);
 			}
 		} catch (SQLException e) {
 			throw new DbException(e);
@@ -250,21 +2068,83 @@ public class ProjectDao extends DaoBase {
 	// transaction, prepares the SQL statement, executes the update, and commits the
 	// transaction. In case of any exception, the transaction is rolled back.
 	public boolean deleteProject(Integer projectId) {
-		String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ?";
+		return deleteProject(projectId, null);
+	}
 
-		try (Connection conn = DbConnection.getConnection()) {
+	/**
+	 * Delete a project if it still has the given version. This is a
+	 * compare-and-set, so a project that was changed by someone else after it was
+	 * read is not deleted.
+	 * 
+	 * @param projectId The project ID.
+	 * @param version   The version that was read, or {@code null} to delete
+	 *                  unconditionally.
+	 * @return {@code true} if the project was deleted, {@code false} if it does
+	 *         not exist.
+	 * @throws OptimisticLockException Thrown if the project has a different
+	 *                                 version.
+	 * @throws DbException             Thrown if an error occurs deleting the row.
+	 */
+	public boolean deleteProject(Integer projectId, Integer version) {
+		return deleteProject(projectId, version, Deadline.NONE);
+	}
+
+	/**
+	 * Delete a project within a deadline.
+	 * 
+	 * @param projectId The project ID.
+	 * @param version   The version that was read, or {@code null} to delete
+	 *                  unconditionally.
+	 * @param deadline  The caller's deadline.
+	 * @return {@code true} if the project was deleted, {@code false} if it does
+	 *         not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes before the
+	 *                                   delete is committed.
+	 */
+	public boolean deleteProject(Integer projectId, Integer version, Deadline deadline) {
+		return retryPolicy.execute(deadline, true, () -> deleteProjectOnce(projectId, version, deadline));
+	}
+
+	// One attempt at deleting a project, in its own transaction. A soft delete
+	// touches only the project row, so it is as quick as a detail update.
+	private boolean deleteProjectOnce(Integer projectId, Integer version, Deadline deadline) {
+		// @formatter:off
+		String sql = softDelete
+				? "UPDATE " + PROJECT_TABLE + " SET deleted_at = CURRENT_TIMESTAMP, version = version + 1 "
+						+ "WHERE project_id = ? AND deleted_at IS NULL"
+				: "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_at IS NULL";
+		// @formatter:on
+
+		if (Objects.nonNull(version)) {
+			sql += " AND version = ?";
+		}
+
+		try (Connection conn = writeConnection(projectId, deadline)) {
 			startTransaction(conn);
 
-			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			try (PreparedStatement stmt = prepare(conn, sql, deadline)) {
 				setParameter(stmt, 1, projectId, Integer.class);
 
+				if (Objects.nonNull(version)) {
+					setParameter(stmt, 2, version, Integer.class);
+				}
+
 				boolean deleted = stmt.executeUpdate() == 1;
 
-				commitTransaction(conn);
+				if (!deleted && Objects.nonNull(version)) {
+					checkVersionConflict(conn, projectId, version, deadline);
+				}
+
+				if (deleted) {
+					recordChanges(conn, PROJECT_TABLE, List.of(projectId), OPERATION_DELETE);
+				}
+
+				commitTransaction(conn, deadline);
+				DbConnection.recordWrite();
 				return deleted;
 			} catch (Exception e) {
 				rollbackTransaction(conn);
-				throw new DbException(e);
+				throw failure(e, deadline);
 			}
 		} catch (SQLException e) {
 			throw new DbException(e);
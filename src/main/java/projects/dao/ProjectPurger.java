@@ -0,0 +1,350 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import projects.exception.DbException;
+import provided.util.DaoBase;
+
+/**
+ * This class removes the rows of soft-deleted projects. Child rows are deleted
+ * in small chunks, each in its own short transaction, with a pause between
+ * chunks so other writers are never blocked for long. The project row is
+ * deleted last, once nothing references it.
+ *
+ * A purge can be interrupted at any point. The project stays flagged, so the
+ * next run carries on where the last one stopped.
+ */
+public class ProjectPurger extends DaoBase implements AutoCloseable {
+	private static final String MATERIAL_TABLE = "material";
+	private static final String PROJECT_TABLE = "project";
+	private static final String PROJECT_CATEGORY_TABLE = "project_category";
+	private static final String STEP_TABLE = "step";
+	private static final String WORK_LOG_TABLE = "work_log";
+
+	// Child tables in the order they are emptied.
+	private static final String[] CHILD_TABLES = { MATERIAL_TABLE, STEP_TABLE, PROJECT_CATEGORY_TABLE,
+			WORK_LOG_TABLE };
+
+	// The most soft-deleted projects looked up per query.
+	private static final int PROJECT_BATCH_SIZE = 100;
+
+	private final ShardRouter shards;
+	private final int chunkSize;
+	private final long pauseNanos;
+
+	private ScheduledExecutorService scheduler;
+	private volatile boolean closed;
+
+	private final AtomicLong projectsPurged = new AtomicLong();
+	private final AtomicLong rowsPurged = new AtomicLong();
+	private final AtomicLong chunks = new AtomicLong();
+	private final AtomicLong backlog = new AtomicLong();
+	private volatile RuntimeException lastFailure;
+
+	/**
+	 * Create a purger. Use {@link ProjectDao#createPurger(int, Duration)} to get
+	 * one for the DAO's database.
+	 *
+	 * @param shards    The shard router, or {@code null} for a single schema.
+	 * @param chunkSize The most child rows deleted per transaction.
+	 * @param pause     How long to wait between chunks.
+	 */
+	ProjectPurger(ShardRouter shards, int chunkSize, Duration pause) {
+		this.shards = shards;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.pauseNanos = pause.toNanos();
+	}
+
+	/**
+	 * Purge in the background, starting a new run the given interval after the
+	 * last one finished.
+	 *
+	 * @param interval The delay between runs.
+	 */
+	public synchronized void start(Duration interval) {
+		if (closed) {
+			throw new IllegalStateException("The purger is closed.");
+		}
+
+		if (Objects.nonNull(scheduler)) {
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "project-purger");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long intervalMillis = Math.max(1, interval.toMillis());
+		scheduler.scheduleWithFixedDelay(this::runQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Purge every project that is soft-deleted when the run starts.
+	 *
+	 * @return The number of projects removed.
+	 * @throws DbException Thrown if a chunk fails. Chunks already committed stay
+	 *                     committed.
+	 */
+	public int purge() {
+		int purged = 0;
+		int shardCount = Objects.isNull(shards) ? 1 : shards.shardCount();
+
+		for (int shard = 0; shard < shardCount && !closed; shard++) {
+			purged += purgeShard(shard);
+		}
+
+		lastFailure = null;
+		return purged;
+	}
+
+	/**
+	 * Stop purging. A chunk that is running is allowed to finish.
+	 */
+	@Override
+	public void close() {
+		ScheduledExecutorService running;
+
+		synchronized (this) {
+			closed = true;
+			running = scheduler;
+		}
+
+		if (Objects.nonNull(running)) {
+			running.shutdown();
+
+			try {
+				running.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of projects fully removed.
+	 */
+	public long getProjectsPurged() {
+		return projectsPurged.get();
+	}
+
+	/**
+	 * @return The number of child rows removed.
+	 */
+	public long getRowsPurged() {
+		return rowsPurged.get();
+	}
+
+	/**
+	 * @return The number of chunk transactions committed.
+	 */
+	public long getChunks() {
+		return chunks.get();
+	}
+
+	/**
+	 * @return The number of soft-deleted projects still waiting to be purged, as
+	 *         of the last lookup.
+	 */
+	public long getBacklog() {
+		return backlog.get();
+	}
+
+	/**
+	 * @return The failure of the most recent run, or {@code null} if it
+	 *         succeeded.
+	 */
+	public RuntimeException getLastFailure() {
+		return lastFailure;
+	}
+
+	@Override
+	public String toString() {
+		return "projectsPurged=" + getProjectsPurged() + ", rowsPurged=" + getRowsPurged() + ", chunks="
+				+ getChunks() + ", backlog=" + getBacklog();
+	}
+
+	private void runQuietly() {
+		try {
+			purge();
+		} catch (RuntimeException e) {
+			lastFailure = e;
+			System.out.println("Unable to purge deleted projects: " + e);
+		}
+	}
+
+	private int purgeShard(int shard) {
+		int purged = 0;
+		List<Integer> projectIds;
+
+		do {
+			projectIds = findDeletedProjects(shard);
+
+			for (Integer projectId : projectIds) {
+				if (closed) {
+					return purged;
+				}
+
+				purgeProject(shard, projectId);
+				purged++;
+			}
+		} while (projectIds.size() == PROJECT_BATCH_SIZE);
+
+		return purged;
+	}
+
+	/*
+	 * Read the next batch in deletion order, and count the backlog separately. A
+	 * window count in the same query would read and sort every deleted row.
+	 */
+	private List<Integer> findDeletedProjects(int shard) {
+		// @formatter:off
+		String sql = ""
+				+ "SELECT project_id FROM " + PROJECT_TABLE + " "
+				+ "WHERE deleted_at IS NOT NULL "
+				+ "ORDER BY deleted_at "
+				+ "LIMIT ?";
+		String countSql = "SELECT COUNT(*) FROM " + PROJECT_TABLE + " WHERE deleted_at IS NOT NULL";
+		// @formatter:on
+
+		try (Connection conn = connect(shard)) {
+			List<Integer> projectIds = new ArrayList<>();
+
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				setParameter(stmt, 1, PROJECT_BATCH_SIZE, Integer.class);
+
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) {
+						projectIds.add(rs.getInt("project_id"));
+					}
+				}
+			}
+
+			try (PreparedStatement stmt = conn.prepareStatement(countSql); ResultSet rs = stmt.executeQuery()) {
+				backlog.set(rs.next() ? rs.getLong(1) : 0);
+			}
+
+			return projectIds;
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/*
+	 * Empty each child table a chunk at a time, then delete the project row. An
+	 * upsert can bring the project back while it is being purged, so each chunk
+	 * first locks the project row and stops if it is no longer flagged.
+	 */
+	private void purgeProject(int shard, Integer projectId) {
+		for (String table : CHILD_TABLES) {
+			String sql = "DELETE FROM " + table + " WHERE project_id = ? LIMIT ?";
+			int deleted;
+
+			do {
+				if (closed) {
+					return;
+				}
+
+				deleted = executeChunk(shard, sql, projectId, chunkSize);
+
+				if (deleted < 0) {
+					return;
+				}
+
+				rowsPurged.addAndGet(deleted);
+				pause();
+			} while (deleted == chunkSize);
+		}
+
+		String sql = "DELETE FROM " + PROJECT_TABLE + " WHERE project_id = ? AND deleted_at IS NOT NULL";
+
+		if (executeChunk(shard, sql, projectId, null) == 1) {
+			projectsPurged.incrementAndGet();
+			backlog.updateAndGet(remaining -> Math.max(0, remaining - 1));
+		}
+	}
+
+	/*
+	 * Run one DELETE in its own transaction and return the number of rows
+	 * deleted. A chunk of child rows holds the lock on a still-flagged project row
+	 * while it runs, and returns -1 without deleting if the row is not flagged.
+	 */
+	private int executeChunk(int shard, String sql, Integer projectId, Integer limit) {
+		try (Connection conn = connect(shard)) {
+			startTransaction(conn);
+
+			if (Objects.nonNull(limit) && !lockDeletedProject(conn, projectId)) {
+				rollbackTransaction(conn);
+				return -1;
+			}
+
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				setParameter(stmt, 1, projectId, Integer.class);
+
+				if (Objects.nonNull(limit)) {
+					setParameter(stmt, 2, limit, Integer.class);
+				}
+
+				int deleted = stmt.executeUpdate();
+
+				commitTransaction(conn);
+				chunks.incrementAndGet();
+				return deleted;
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw e instanceof DbException ? (DbException) e : new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private boolean lockDeletedProject(Connection conn, Integer projectId) throws SQLException {
+		// @formatter:off
+		String sql = ""
+				+ "SELECT project_id FROM " + PROJECT_TABLE + " "
+				+ "WHERE project_id = ? AND deleted_at IS NOT NULL "
+				+ "FOR UPDATE";
+		// @formatter:on
+
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			setParameter(stmt, 1, projectId, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next();
+			}
+		} catch (SQLException | RuntimeException e) {
+			rollbackTransaction(conn);
+			throw e;
+		}
+	}
+
+	private Connection connect(int shard) {
+		return Objects.isNull(shards) ? DbConnection.getConnection() : shards.getShardConnection(shard, Deadline.NONE);
+	}
+
+	private void pause() {
+		if (pauseNanos <= 0) {
+			return;
+		}
+
+		try {
+			TimeUnit.NANOSECONDS.sleep(pauseNanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while purging deleted projects.", e);
+		}
+	}
+}
@@ -0,0 +1,404 @@
+package projects.dao;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/**
+ * This class reads and writes a compact binary snapshot of the full project
+ * graph (projects, materials, steps and linked categories). The file is opened
+ * with {@link FileChannel#map} so that a project can be located through the
+ * offset index and decoded without reading the rest of the file.
+ *
+ * The layout of the file is:
+ *
+ * <pre>
+ * header:  int magic, int version, int count
+ * index:   count x (int projectId, long recordOffset), sorted by project ID
+ * order:   count x int index slot, in project name order
+ * records: one record per project
+ * </pre>
+ *
+ * Snapshots are limited to 2GB because a single mapped buffer is used.
+ */
+public class ProjectSnapshot {
+	private static final int MAGIC = 0x50524A53; // "PRJS"
+	private static final int VERSION = 4;
+	private static final int HEADER_SIZE = 12;
+	private static final int INDEX_ENTRY_SIZE = 12;
+
+	private final Path path;
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int orderStart;
+
+	private ProjectSnapshot(Path path, MappedByteBuffer buffer) {
+		this.path = path;
+		this.buffer = buffer;
+
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new DbException("File " + path + " is not a project snapshot.");
+		}
+
+		this.count = buffer.getInt(8);
+		this.orderStart = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+	}
+
+	/**
+	 * Map a snapshot file into memory. The file is mapped read-only, so the
+	 * operating system page cache backs all reads.
+	 *
+	 * @param path The snapshot file.
+	 * @return The opened snapshot.
+	 * @throws DbException Thrown if the file cannot be mapped or is not a snapshot.
+	 */
+	public static ProjectSnapshot open(Path path) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new ProjectSnapshot(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (IOException e) {
+			throw new DbException("Unable to open snapshot " + path, e);
+		}
+	}
+
+	/**
+	 * Write a snapshot file. The projects must be in project name order and
+	 * carry their materials, steps and categories. The file is written to a
+	 * temporary sibling first and then moved into place so readers never see a
+	 * partial snapshot.
+	 *
+	 * @param path     The snapshot file to create or replace.
+	 * @param projects The full project graphs, in project name order.
+	 * @throws DbException Thrown if an error occurs writing the file.
+	 */
+	public static void write(Path path, List<Project> projects) {
+		int count = projects.size();
+		ByteArrayWriter records = new ByteArrayWriter();
+		long[][] index = new long[count][];
+
+		for (int slot = 0; slot < count; slot++) {
+			Project project = projects.get(slot);
+			index[slot] = new long[] { project.getProjectId(), records.size(), slot };
+			writeProject(records, project);
+		}
+
+		long[][] byId = index.clone();
+		Arrays.sort(byId, (a, b) -> Long.compare(a[0], b[0]));
+
+		int recordStart = HEADER_SIZE + count * INDEX_ENTRY_SIZE + count * Integer.BYTES;
+		ByteBuffer head = ByteBuffer.allocate(recordStart);
+		int[] slotOfOrder = new int[count];
+
+		head.putInt(MAGIC).putInt(VERSION).putInt(count);
+
+		for (int i = 0; i < count; i++) {
+			head.putInt((int) byId[i][0]).putLong(recordStart + byId[i][1]);
+			slotOfOrder[(int) byId[i][2]] = i;
+		}
+
+		for (int i = 0; i < count; i++) {
+			head.putInt(slotOfOrder[i]);
+		}
+
+		head.flip();
+
+		try {
+			Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), "snapshot", ".tmp");
+
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer[] buffers = { head, records.toByteBuffer() };
+
+				while (buffers[1].hasRemaining()) {
+					channel.write(buffers);
+				}
+
+				channel.force(true);
+			}
+
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new DbException("Unable to write snapshot " + path, e);
+		}
+	}
+
+	/**
+	 * @return The snapshot file.
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return The number of projects in the snapshot.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Find a project by ID with a binary search over the offset index. Only the
+	 * matching record is decoded.
+	 *
+	 * @param projectId The project ID.
+	 * @return The project with materials, steps and categories, or empty if the
+	 *         project is not in the snapshot.
+	 */
+	public Optional<Project> fetchProjectById(Integer projectId) {
+		if (Objects.isNull(projectId)) {
+			return Optional.empty();
+		}
+
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int id = buffer.getInt(HEADER_SIZE + mid * INDEX_ENTRY_SIZE);
+
+			if (id < projectId) {
+				low = mid + 1;
+			} else if (id > projectId) {
+				high = mid - 1;
+			} else {
+				return Optional.of(readProject(recordAt(mid), true));
+			}
+		}
+
+		return Optional.empty();
+	}
+
+	/**
+	 * Return all projects in project name order without details, which matches
+	 * {@link ProjectDao#fetchAllProjects()}.
+	 *
+	 * @return The list of projects.
+	 */
+	public List<Project> fetchAllProjects() {
+		List<Project> projects = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			int slot = buffer.getInt(orderStart + i * Integer.BYTES);
+			projects.add(readProject(recordAt(slot), false));
+		}
+
+		return projects;
+	}
+
+	/*
+	 * Return a private view of the buffer positioned at the record for the given
+	 * index slot. Each reader gets its own view so the snapshot is thread safe.
+	 */
+	private ByteBuffer recordAt(int slot) {
+		long offset = buffer.getLong(HEADER_SIZE + slot * INDEX_ENTRY_SIZE + Integer.BYTES);
+		return buffer.duplicate().position((int) offset);
+	}
+
+	private static Project readProject(ByteBuffer in, boolean withDetails) {
+		Project project = new Project();
+
+		project.setProjectId(readInteger(in));
+		project.setProjectName(readString(in));
+		project.setEstimatedHours(readDecimal(in));
+		project.setActualHours(readDecimal(in));
+		project.setDifficulty(readInteger(in));
+		project.setNotes(readString(in));
+		project.setVersion(readInteger(in));
+		project.setExternalKey(readString(in));
+		project.clearDirtyColumns();
+
+		if (!withDetails) {
+			return project;
+		}
+
+		for (int i = in.getInt(); i > 0; i--) {
+			Material material = new Material();
+			material.setMaterialId(readInteger(in));
+			material.setProjectId(readInteger(in));
+			material.setMaterialName(readString(in));
+			material.setNumRequired(readInteger(in));
+			material.setCost(readDecimal(in));
+			material.setExternalKey(readString(in));
+			project.getMaterials().add(material);
+		}
+
+		for (int i = in.getInt(); i > 0; i--) {
+			Step step = new Step();
+			step.setStepId(readInteger(in));
+			step.setProjectId(readInteger(in));
+			step.setStepText(readString(in));
+			step.setStepOrder(readInteger(in));
+			step.setExternalKey(readString(in));
+			project.getSteps().add(step);
+		}
+
+		for (int i = in.getInt(); i > 0; i--) {
+			Category category = new Category();
+			category.setCategoryId(readInteger(in));
+			category.setCategoryName(readString(in));
+			project.getCategories().add(category);
+		}
+
+		return project;
+	}
+
+	private static void writeProject(ByteArrayWriter out, Project project) {
+		writeInteger(out, project.getProjectId());
+		writeString(out, project.getProjectName());
+		writeDecimal(out, project.getEstimatedHours());
+		writeDecimal(out, project.getActualHours());
+		writeInteger(out, project.getDifficulty());
+		writeString(out, project.getNotes());
+		writeInteger(out, project.getVersion());
+		writeString(out, project.getExternalKey());
+
+		out.putInt(project.getMaterials().size());
+
+		for (Material material : project.getMaterials()) {
+			writeInteger(out, material.getMaterialId());
+			writeInteger(out, material.getProjectId());
+			writeString(out, material.getMaterialName());
+			writeInteger(out, material.getNumRequired());
+			writeDecimal(out, material.getCost());
+			writeString(out, material.getExternalKey());
+		}
+
+		out.putInt(project.getSteps().size());
+
+		for (Step step : project.getSteps()) {
+			writeInteger(out, step.getStepId());
+			writeInteger(out, step.getProjectId());
+			writeString(out, step.getStepText());
+			writeInteger(out, step.getStepOrder());
+			writeString(out, step.getExternalKey());
+		}
+
+		out.putInt(project.getCategories().size());
+
+		for (Category category : project.getCategories()) {
+			writeInteger(out, category.getCategoryId());
+			writeString(out, category.getCategoryName());
+		}
+	}
+
+	/* Integers are written as a presence byte followed by the value. */
+	private static void writeInteger(ByteArrayWriter out, Integer value) {
+		if (Objects.isNull(value)) {
+			out.put((byte) 0);
+		} else {
+			out.put((byte) 1);
+			out.putInt(value);
+		}
+	}
+
+	private static Integer readInteger(ByteBuffer in) {
+		return in.get() == 0 ? null : in.getInt();
+	}
+
+	/* Strings are written as a byte length (-1 for null) and UTF-8 bytes. */
+	private static void writeString(ByteArrayWriter out, String value) {
+		if (Objects.isNull(value)) {
+			out.putInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.putInt(bytes.length);
+			out.put(bytes);
+		}
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Decimals are written as a presence byte, the scale, and the unscaled value
+	 * with an int length.
+	 */
+	private static void writeDecimal(ByteArrayWriter out, BigDecimal value) {
+		if (Objects.isNull(value)) {
+			out.put((byte) 0);
+		} else {
+			byte[] unscaled = value.unscaledValue().toByteArray();
+			out.put((byte) 1);
+			out.putInt(value.scale());
+			out.putInt(unscaled.length);
+			out.put(unscaled);
+		}
+	}
+
+	private static BigDecimal readDecimal(ByteBuffer in) {
+		if (in.get() == 0) {
+			return null;
+		}
+
+		int scale = in.getInt();
+		byte[] unscaled = new byte[in.getInt()];
+		in.get(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+
+	/*
+	 * A growable big-endian byte array used to build the record section before
+	 * the final offsets are known.
+	 */
+	private static class ByteArrayWriter {
+		private ByteBuffer buf = ByteBuffer.allocate(8192);
+
+		int size() {
+			return buf.position();
+		}
+
+		void put(byte value) {
+			ensure(1).put(value);
+		}
+
+		void put(byte[] value) {
+			ensure(value.length).put(value);
+		}
+
+		void putInt(int value) {
+			ensure(Integer.BYTES).putInt(value);
+		}
+
+		ByteBuffer toByteBuffer() {
+			return buf.duplicate().flip();
+		}
+
+		private ByteBuffer ensure(int bytes) {
+			if (buf.remaining() < bytes) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+				buf.flip();
+				bigger.put(buf);
+				buf = bigger;
+			}
+
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package projects.dao;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+import projects.exception.OptimisticLockException;
+import projects.exception.OverloadException;
+
+/**
+ * This class retries a unit of work that failed for a transient reason. Each
+ * DAO method is one transaction that is rolled back on failure, so running it
+ * again is safe when the database aborted it, as it does for deadlocks and lock
+ * wait timeouts.
+ *
+ * Failures are classified by SQLState:
+ * <ul>
+ * <li>Class 40 (transaction rollback, including MySQL deadlocks 1213) and
+ * MySQL lock wait timeouts (1205) are always retried because the transaction
+ * is known not to have committed.</li>
+ * <li>Class 08 (connection exceptions) is retried only for idempotent work,
+ * because the connection may have dropped after a commit.</li>
+ * <li>Everything else is permanent and is rethrown immediately.</li>
+ * </ul>
+ *
+ * Delays grow exponentially with full jitter and never run past the caller's
+ * deadline.
+ */
+public class RetryPolicy {
+	private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+	private static final int MYSQL_DEADLOCK = 1213;
+
+	private final int maxAttempts;
+	private final long baseDelayNanos;
+	private final long maxDelayNanos;
+
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder recovered = new LongAdder();
+	private final LongAdder exhausted = new LongAdder();
+	private final Map<String, LongAdder> retriesBySqlState = new ConcurrentHashMap<>();
+
+	/**
+	 * @param maxAttempts The total number of attempts, including the first.
+	 * @param baseDelay   The delay cap before the first retry.
+	 * @param maxDelay    The largest delay cap.
+	 * @param timeUnit    The unit of the delays.
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, TimeUnit timeUnit) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayNanos = timeUnit.toNanos(baseDelay);
+		this.maxDelayNanos = timeUnit.toNanos(maxDelay);
+	}
+
+	/**
+	 * @return A policy of up to four attempts with delays from 10ms to 500ms.
+	 */
+	public static RetryPolicy defaultPolicy() {
+		return new RetryPolicy(4, 10, 500, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return A policy that never retries.
+	 */
+	public static RetryPolicy none() {
+		return new RetryPolicy(1, 0, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Run a unit of work, retrying transient failures.
+	 *
+	 * @param <T>        The result type.
+	 * @param deadline   The caller's deadline. No retry is started if its delay
+	 *                   would run past the deadline.
+	 * @param idempotent Whether the work may safely run twice even if the first
+	 *                   attempt committed.
+	 * @param work       The unit of work. It must run in its own transaction.
+	 * @return The result of the first successful attempt.
+	 * @throws DbException Thrown if the failure is permanent or the attempts are
+	 *                     used up.
+	 */
+	public <T> T execute(Deadline deadline, boolean idempotent, Supplier<T> work) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				T result = work.get();
+
+				if (attempt > 1) {
+					recovered.increment();
+				}
+
+				return result;
+			} catch (DbException e) {
+				String sqlState = transientSqlState(e, idempotent);
+
+				if (Objects.isNull(sqlState)) {
+					throw e;
+				}
+
+				long delay = delayBefore(attempt);
+
+				if (attempt >= maxAttempts || delay >= deadline.remainingNanos()) {
+					exhausted.increment();
+					throw e;
+				}
+
+				retries.increment();
+				retriesBySqlState.computeIfAbsent(sqlState, key -> new LongAdder()).increment();
+				sleep(delay);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of retries performed.
+	 */
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	/**
+	 * @return The number of operations that succeeded after at least one retry.
+	 */
+	public long getRecovered() {
+		return recovered.sum();
+	}
+
+	/**
+	 * @return The number of operations that failed transiently on every attempt.
+	 */
+	public long getExhausted() {
+		return exhausted.sum();
+	}
+
+	/**
+	 * @return The number of retries for each SQLState, in SQLState order.
+	 */
+	public Map<String, Long> getRetriesBySqlState() {
+		Map<String, Long> counts = new TreeMap<>();
+		retriesBySqlState.forEach((sqlState, count) -> counts.put(sqlState, count.sum()));
+		return counts;
+	}
+
+	@Override
+	public String toString() {
+		return "retries=" + getRetries() + ", recovered=" + getRecovered() + ", exhausted=" + getExhausted()
+				+ ", bySqlState=" + getRetriesBySqlState();
+	}
+
+	/*
+	 * Return the SQLState that makes the failure worth retrying, or null if it is
+	 * permanent. Failures the DAO already classified are never retried.
+	 */
+	private static String transientSqlState(DbException e, boolean idempotent) {
+		if (e instanceof DeadlineExceededException || e instanceof OptimisticLockException
+				|| e instanceof OverloadException) {
+			return null;
+		}
+
+		for (Throwable cause = e.getCause(); Objects.nonNull(cause); cause = cause.getCause()) {
+			if (!(cause instanceof SQLException)) {
+				continue;
+			}
+
+			SQLException sqlException = (SQLException) cause;
+			String sqlState = Objects.requireNonNullElse(sqlException.getSQLState(), "");
+			int errorCode = sqlException.getErrorCode();
+
+			if (sqlException instanceof SQLTransactionRollbackException || sqlState.startsWith("40")
+					|| errorCode == MYSQL_DEADLOCK || errorCode == MYSQL_LOCK_WAIT_TIMEOUT) {
+				return sqlState.isEmpty() ? String.valueOf(errorCode) : sqlState;
+			}
+
+			if (idempotent && sqlState.startsWith("08")) {
+				return sqlState;
+			}
+		}
+
+		return null;
+	}
+
+	/* Full jitter: a random delay up to the exponentially growing cap. */
+	private long delayBefore(int attempt) {
+		long cap = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt - 1, 30));
+		return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+	}
+
+	private static void sleep(long nanos) {
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting to retry.", e);
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package projects.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import projects.exception.DbException;
+import provided.util.DaoBase;
+
+/**
+ * This class brings a schema up to date by applying the numbered scripts in
+ * {@code migrations/} that it has not applied yet. Each applied script is
+ * recorded in the schema_migration table with a checksum, so a script is
+ * applied exactly once and a script that was edited after it was applied is
+ * reported instead of silently ignored. With shards, every shard is migrated.
+ *
+ * The scripts replace the old drop-and-recreate projects-schema.sql. A new
+ * database only needs an empty schema; the applications create the tables by
+ * calling {@link ProjectDao#migrateSchema()} once at startup. V001 is the schema
+ * that script originally created, so a database built with it is upgraded in
+ * place.
+ *
+ * MySQL commits each DDL statement as it runs, so a script that fails part way
+ * is not rolled back and is not recorded. Fix the schema by hand and start
+ * again. Migrating instances take a named lock first, so only one of them
+ * applies scripts at a time.
+ *
+ * To change the schema, add a script at the end of {@link #MIGRATIONS}. Never
+ * edit a script that has been released.
+ */
+public class SchemaMigrator extends DaoBase {
+	private static final String MIGRATION_TABLE = "schema_migration";
+	private static final String LOCK_NAME = "projects.schema_migration";
+	private static final int LOCK_WAIT_SECONDS = 60;
+
+	// The scripts, in the order they are applied. Names are V<version>__<what it
+	// does>.sql.
+	// @formatter:off
+	private static final List<String> MIGRATIONS = List.of(
+			"V001__baseline.sql",
+			"V002__project_version.sql",
+			"V003__project_id_sequence.sql",
+			"V004__soft_delete.sql",
+			"V005__external_keys.sql",
+			"V006__change_outbox.sql",
+			"V007__compressed_text.sql",
+			"V008__work_log.sql",
+			"V009__project_name_index.sql",
+			"V010__child_order_indexes.sql");
+	// @formatter:on
+
+	private static final Pattern MIGRATION_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+	private final ShardRouter shards;
+
+	/**
+	 * Create a migrator. Use {@link ProjectDao#migrateSchema()} to migrate the
+	 * DAO's database.
+	 *
+	 * @param shards The shard router, or {@code null} for a single schema.
+	 */
+	SchemaMigrator(ShardRouter shards) {
+		this.shards = shards;
+	}
+
+	/**
+	 * Apply every script that has not been applied yet.
+	 *
+	 * @return The number of scripts applied, summed over the shards.
+	 * @throws DbException Thrown if a script fails, if an applied script has
+	 *                     changed, or if the schema is newer than this
+	 *                     application.
+	 */
+	public int migrate() {
+		List<Migration> migrations = loadMigrations();
+		int shardCount = Objects.isNull(shards) ? 1 : shards.shardCount();
+		int applied = 0;
+
+		for (int shard = 0; shard < shardCount; shard++) {
+			applied += migrate(shard, migrations);
+		}
+
+		return applied;
+	}
+
+	/**
+	 * @return The version a fully migrated schema has.
+	 */
+	public static int latestVersion() {
+		return parseVersion(MIGRATIONS.get(MIGRATIONS.size() - 1));
+	}
+
+	private int migrate(int shard, List<Migration> migrations) {
+		try (Connection conn = connect(shard)) {
+			lock(conn, shard);
+
+			try {
+				createMigrationTable(conn);
+
+				Map<Integer, String> checksums = fetchChecksums(conn);
+				int applied = 0;
+
+				for (Integer version : checksums.keySet()) {
+					if (version > latestVersion()) {
+						throw new DbException("Shard " + shard + " has schema version " + version
+								+ ", which is newer than this application (" + latestVersion() + ").");
+					}
+				}
+
+				for (Migration migration : migrations) {
+					String checksum = checksums.get(migration.version);
+
+					if (Objects.isNull(checksum)) {
+						apply(conn, migration);
+						applied++;
+					} else if (!checksum.equals(migration.checksum)) {
+						throw new DbException("Migration " + migration.name + " has changed since it was applied to shard "
+								+ shard + ".");
+					}
+				}
+
+				return applied;
+			} finally {
+				unlock(conn);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private void lock(Connection conn, int shard) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+			setParameter(stmt, 1, LOCK_NAME, String.class);
+			setParameter(stmt, 2, LOCK_WAIT_SECONDS, Integer.class);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next() || rs.getInt(1) != 1) {
+					throw new DbException("Timed out waiting for another instance to migrate shard " + shard + ".");
+				}
+			}
+		}
+	}
+
+	private void unlock(Connection conn) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+			setParameter(stmt, 1, LOCK_NAME, String.class);
+			stmt.executeQuery().close();
+		}
+	}
+
+	private void createMigrationTable(Connection conn) throws SQLException {
+		// @formatter:off
+		String sql = ""
+				+ "CREATE TABLE IF NOT EXISTS " + MIGRATION_TABLE + " ("
+				+ "version INT NOT NULL, "
+				+ "description VARCHAR(128) NOT NULL, "
+				+ "checksum CHAR(64) NOT NULL, "
+				+ "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+				+ "PRIMARY KEY (version))";
+		// @formatter:on
+
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.executeUpdate();
+		}
+	}
+
+	private Map<Integer, String> fetchChecksums(Connection conn) throws SQLException {
+		String sql = "SELECT version, checksum FROM " + MIGRATION_TABLE;
+
+		try (PreparedStatement stmt = conn.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
+			Map<Integer, String> checksums = new HashMap<>();
+
+			while (rs.next()) {
+				checksums.put(rs.getInt(1), rs.getString(2));
+			}
+
+			return checksums;
+		}
+	}
+
+	/* Run the script's statements, then record it. */
+	private void apply(Connection conn, Migration migration) throws SQLException {
+		String sql = "INSERT INTO " + MIGRATION_TABLE + " (version, description, checksum) VALUES (?, ?, ?)";
+
+		for (String statement : statements(migration.script)) {
+			try (PreparedStatement stmt = conn.prepareStatement(statement)) {
+				stmt.execute();
+			} catch (SQLException e) {
+				throw new DbException("Migration " + migration.name + " failed at: " + statement, e);
+			}
+		}
+
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			setParameter(stmt, 1, migration.version, Integer.class);
+			setParameter(stmt, 2, migration.description, String.class);
+			setParameter(stmt, 3, migration.checksum, String.class);
+			stmt.executeUpdate();
+		}
+	}
+
+	/*
+	 * Split a script into statements. Lines starting with -- are comments, and a
+	 * statement ends at a line that ends with a semicolon.
+	 */
+	static List<String> statements(String script) {
+		List<String> statements = new ArrayList<>();
+		StringBuilder statement = new StringBuilder();
+
+		for (String line : script.split("\\R")) {
+			String trimmed = line.strip();
+
+			if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+				continue;
+			}
+
+			if (trimmed.endsWith(";")) {
+				statement.append(trimmed, 0, trimmed.length() - 1);
+				statements.add(statement.toString());
+				statement.setLength(0);
+			} else {
+				statement.append(trimmed).append(' ');
+			}
+		}
+
+		if (!statement.toString().isBlank()) {
+			statements.add(statement.toString().strip());
+		}
+
+		return statements;
+	}
+
+	/* Read a script from the class path. */
+	static String readScript(String resource) {
+		try (InputStream in = SchemaMigrator.class.getResourceAsStream(resource)) {
+			if (Objects.isNull(in)) {
+				throw new DbException("Schema script " + resource + " is missing.");
+			}
+
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new DbException("Unable to read schema script " + resource, e);
+		}
+	}
+
+	private static List<Migration> loadMigrations() {
+		List<Migration> migrations = new ArrayList<>();
+
+		for (String name : MIGRATIONS) {
+			migrations.add(new Migration(name, readScript("/migrations/" + name)));
+		}
+
+		return migrations;
+	}
+
+	private static int parseVersion(String name) {
+		return Integer.parseInt(matchName(name).group(1));
+	}
+
+	private static Matcher matchName(String name) {
+		Matcher matcher = MIGRATION_NAME.matcher(name);
+
+		if (!matcher.matches()) {
+			throw new DbException("Migration " + name + " is not named V<version>__<description>.sql.");
+		}
+
+		return matcher;
+	}
+
+	private Connection connect(int shard) {
+		return Objects.isNull(shards) ? DbConnection.getConnection() : shards.getShardConnection(shard, Deadline.NONE);
+	}
+
+	/* One script with its version and checksum. */
+	private static class Migration {
+		private final String name;
+		private final int version;
+		private final String description;
+		private final String script;
+		private final String checksum;
+
+		Migration(String name, String script) {
+			Matcher matcher = matchName(name);
+
+			this.name = name;
+			this.version = Integer.parseInt(matcher.group(1));
+			this.description = matcher.group(2).replace('_', ' ');
+			this.script = script;
+			/* Line endings depend on how the scripts were checked out. */
+			this.checksum = sha256(script.replace("\r\n", "\n"));
+		}
+
+		private static String sha256(String script) {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
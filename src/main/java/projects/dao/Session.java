@@ -0,0 +1,92 @@
+package projects.dao;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class carries one client's read-your-writes state: when it last
+ * committed a write. For the read-your-writes window after that, reads made in
+ * the session go to the primary, whichever thread makes them.
+ *
+ * Every thread starts in a session of its own, which suits a single-threaded
+ * caller. Code that works for a client on other threads binds the client's
+ * session there with {@link DbConnection#callInSession}, and a background
+ * writer records its writes on the sessions of the callers that submitted them
+ * with {@link #recordWrite()}. The HTTP server rebuilds a session for each
+ * request from the {@link #getToken() token} the client sends back.
+ */
+public class Session {
+	private boolean wrote;
+	private long lastWriteNanos;
+
+	/**
+	 * Create a session that has not written.
+	 */
+	public Session() {
+	}
+
+	/**
+	 * Rebuild a session from a token returned by {@link #getToken()} in this JVM.
+	 * A missing or malformed token, or one from the future (another JVM), gives a
+	 * session that has not written.
+	 *
+	 * @param token The token, or {@code null}.
+	 * @return The session.
+	 */
+	public static Session fromToken(String token) {
+		Session session = new Session();
+
+		if (Objects.nonNull(token)) {
+			try {
+				long nanos = Long.parseLong(token.trim());
+
+				if (System.nanoTime() - nanos >= 0) {
+					session.recordWrite(nanos);
+				}
+			} catch (NumberFormatException e) {
+				/* Treat it as no token. */
+			}
+		}
+
+		return session;
+	}
+
+	/**
+	 * Record that a write made for this session has just committed.
+	 */
+	public void recordWrite() {
+		recordWrite(System.nanoTime());
+	}
+
+	private synchronized void recordWrite(long nanoTime) {
+		if (!wrote || nanoTime - lastWriteNanos > 0) {
+			lastWriteNanos = nanoTime;
+			wrote = true;
+		}
+	}
+
+	/**
+	 * @param nanoTime A {@link System#nanoTime()} value.
+	 * @return {@code true} if the session committed a write after that time.
+	 */
+	public synchronized boolean wroteSince(long nanoTime) {
+		return wrote && lastWriteNanos - nanoTime > 0;
+	}
+
+	/**
+	 * @return {@code true} if the session wrote within the read-your-writes
+	 *         window, so its reads go to the primary.
+	 */
+	public synchronized boolean wroteRecently() {
+		return wrote && System.nanoTime() - lastWriteNanos < TimeUnit.MILLISECONDS
+				.toNanos(DbConnection.getReadYourWritesWindow().toMillis());
+	}
+
+	/**
+	 * @return A token a client can send back to have its next request read its
+	 *         writes, or {@code null} if the session has not written.
+	 */
+	public synchronized String getToken() {
+		return wrote ? Long.toString(lastWriteNanos) : null;
+	}
+}
@@ -0,0 +1,308 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import projects.exception.DbException;
+
+/**
+ * This class spreads projects across several schemas (shards). Each shard has
+ * the tables created by the migrations in migrations/. A project and all of its child rows live
+ * on the shard chosen by a consistent hash of the project ID, so operations on
+ * one project touch a single shard. Adding a shard only moves the projects that
+ * hash to the new shard's points on the ring.
+ *
+ * Project IDs must be unique across shards, so they are not taken from
+ * AUTO_INCREMENT. Instead, blocks of IDs are reserved from the
+ * project_id_sequence table on the first shard.
+ */
+public class ShardRouter {
+	private static final int VIRTUAL_NODES = 64;
+	private static final int ID_BLOCK_SIZE = 50;
+
+	private final List<String> shardUrls;
+	private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+	private final ExecutorService executor;
+
+	/* The next ID to hand out and the first ID past the reserved block. */
+	private int nextId;
+	private int blockEnd;
+
+	/**
+	 * Create a router over the given shards.
+	 *
+	 * @param shardUrls The JDBC URLs of the shards. The first shard also holds the
+	 *                  ID sequence.
+	 */
+	public ShardRouter(List<String> shardUrls) {
+		if (shardUrls.isEmpty()) {
+			throw new DbException("At least one shard is required.");
+		}
+
+		this.shardUrls = List.copyOf(shardUrls);
+
+		for (int shard = 0; shard < shardUrls.size(); shard++) {
+			for (int node = 0; node < VIRTUAL_NODES; node++) {
+				ring.put(mix(shard * 1_000_003 + node), shard);
+			}
+		}
+
+		this.executor = Executors.newFixedThreadPool(shardUrls.size(), runnable -> {
+			Thread thread = new Thread(runnable, "shard-query");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Build a router from the comma-separated JDBC URLs in the system property
+	 * {@code projects.shards}.
+	 *
+	 * @return The router, or {@code null} if sharding is not configured.
+	 */
+	public static ShardRouter fromSystemProperty() {
+		String urls = System.getProperty("projects.shards");
+
+		if (Objects.isNull(urls) || urls.isBlank()) {
+			return null;
+		}
+
+		return new ShardRouter(Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty())
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * @return The number of shards.
+	 */
+	public int shardCount() {
+		return shardUrls.size();
+	}
+
+	/**
+	 * Find the shard that owns a project.
+	 *
+	 * @param projectId The project ID.
+	 * @return The zero-based shard index.
+	 */
+	public int shardFor(Integer projectId) {
+		Map.Entry<Integer, Integer> entry = ring.ceilingEntry(mix(projectId));
+		return Objects.isNull(entry) ? ring.firstEntry().getValue() : entry.getValue();
+	}
+
+	/**
+	 * Open a connection to the shard that owns a project.
+	 *
+	 * @param projectId The project ID.
+	 * @return A connection to the owning shard.
+	 * @throws DbException Thrown if the connection cannot be established.
+	 */
+	public Connection getConnection(Integer projectId) {
+		return getConnection(projectId, Deadline.NONE);
+	}
+
+	/**
+	 * Open a connection to the shard that owns a project within a deadline.
+	 *
+	 * @param projectId The project ID.
+	 * @param deadline  The caller's deadline.
+	 * @return A connection to the owning shard.
+	 * @throws DbException Thrown if the connection cannot be established in time.
+	 */
+	public Connection getConnection(Integer projectId, Deadline deadline) {
+		return connect(shardFor(projectId), deadline);
+	}
+
+	/**
+	 * Open a connection to one shard, for work that visits every shard in turn.
+	 *
+	 * @param shard    The zero-based shard index.
+	 * @param deadline The caller's deadline.
+	 * @return A connection to the shard.
+	 * @throws DbException Thrown if the connection cannot be established in time.
+	 */
+	public Connection getShardConnection(int shard, Deadline deadline) {
+		return connect(shard, deadline);
+	}
+
+	/**
+	 * Allocate a project ID that is unique across all shards. IDs are reserved
+	 * from the sequence table in blocks so most calls do not touch the database.
+	 *
+	 * @return A new project ID.
+	 * @throws DbException Thrown if a new block cannot be reserved.
+	 */
+	public synchronized Integer allocateId() {
+		if (nextId >= blockEnd) {
+			reserveBlock();
+		}
+
+		return nextId++;
+	}
+
+	/**
+	 * Run a query on every shard in parallel and merge the per-shard results. Each
+	 * shard must return its rows already sorted by the given comparator, so the
+	 * results can be merged without sorting the whole list again.
+	 *
+	 * @param <T>        The row type.
+	 * @param query      The query to run against each shard.
+	 * @param comparator The order of each shard's rows and of the merged result.
+	 * @return The merged rows.
+	 * @throws DbException Thrown if the query fails on any shard.
+	 */
+	public <T> List<T> scatterGather(ShardQuery<T> query, Comparator<? super T> comparator) {
+		return scatterGather(query, comparator, Deadline.NONE);
+	}
+
+	/**
+	 * Run a query on every shard in parallel within a deadline and merge the
+	 * per-shard results.
+	 *
+	 * @param <T>        The row type.
+	 * @param query      The query to run against each shard.
+	 * @param comparator The order of each shard's rows and of the merged result.
+	 * @param deadline   The caller's deadline, shared by every shard.
+	 * @return The merged rows.
+	 * @throws DbException Thrown if the query fails on any shard.
+	 */
+	public <T> List<T> scatterGather(ShardQuery<T> query, Comparator<? super T> comparator, Deadline deadline) {
+		List<Future<List<T>>> futures = new ArrayList<>(shardUrls.size());
+
+		for (int shard = 0; shard < shardUrls.size(); shard++) {
+			int index = shard;
+
+			futures.add(executor.submit(() -> {
+				try (Connection conn = connect(index, deadline)) {
+					return query.fetch(conn);
+				}
+			}));
+		}
+
+		List<List<T>> results = new ArrayList<>(futures.size());
+
+		try {
+			for (Future<List<T>> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException(e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof DbException ? (DbException) e.getCause() : new DbException(e.getCause());
+		}
+
+		return merge(results, comparator);
+	}
+
+	/*
+	 * K-way merge of sorted lists using a heap of per-list iterators.
+	 */
+	private static <T> List<T> merge(List<List<T>> lists, Comparator<? super T> comparator) {
+		PriorityQueue<Head<T>> heap = new PriorityQueue<>((a, b) -> comparator.compare(a.value, b.value));
+		int total = 0;
+
+		for (List<T> list : lists) {
+			total += list.size();
+			Iterator<T> iterator = list.iterator();
+
+			if (iterator.hasNext()) {
+				heap.add(new Head<>(iterator.next(), iterator));
+			}
+		}
+
+		List<T> merged = new ArrayList<>(total);
+
+		while (!heap.isEmpty()) {
+			Head<T> head = heap.poll();
+			merged.add(head.value);
+
+			if (head.rest.hasNext()) {
+				heap.add(new Head<>(head.rest.next(), head.rest));
+			}
+		}
+
+		return merged;
+	}
+
+	private void reserveBlock() {
+		String sql = "UPDATE project_id_sequence SET next_id = LAST_INSERT_ID(next_id + ?)";
+
+		try (Connection conn = connect(0, Deadline.NONE)) {
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				stmt.setInt(1, ID_BLOCK_SIZE);
+
+				if (stmt.executeUpdate() != 1) {
+					throw new DbException("The project_id_sequence table must contain exactly one row.");
+				}
+			}
+
+			try (PreparedStatement stmt = conn.prepareStatement("SELECT LAST_INSERT_ID()");
+					ResultSet rs = stmt.executeQuery()) {
+				rs.next();
+				blockEnd = rs.getInt(1);
+				nextId = blockEnd - ID_BLOCK_SIZE;
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private Connection connect(int shard, Deadline deadline) {
+		String uri = shardUrls.get(shard);
+
+		try {
+			return DbConnection.open(uri, null, deadline);
+		} catch (SQLException e) {
+			throw new DbException("Unable to get connection to shard " + shard + " at " + uri, e);
+		}
+	}
+
+	/*
+	 * The murmur3 finalizer. It spreads sequential project IDs evenly around the
+	 * ring.
+	 */
+	private static int mix(int value) {
+		value ^= value >>> 16;
+		value *= 0x85ebca6b;
+		value ^= value >>> 13;
+		value *= 0xc2b2ae35;
+		value ^= value >>> 16;
+		return value;
+	}
+
+	/**
+	 * A query that is run against one shard.
+	 *
+	 * @param <T> The row type.
+	 */
+	@FunctionalInterface
+	public interface ShardQuery<T> {
+		List<T> fetch(Connection conn) throws SQLException;
+	}
+
+	private static class Head<T> {
+		private final T value;
+		private final Iterator<T> rest;
+
+		Head(T value, Iterator<T> rest) {
+			this.value = value;
+			this.rest = rest;
+		}
+	}
+}
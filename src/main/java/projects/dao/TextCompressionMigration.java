@@ -0,0 +1,226 @@
+package projects.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import projects.entity.TextCodec;
+import projects.exception.DbException;
+import provided.util.DaoBase;
+
+/**
+ * This class compresses the notes and step text that were written before text
+ * compression was turned on. Rows are converted in batches in key order, each
+ * batch in its own short transaction that locks only the rows it converts, so
+ * the migration can run while the application is in use.
+ *
+ * Compression does not change what a row means, so converted rows keep their
+ * version and no change records are written. A migration that is stopped can
+ * be run again; rows already converted are skipped.
+ */
+public class TextCompressionMigration extends DaoBase {
+	// The tables with compressible text: table, key column, text column and
+	// compressed column.
+	// @formatter:off
+	private static final String[][] TEXT_COLUMNS = {
+			{ "project", "project_id", "notes", "notes_compressed" },
+			{ "step", "step_id", "step_text", "step_text_compressed" }
+	};
+	// @formatter:on
+
+	private final ShardRouter shards;
+	private final int threshold;
+	private final int batchSize;
+
+	private final AtomicLong rowsCompressed = new AtomicLong();
+	private final AtomicLong bytesSaved = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	/**
+	 * Create a migration. Use
+	 * {@link ProjectDao#createTextCompressionMigration(int)} to get one for the
+	 * DAO's database.
+	 *
+	 * @param shards    The shard router, or {@code null} for a single schema.
+	 * @param threshold The smallest text size, in bytes, to compress.
+	 * @param batchSize The most rows converted per transaction.
+	 */
+	TextCompressionMigration(ShardRouter shards, int threshold, int batchSize) {
+		this.shards = shards;
+		this.threshold = threshold;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Compress every stored text that is at least the threshold long.
+	 *
+	 * @return The number of rows converted.
+	 * @throws DbException Thrown if a batch fails. Batches already committed stay
+	 *                     committed.
+	 */
+	public long run() {
+		return run(Duration.ZERO);
+	}
+
+	/**
+	 * Compress every stored text that is at least the threshold long, pausing
+	 * between batches so other writers can get the locks.
+	 *
+	 * @param pause How long to wait after each batch.
+	 * @return The number of rows converted.
+	 * @throws DbException Thrown if a batch fails. Batches already committed stay
+	 *                     committed.
+	 */
+	public long run(Duration pause) {
+		long converted = 0;
+		int shardCount = Objects.isNull(shards) ? 1 : shards.shardCount();
+
+		for (int shard = 0; shard < shardCount; shard++) {
+			for (String[] columns : TEXT_COLUMNS) {
+				int lastId = 0;
+
+				while (lastId >= 0) {
+					int[] result = convertBatch(shard, columns, lastId);
+					converted += result[1];
+					lastId = result[0];
+
+					if (lastId >= 0) {
+						pause(pause);
+					}
+				}
+			}
+		}
+
+		return converted;
+	}
+
+	/**
+	 * @return The number of rows converted.
+	 */
+	public long getRowsCompressed() {
+		return rowsCompressed.get();
+	}
+
+	/**
+	 * @return The number of bytes of text the converted rows no longer store.
+	 */
+	public long getBytesSaved() {
+		return bytesSaved.get();
+	}
+
+	/**
+	 * @return The number of batch transactions committed.
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	@Override
+	public String toString() {
+		return "rowsCompressed=" + getRowsCompressed() + ", bytesSaved=" + getBytesSaved() + ", batches="
+				+ getBatches();
+	}
+
+	/*
+	 * Lock and convert the next batch of long rows after the given key. Returns
+	 * the last key read, or -1 if the batch was the last one, and the number of
+	 * rows converted.
+	 */
+	private int[] convertBatch(int shard, String[] columns, int afterId) {
+		String table = columns[0];
+		String key = columns[1];
+		String text = columns[2];
+		String compressed = columns[3];
+
+		// @formatter:off
+		String selectSql = ""
+				+ "SELECT " + key + ", " + text + " FROM " + table + " "
+				+ "WHERE " + key + " > ? "
+				+ "AND " + text + " IS NOT NULL "
+				+ "AND LENGTH(" + text + ") >= ? "
+				+ "ORDER BY " + key + " "
+				+ "LIMIT ? "
+				+ "FOR UPDATE";
+		String updateSql = ""
+				+ "UPDATE " + table + " "
+				+ "SET " + text + " = NULL, " + compressed + " = ? "
+				+ "WHERE " + key + " = ?";
+		// @formatter:on
+
+		try (Connection conn = connect(shard)) {
+			startTransaction(conn);
+
+			try (PreparedStatement select = conn.prepareStatement(selectSql);
+					PreparedStatement update = conn.prepareStatement(updateSql)) {
+				setParameter(select, 1, afterId, Integer.class);
+				setParameter(select, 2, threshold, Integer.class);
+				setParameter(select, 3, batchSize, Integer.class);
+
+				int lastId = afterId;
+				int read = 0;
+				int converted = 0;
+				long saved = 0;
+
+				try (ResultSet rs = select.executeQuery()) {
+					while (rs.next()) {
+						lastId = rs.getInt(1);
+						read++;
+
+						String value = rs.getString(2);
+						byte[] stored = TextCodec.compress(value, threshold);
+
+						/* Text that does not get smaller stays as it is. */
+						if (Objects.nonNull(stored)) {
+							/* DaoBase does not bind byte arrays. */
+							update.setBytes(1, stored);
+							setParameter(update, 2, lastId, Integer.class);
+							update.addBatch();
+
+							converted++;
+							saved += value.getBytes(StandardCharsets.UTF_8).length - stored.length;
+						}
+					}
+				}
+
+				if (converted > 0) {
+					update.executeBatch();
+				}
+
+				commitTransaction(conn);
+				batches.incrementAndGet();
+				rowsCompressed.addAndGet(converted);
+				bytesSaved.addAndGet(saved);
+
+				return new int[] { read == batchSize ? lastId : -1, converted };
+			} catch (Exception e) {
+				rollbackTransaction(conn);
+				throw e instanceof DbException ? (DbException) e : new DbException(e);
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private Connection connect(int shard) {
+		return Objects.isNull(shards) ? DbConnection.getConnection() : shards.getShardConnection(shard, Deadline.NONE);
+	}
+
+	private void pause(Duration pause) {
+		if (pause.isZero() || pause.isNegative()) {
+			return;
+		}
+
+		try {
+			TimeUnit.NANOSECONDS.sleep(pause.toNanos());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while compressing stored text.", e);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package projects.dao;
+
+import java.util.List;
+
+import projects.exception.DbException;
+
+/**
+ * This class reports what an upsert did to one project and to each of the
+ * materials and steps sent with it.
+ */
+public class UpsertResult {
+	/**
+	 * What happened to one row.
+	 */
+	public enum Change {
+		/* The row did not exist and was inserted. */
+		INSERTED,
+		/* The row existed and at least one column changed. */
+		UPDATED,
+		/* The row existed and already had the given values. */
+		UNCHANGED
+	}
+
+	private final Integer projectId;
+	private final Change project;
+	private final List<Change> materials;
+	private final List<Change> steps;
+
+	UpsertResult(Integer projectId, Change project, List<Change> materials, List<Change> steps) {
+		this.projectId = projectId;
+		this.project = project;
+		this.materials = List.copyOf(materials);
+		this.steps = List.copyOf(steps);
+	}
+
+	/**
+	 * @return The ID of the inserted or existing project.
+	 */
+	public Integer getProjectId() {
+		return projectId;
+	}
+
+	/**
+	 * @return What happened to the project row.
+	 */
+	public Change getProject() {
+		return project;
+	}
+
+	/**
+	 * @return What happened to each material, in the order they were given.
+	 */
+	public List<Change> getMaterials() {
+		return materials;
+	}
+
+	/**
+	 * @return What happened to each step, in the order they were given.
+	 */
+	public List<Change> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return {@code true} if any row was inserted or updated.
+	 */
+	public boolean isChanged() {
+		return project != Change.UNCHANGED || materials.stream().anyMatch(change -> change != Change.UNCHANGED)
+				|| steps.stream().anyMatch(change -> change != Change.UNCHANGED);
+	}
+
+	/*
+	 * Translate an update count from a connection that reports affected rows.
+	 */
+	static Change fromUpdateCount(int count) {
+		switch (count) {
+		case 0:
+			return Change.UNCHANGED;
+
+		case 1:
+			return Change.INSERTED;
+
+		case 2:
+			return Change.UPDATED;
+
+		default:
+			throw new DbException("Unexpected upsert row count: " + count);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "projectId=" + projectId + ", project=" + project + ", materials=" + materials + ", steps=" + steps;
+	}
+}
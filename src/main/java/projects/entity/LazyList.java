@@ -0,0 +1,105 @@
+package projects.entity;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * This class is a list that calls a loader the first time any of its elements
+ * or its size is used, and behaves as an ordinary list from then on. A project
+ * fetched with a lazy plan holds one of these for each detail that was not
+ * fetched, so a caller that never touches the steps never reads them.
+ *
+ * If the loader fails, its exception reaches the caller and the next use tries
+ * again.
+ *
+ * @param <E> The element type.
+ */
+public class LazyList<E> extends AbstractList<E> {
+	private Supplier<List<E>> loader;
+	private volatile List<E> elements;
+
+	/**
+	 * Create a list that is not loaded yet.
+	 *
+	 * @param loader Returns the elements. It is called at most once successfully.
+	 */
+	public LazyList(Supplier<List<E>> loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * @return {@code true} if the elements have been loaded.
+	 */
+	public boolean isLoaded() {
+		return Objects.nonNull(elements);
+	}
+
+	/**
+	 * Tell whether using a list would load it.
+	 *
+	 * @param list Any list.
+	 * @return {@code false} only for a lazy list that has not been loaded.
+	 */
+	public static boolean isLoaded(List<?> list) {
+		return !(list instanceof LazyList) || ((LazyList<?>) list).isLoaded();
+	}
+
+	@Override
+	public E get(int index) {
+		return elements().get(index);
+	}
+
+	@Override
+	public E set(int index, E element) {
+		return elements().set(index, element);
+	}
+
+	@Override
+	public void add(int index, E element) {
+		elements().add(index, element);
+	}
+
+	@Override
+	public E remove(int index) {
+		return elements().remove(index);
+	}
+
+	@Override
+	public int size() {
+		return elements().size();
+	}
+
+	/* The loaded elements are a linked list, so iterate it directly instead of by index. */
+	@Override
+	public Iterator<E> iterator() {
+		return elements().iterator();
+	}
+
+	@Override
+	public ListIterator<E> listIterator(int index) {
+		return elements().listIterator(index);
+	}
+
+	private List<E> elements() {
+		List<E> loaded = elements;
+
+		if (Objects.isNull(loaded)) {
+			synchronized (this) {
+				loaded = elements;
+
+				if (Objects.isNull(loaded)) {
+					loaded = new LinkedList<>(loader.get());
+					elements = loaded;
+					loader = null;
+				}
+			}
+		}
+
+		return loaded;
+	}
+}
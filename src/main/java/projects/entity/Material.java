@@ -17,6 +17,7 @@ public class Material {
 	private String materialName;
 	private Integer numRequired;
 	private BigDecimal cost;
+	private String externalKey;
 
 	// The unique ID of the material.
 	public Integer getMaterialId() {
@@ -63,6 +64,16 @@ public class Material {
 		this.cost = cost;
 	}
 
+	// The key of the material in an external catalogue, unique within its
+	// project. Upserts use it to find the existing row.
+	public String getExternalKey() {
+		return externalKey;
+	}
+
+	public void setExternalKey(String externalKey) {
+		this.externalKey = externalKey;
+	}
+
 	// Overridden toString() method to provide a string representation of the
 	// material, including its ID, name, required quantity, and cost.
 	@Override
@@ -4,8 +4,13 @@
 package projects.entity;
 
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * The Project class represents a project entity.
@@ -21,10 +26,21 @@ public class Project {
 	private Integer difficulty;
 	private String notes;
 
+	// The notes as stored in notes_compressed. They are decompressed the first
+	// time getNotes() is called, so callers that never read them never pay for it.
+	private byte[] notesCompressed;
+	private Integer version;
+	private String externalKey;
+
 	private List<Material> materials = new LinkedList<>();
 	private List<Step> steps = new LinkedList<>();
 	private List<Category> categories = new LinkedList<>();
 
+	// The names of the columns whose values were changed through a setter since
+	// the project was loaded or last saved. Projects built by the DAO start clean
+	// because their fields are populated without calling the setters.
+	private Set<String> dirtyColumns = new LinkedHashSet<>();
+
 	public Integer getProjectId() {
 		return projectId;
 	}
@@ -38,6 +54,7 @@ public class Project {
 	}
 
 	public void setProjectName(String projectName) {
+		markDirty("project_name", this.projectName, projectName);
 		this.projectName = projectName;
 	}
 
@@ -46,6 +63,7 @@ public class Project {
 	}
 
 	public void setEstimatedHours(BigDecimal estimatedHours) {
+		markDirty("estimated_hours", this.estimatedHours, estimatedHours);
 		this.estimatedHours = estimatedHours;
 	}
 
@@ -54,6 +72,7 @@ public class Project {
 	}
 
 	public void setActualHours(BigDecimal actualHours) {
+		markDirty("actual_hours", this.actualHours, actualHours);
 		this.actualHours = actualHours;
 	}
 
@@ -62,15 +81,57 @@ public class Project {
 	}
 
 	public void setDifficulty(Integer difficulty) {
+		markDirty("difficulty", this.difficulty, difficulty);
 		this.difficulty = difficulty;
 	}
 
 	public String getNotes() {
+		if (Objects.nonNull(notesCompressed)) {
+			notes = TextCodec.decompress(notesCompressed);
+			notesCompressed = null;
+		}
+
 		return notes;
 	}
 
+	// Compressed notes are not decompressed just to compare them, so replacing
+	// them always marks the column dirty.
 	public void setNotes(String notes) {
+		if (Objects.nonNull(notesCompressed)) {
+			dirtyColumns.add("notes");
+		} else {
+			markDirty("notes", this.notes, notes);
+		}
+
 		this.notes = notes;
+		this.notesCompressed = null;
+	}
+
+	// Copy another project's notes as they are stored, so compressed notes stay
+	// compressed. The column is not marked dirty.
+	public void copyNotesFrom(Project other) {
+		this.notes = other.notes;
+		this.notesCompressed = other.notesCompressed;
+	}
+
+	// The row version used for optimistic concurrency control. It is incremented
+	// by the database on every update and is not a dirty-tracked column.
+	public Integer getVersion() {
+		return version;
+	}
+
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+
+	// The key of the project in an external catalogue. Upserts use it to find
+	// the existing row. It is set on insert and is not a dirty-tracked column.
+	public String getExternalKey() {
+		return externalKey;
+	}
+
+	public void setExternalKey(String externalKey) {
+		this.externalKey = externalKey;
 	}
 
 	public List<Material> getMaterials() {
@@ -85,9 +146,65 @@ public class Project {
 		return categories;
 	}
 
+	// Replace the materials with a list that calls the loader the first time it
+	// is used. The DAO does this for details a lazy fetch plan did not read.
+	public void setMaterialsLoader(Supplier<List<Material>> loader) {
+		materials = new LazyList<>(loader);
+	}
+
+	public void setStepsLoader(Supplier<List<Step>> loader) {
+		steps = new LazyList<>(loader);
+	}
+
+	public void setCategoriesLoader(Supplier<List<Category>> loader) {
+		categories = new LazyList<>(loader);
+	}
+
+	/**
+	 * @return The names of the columns changed since the project was loaded or
+	 *         last saved.
+	 */
+	public Set<String> getDirtyColumns() {
+		return Collections.unmodifiableSet(dirtyColumns);
+	}
+
+	/**
+	 * @return {@code true} if any column was changed since the project was loaded
+	 *         or last saved.
+	 */
+	public boolean isDirty() {
+		return !dirtyColumns.isEmpty();
+	}
+
+	/**
+	 * Mark a column as changed even if the setter saw no change in value, for
+	 * example when changes are copied onto a fresh project.
+	 * 
+	 * @param column The column name.
+	 */
+	public void markColumnDirty(String column) {
+		dirtyColumns.add(column);
+	}
+
+	/**
+	 * Mark the project as matching its row in the database.
+	 */
+	public void clearDirtyColumns() {
+		dirtyColumns.clear();
+	}
+
+	// Record a column as changed only if the new value differs from the old one.
+	private void markDirty(String column, Object oldValue, Object newValue) {
+		if (!Objects.equals(oldValue, newValue)) {
+			dirtyColumns.add(column);
+		}
+	}
+
 	// Overridden toString() method to provide a string representation of the
 	// project, including its ID, name, estimated hours, actual hours, difficulty,
-	// notes, and details of related materials, steps, and categories.
+	// notes, and details of related materials, steps, and categories. Notes
+	// that are still compressed and details that have not been loaded are not
+	// loaded just to print them.
 	@Override
 	public String toString() {
 		String result = "";
@@ -97,24 +214,38 @@ public class Project {
 		result += "\n   estimatedHours=" + estimatedHours;
 		result += "\n   actualHours=" + actualHours;
 		result += "\n   difficulty=" + difficulty;
-		result += "\n   notes=" + notes;
+		result += "\n   notes=" + (Objects.nonNull(notesCompressed) ? "(compressed, not loaded)" : notes);
+		result += "\n   version=" + version;
+		result += "\n   externalKey=" + externalKey;
 
 		result += "\n   Materials:";
 
-		for (Material material : materials) {
-			result += "\n      " + material;
+		if (!LazyList.isLoaded(materials)) {
+			result += " (not loaded)";
+		} else {
+			for (Material material : materials) {
+				result += "\n      " + material;
+			}
 		}
 
 		result += "\n   Steps:";
 
-		for (Step step : steps) {
-			result += "\n      " + step;
+		if (!LazyList.isLoaded(steps)) {
+			result += " (not loaded)";
+		} else {
+			for (Step step : steps) {
+				result += "\n      " + step;
+			}
 		}
 
 		result += "\n   Categories:";
 
-		for (Category category : categories) {
-			result += "\n      " + category;
+		if (!LazyList.isLoaded(categories)) {
+			result += " (not loaded)";
+		} else {
+			for (Category category : categories) {
+				result += "\n      " + category;
+			}
 		}
 
 		return result;
@@ -0,0 +1,71 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * The ProjectChange class represents one record of the change outbox: a row
+ * that was inserted, updated or deleted.
+ * 
+ * @author Promineo
+ *
+ */
+public class ProjectChange {
+	private Long changeSeq;
+	private String entity;
+	private Integer entityId;
+	private String operation;
+	private LocalDateTime changedAt;
+
+	// The position of the change in the feed. Consumers resume after the last
+	// sequence number they processed.
+	public Long getChangeSeq() {
+		return changeSeq;
+	}
+
+	public void setChangeSeq(Long changeSeq) {
+		this.changeSeq = changeSeq;
+	}
+
+	// The table that changed, such as "project" or "project_category".
+	public String getEntity() {
+		return entity;
+	}
+
+	public void setEntity(String entity) {
+		this.entity = entity;
+	}
+
+	// The ID of the changed project. Child tables are reported by project ID.
+	public Integer getEntityId() {
+		return entityId;
+	}
+
+	public void setEntityId(Integer entityId) {
+		this.entityId = entityId;
+	}
+
+	// INSERT, UPDATE or DELETE.
+	public String getOperation() {
+		return operation;
+	}
+
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+
+	public LocalDateTime getChangedAt() {
+		return changedAt;
+	}
+
+	public void setChangedAt(LocalDateTime changedAt) {
+		this.changedAt = changedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "seq=" + changeSeq + ", " + operation + " " + entity + " ID=" + entityId + " at " + changedAt;
+	}
+}
@@ -3,6 +3,8 @@
  */
 package projects.entity;
 
+import java.util.Objects;
+
 /**
  * @author Promineo
  *
@@ -11,7 +13,10 @@ public class Step {
   private Integer stepId;
   private Integer projectId;
   private String stepText;
+  // The text as stored in step_text_compressed, decompressed on first read.
+  private byte[] stepTextCompressed;
   private Integer stepOrder;
+  private String externalKey;
 
   public Integer getStepId() {
     return stepId;
@@ -30,11 +35,24 @@ public class Step {
   }
 
   public String getStepText() {
+    if (Objects.nonNull(stepTextCompressed)) {
+      stepText = TextCodec.decompress(stepTextCompressed);
+      stepTextCompressed = null;
+    }
+
     return stepText;
   }
 
   public void setStepText(String stepText) {
     this.stepText = stepText;
+    this.stepTextCompressed = null;
+  }
+
+  // Copy another step's text as it is stored, so compressed text stays
+  // compressed.
+  public void copyStepTextFrom(Step other) {
+    this.stepText = other.stepText;
+    this.stepTextCompressed = other.stepTextCompressed;
   }
 
   public Integer getStepOrder() {
@@ -45,8 +63,18 @@ public class Step {
     this.stepOrder = stepOrder;
   }
 
+  // The key of the step in an external catalogue, unique within its project.
+  public String getExternalKey() {
+    return externalKey;
+  }
+
+  public void setExternalKey(String externalKey) {
+    this.externalKey = externalKey;
+  }
+
   @Override
   public String toString() {
-    return "ID=" + stepId + ", stepText=" + stepText;
+    return "ID=" + stepId + ", stepText="
+        + (Objects.nonNull(stepTextCompressed) ? "(compressed, not loaded)" : stepText);
   }
 }
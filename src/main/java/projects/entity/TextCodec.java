@@ -0,0 +1,103 @@
+package projects.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import projects.exception.DbException;
+
+/**
+ * This class converts long text to and from the compressed form stored in the
+ * {@code notes_compressed} and {@code step_text_compressed} columns. The first
+ * byte of a stored value names the codec, so other codecs can be added later
+ * without rewriting existing rows.
+ */
+public final class TextCodec {
+	/** The marker byte of text compressed with DEFLATE. */
+	public static final byte DEFLATE = 1;
+
+	private TextCodec() {
+	}
+
+	/**
+	 * Compress text that is at least the threshold long.
+	 *
+	 * @param text      The text, which may be null.
+	 * @param threshold The smallest UTF-8 size, in bytes, worth compressing. Zero
+	 *                  or less turns compression off.
+	 * @return The stored form, or {@code null} if the text should be stored as it
+	 *         is because it is null, short, or does not get smaller.
+	 */
+	public static byte[] compress(String text, int threshold) {
+		if (Objects.isNull(text) || threshold <= 0) {
+			return null;
+		}
+
+		byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+
+		if (utf8.length < threshold) {
+			return null;
+		}
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+		try {
+			deflater.setInput(utf8);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(utf8.length / 2 + 16);
+			out.write(DEFLATE);
+
+			byte[] buffer = new byte[8192];
+
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+
+			return out.size() < utf8.length ? out.toByteArray() : null;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Restore text from its stored form.
+	 *
+	 * @param stored The stored form, starting with its codec marker.
+	 * @return The text.
+	 * @throws DbException Thrown if the codec is unknown or the data is corrupt.
+	 */
+	public static String decompress(byte[] stored) {
+		if (stored.length == 0 || stored[0] != DEFLATE) {
+			throw new DbException("Unknown text codec " + (stored.length == 0 ? "(empty)" : stored[0]) + ".");
+		}
+
+		Inflater inflater = new Inflater();
+
+		try {
+			inflater.setInput(stored, 1, stored.length - 1);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+			byte[] buffer = new byte[8192];
+
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DbException("Compressed text is truncated.");
+				}
+
+				out.write(buffer, 0, count);
+			}
+
+			return out.toString(StandardCharsets.UTF_8);
+		} catch (DataFormatException e) {
+			throw new DbException("Compressed text is corrupt.", e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package projects.entity;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * The WorkLogEntry class represents time spent on a project. Entries are only
+ * ever appended; a project's actual hours are the running total of its entries.
+ */
+public class WorkLogEntry {
+	private Long workLogId;
+	private Integer projectId;
+	private BigDecimal hours;
+	private LocalDateTime loggedAt;
+
+	// The ID assigned when the entry is written.
+	public Long getWorkLogId() {
+		return workLogId;
+	}
+
+	public void setWorkLogId(Long workLogId) {
+		this.workLogId = workLogId;
+	}
+
+	public Integer getProjectId() {
+		return projectId;
+	}
+
+	public void setProjectId(Integer projectId) {
+		this.projectId = projectId;
+	}
+
+	// The hours worked. A negative value corrects an earlier entry.
+	public BigDecimal getHours() {
+		return hours;
+	}
+
+	public void setHours(BigDecimal hours) {
+		this.hours = hours;
+	}
+
+	// When the work was logged. If it is not set, the time it is written is used.
+	public LocalDateTime getLoggedAt() {
+		return loggedAt;
+	}
+
+	public void setLoggedAt(LocalDateTime loggedAt) {
+		this.loggedAt = loggedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "ID=" + workLogId + ", projectId=" + projectId + ", hours=" + hours + ", loggedAt=" + loggedAt;
+	}
+}
@@ -0,0 +1,33 @@
+package projects.exception;
+
+/**
+ * This exception is thrown when an operation runs out of the time its caller
+ * allowed for it. Any transaction in progress is rolled back, so nothing is
+ * partially written.
+ * 
+ * @author Promineo
+ *
+ */
+
+@SuppressWarnings("serial")
+public class DeadlineExceededException extends DbException {
+
+	/**
+	 * Creates an exception with a message.
+	 * 
+	 * @param message The message.
+	 */
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Create an exception with a message and a cause.
+	 * 
+	 * @param message The message.
+	 * @param cause   The causal exception.
+	 */
+	public DeadlineExceededException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
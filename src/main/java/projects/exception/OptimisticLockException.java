@@ -0,0 +1,24 @@
+package projects.exception;
+
+/**
+ * This exception is thrown when a row was changed by another user after it was
+ * read. The row version passed with the change no longer matches the version in
+ * the database, so the change is rejected instead of overwriting the other
+ * user's work. The caller should re-read the row and try again.
+ * 
+ * @author Promineo
+ *
+ */
+
+@SuppressWarnings("serial")
+public class OptimisticLockException extends DbException {
+
+	/**
+	 * Creates an exception with a message.
+	 * 
+	 * @param message The message.
+	 */
+	public OptimisticLockException(String message) {
+		super(message);
+	}
+}
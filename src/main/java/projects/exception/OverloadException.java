@@ -0,0 +1,24 @@
+package projects.exception;
+
+/**
+ * This exception is thrown when a database operation is refused because too
+ * many operations are already running or waiting. Failing fast keeps an
+ * overloaded database from being buried under even more connections. The
+ * caller may retry later.
+ * 
+ * @author Promineo
+ *
+ */
+
+@SuppressWarnings("serial")
+public class OverloadException extends DbException {
+
+	/**
+	 * Creates an exception with a message.
+	 * 
+	 * @param message The message.
+	 */
+	public OverloadException(String message) {
+		super(message);
+	}
+}
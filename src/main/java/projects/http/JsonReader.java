@@ -0,0 +1,195 @@
+package projects.http;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class parses the flat JSON objects accepted by the HTTP API. Member
+ * values may be strings, numbers, booleans or null. Nested objects and arrays
+ * are rejected because no request body needs them.
+ */
+public class JsonReader {
+	private final String text;
+	private int pos;
+
+	private JsonReader(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Parse a flat JSON object.
+	 *
+	 * @param text The JSON text.
+	 * @return The members in document order. Numbers are returned as
+	 *         {@link BigDecimal}.
+	 * @throws IllegalArgumentException Thrown if the text is not a flat JSON
+	 *                                  object.
+	 */
+	public static Map<String, Object> parseObject(String text) {
+		JsonReader reader = new JsonReader(text);
+		Map<String, Object> members = reader.readObject();
+
+		reader.skipWhitespace();
+
+		if (reader.pos != text.length()) {
+			throw reader.error("Unexpected text after the object");
+		}
+
+		return members;
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> members = new LinkedHashMap<>();
+
+		expect('{');
+		skipWhitespace();
+
+		if (peek() == '}') {
+			pos++;
+			return members;
+		}
+
+		while (true) {
+			skipWhitespace();
+			String name = readString();
+			skipWhitespace();
+			expect(':');
+			skipWhitespace();
+			members.put(name, readValue());
+			skipWhitespace();
+
+			if (peek() == ',') {
+				pos++;
+			} else {
+				expect('}');
+				return members;
+			}
+		}
+	}
+
+	private Object readValue() {
+		char ch = peek();
+
+		if (ch == '"') {
+			return readString();
+		}
+
+		if (text.startsWith("null", pos)) {
+			pos += 4;
+			return null;
+		}
+
+		if (text.startsWith("true", pos)) {
+			pos += 4;
+			return Boolean.TRUE;
+		}
+
+		if (text.startsWith("false", pos)) {
+			pos += 5;
+			return Boolean.FALSE;
+		}
+
+		int start = pos;
+
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+
+		if (start == pos) {
+			throw error("Expected a string, number, boolean or null");
+		}
+
+		try {
+			return new BigDecimal(text.substring(start, pos));
+		} catch (NumberFormatException e) {
+			throw error("Invalid number");
+		}
+	}
+
+	private String readString() {
+		expect('"');
+		StringBuilder value = new StringBuilder();
+
+		while (true) {
+			char ch = next();
+
+			if (ch == '"') {
+				return value.toString();
+			}
+
+			if (ch != '\\') {
+				value.append(ch);
+				continue;
+			}
+
+			char escape = next();
+
+			switch (escape) {
+			case 'n':
+				value.append('\n');
+				break;
+
+			case 'r':
+				value.append('\r');
+				break;
+
+			case 't':
+				value.append('\t');
+				break;
+
+			case 'b':
+				value.append('\b');
+				break;
+
+			case 'f':
+				value.append('\f');
+				break;
+
+			case 'u':
+				if (pos + 4 > text.length()) {
+					throw error("Invalid unicode escape");
+				}
+
+				value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+
+			default:
+				value.append(escape);
+				break;
+			}
+		}
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private char peek() {
+		if (pos >= text.length()) {
+			throw error("Unexpected end of input");
+		}
+
+		return text.charAt(pos);
+	}
+
+	private char next() {
+		char ch = peek();
+		pos++;
+		return ch;
+	}
+
+	private void expect(char expected) {
+		if (next() != expected) {
+			pos--;
+			throw error("Expected '" + expected + "'");
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+}
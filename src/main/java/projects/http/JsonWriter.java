@@ -0,0 +1,230 @@
+package projects.http;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.entity.WorkLogEntry;
+
+/**
+ * This class writes JSON directly to a {@link Writer} as it goes, so a response
+ * is never built up as one large string. It keeps just enough state to place
+ * commas between members and array elements.
+ */
+public class JsonWriter {
+	private final Writer out;
+
+	// True when the next value in the current object or array needs a leading
+	// comma.
+	private boolean needComma;
+
+	/**
+	 * @param out The writer that receives the JSON text.
+	 */
+	public JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		separate();
+		out.write('{');
+		needComma = false;
+		return this;
+	}
+
+	public JsonWriter endObject() throws IOException {
+		out.write('}');
+		needComma = true;
+		return this;
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		separate();
+		out.write('[');
+		needComma = false;
+		return this;
+	}
+
+	public JsonWriter endArray() throws IOException {
+		out.write(']');
+		needComma = true;
+		return this;
+	}
+
+	/**
+	 * Write a member name. The next call writes its value.
+	 *
+	 * @param name The member name.
+	 * @return This writer.
+	 * @throws IOException Thrown if the underlying writer fails.
+	 */
+	public JsonWriter name(String name) throws IOException {
+		separate();
+		writeString(name);
+		out.write(':');
+		needComma = false;
+		return this;
+	}
+
+	public JsonWriter value(String value) throws IOException {
+		separate();
+
+		if (Objects.isNull(value)) {
+			out.write("null");
+		} else {
+			writeString(value);
+		}
+
+		needComma = true;
+		return this;
+	}
+
+	public JsonWriter value(Integer value) throws IOException {
+		return rawValue(Objects.isNull(value) ? "null" : value.toString());
+	}
+
+	public JsonWriter value(Long value) throws IOException {
+		return rawValue(Objects.isNull(value) ? "null" : value.toString());
+	}
+
+	public JsonWriter value(BigDecimal value) throws IOException {
+		return rawValue(Objects.isNull(value) ? "null" : value.toPlainString());
+	}
+
+	/**
+	 * Write a work-log entry.
+	 *
+	 * @param entry The entry.
+	 * @return This writer.
+	 * @throws IOException Thrown if the underlying writer fails.
+	 */
+	public JsonWriter workLogEntry(WorkLogEntry entry) throws IOException {
+		beginObject();
+		name("workLogId").value(entry.getWorkLogId());
+		name("projectId").value(entry.getProjectId());
+		name("hours").value(entry.getHours());
+		name("loggedAt").value(Objects.isNull(entry.getLoggedAt()) ? null : entry.getLoggedAt().toString());
+		return endObject();
+	}
+
+	/**
+	 * Write a project. When details are requested, its materials, steps and
+	 * categories are written as nested arrays.
+	 *
+	 * @param project     The project.
+	 * @param withDetails Whether to write the child collections.
+	 * @return This writer.
+	 * @throws IOException Thrown if the underlying writer fails.
+	 */
+	public JsonWriter project(Project project, boolean withDetails) throws IOException {
+		beginObject();
+		name("projectId").value(project.getProjectId());
+		name("projectName").value(project.getProjectName());
+		name("estimatedHours").value(project.getEstimatedHours());
+		name("actualHours").value(project.getActualHours());
+		name("difficulty").value(project.getDifficulty());
+		name("notes").value(project.getNotes());
+		name("version").value(project.getVersion());
+
+		if (withDetails) {
+			name("materials").beginArray();
+
+			for (Material material : project.getMaterials()) {
+				beginObject();
+				name("materialId").value(material.getMaterialId());
+				name("materialName").value(material.getMaterialName());
+				name("numRequired").value(material.getNumRequired());
+				name("cost").value(material.getCost());
+				endObject();
+			}
+
+			endArray();
+			name("steps").beginArray();
+
+			for (Step step : project.getSteps()) {
+				beginObject();
+				name("stepId").value(step.getStepId());
+				name("stepText").value(step.getStepText());
+				name("stepOrder").value(step.getStepOrder());
+				endObject();
+			}
+
+			endArray();
+			name("categories").beginArray();
+
+			for (Category category : project.getCategories()) {
+				beginObject();
+				name("categoryId").value(category.getCategoryId());
+				name("categoryName").value(category.getCategoryName());
+				endObject();
+			}
+
+			endArray();
+		}
+
+		return endObject();
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	private JsonWriter rawValue(String text) throws IOException {
+		separate();
+		out.write(text);
+		needComma = true;
+		return this;
+	}
+
+	private void separate() throws IOException {
+		if (needComma) {
+			out.write(',');
+			needComma = false;
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		out.write('"');
+
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+
+			switch (ch) {
+			case '"':
+				out.write("\\\"");
+				break;
+
+			case '\\':
+				out.write("\\\\");
+				break;
+
+			case '\n':
+				out.write("\\n");
+				break;
+
+			case '\r':
+				out.write("\\r");
+				break;
+
+			case '\t':
+				out.write("\\t");
+				break;
+
+			default:
+				if (ch < 0x20) {
+					out.write(String.format("\\u%04x", (int) ch));
+				} else {
+					out.write(ch);
+				}
+				break;
+			}
+		}
+
+		out.write('"');
+	}
+}
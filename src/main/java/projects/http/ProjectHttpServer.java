@@ -0,0 +1,476 @@
+package projects.http;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import projects.dao.DbConnection;
+import projects.dao.Deadline;
+import projects.dao.Session;
+import projects.entity.Project;
+import projects.entity.WorkLogEntry;
+import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+import projects.exception.OptimisticLockException;
+import projects.exception.OverloadException;
+import projects.service.ProjectService;
+
+/**
+ * This class exposes {@link ProjectService} as a small HTTP/JSON API so many
+ * clients can share one JVM. The endpoints are:
+ *
+ * <pre>
+ * GET    /projects        list projects without details
+ * GET    /projects/{id}   get a project with materials, steps and categories
+ * POST   /projects        create a project
+ * PUT    /projects/{id}   update the given fields of a project
+ * DELETE /projects/{id}   delete a project
+ * POST   /projects/{id}/work-log   log time spent on a project
+ * </pre>
+ *
+ * A body may only contain projectName, estimatedHours, actualHours, difficulty
+ * and notes (and version on PUT); anything else is answered with 400, as is a
+ * PUT that changes nothing or a POST without a project name. actualHours is
+ * only a starting value: after that it is the total of the work log, and a PUT
+ * that sets it is answered with 400. A work-log body holds only hours, which
+ * may be negative to correct an earlier entry. Updates and deletes honor
+ * an optional row version (a "version" member or an
+ * If-Match header) and answer 409 on a conflict. An X-Timeout-Millis header
+ * bounds how long the request may spend in the database. Responses to a client
+ * that has written carry an X-Last-Write token; a client that sends it back on
+ * its next requests reads its own writes even when replicas lag, whichever
+ * request thread serves it. Connections are kept alive
+ * between requests. Each request runs on its own virtual thread when the JVM
+ * supports them and on a pooled platform thread otherwise.
+ */
+public class ProjectHttpServer {
+	private static final String BASE_PATH = "/projects";
+	private static final String WORK_LOG_PATH = "/work-log";
+	private static final String WRITE_TOKEN_HEADER = "X-Last-Write";
+	private static final String VERSION = "version";
+
+	/* The project members a body may set, and the columns they are stored in. */
+	// @formatter:off
+	private static final Map<String, String> COLUMNS = Map.of(
+			"projectName", "project_name",
+			"estimatedHours", "estimated_hours",
+			"actualHours", "actual_hours",
+			"difficulty", "difficulty",
+			"notes", "notes");
+	// @formatter:on
+
+	private final ProjectService projectService;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Create a server. It does not accept requests until {@link #start()} is
+	 * called.
+	 *
+	 * @param projectService The service that handles the requests.
+	 * @param port           The TCP port, or 0 to pick a free port.
+	 * @throws IOException Thrown if the port cannot be bound.
+	 */
+	public ProjectHttpServer(ProjectService projectService, int port) throws IOException {
+		this.projectService = projectService;
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.executor = newRequestExecutor();
+
+		server.createContext(BASE_PATH, this::handle);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Migrate the schema, then start a server on the port given as the first
+	 * argument (default 8080).
+	 *
+	 * @param args The optional port number.
+	 * @throws IOException Thrown if the port cannot be bound.
+	 * @throws DbException Thrown if the schema cannot be migrated. The server is
+	 *                     not started.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		ProjectService projectService = new ProjectService();
+
+		projectService.migrateSchema();
+
+		ProjectHttpServer httpServer = new ProjectHttpServer(projectService, port);
+
+		Runtime.getRuntime().addShutdownHook(new Thread(httpServer::stop));
+		httpServer.start();
+		System.out.println("Serving projects on port " + httpServer.getPort());
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stop accepting requests, give in-flight requests a second to finish, and
+	 * release the request threads.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/*
+	 * Use a virtual-thread-per-request executor when the runtime has one (Java
+	 * 21+). The project builds for Java 17, so it is looked up reflectively.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/* Serve the request in the client's session, rebuilt from its token. */
+	private void handle(HttpExchange exchange) throws IOException {
+		Session session = Session.fromToken(exchange.getRequestHeaders().getFirst(WRITE_TOKEN_HEADER));
+
+		try {
+			DbConnection.callInSession(session, () -> {
+				try {
+					respond(exchange);
+					return null;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			String path = exchange.getRequestURI().getPath();
+
+			if (path.endsWith(WORK_LOG_PATH)) {
+				Integer projectId = parseProjectId(path.substring(0, path.length() - WORK_LOG_PATH.length()));
+
+				if (Objects.isNull(projectId)) {
+					throw new NoSuchElementException("No resource at " + path);
+				}
+
+				if (method.equals("POST")) {
+					logWork(exchange, projectId);
+				} else {
+					sendError(exchange, 405, "Method " + method + " is not allowed.");
+				}
+
+				return;
+			}
+
+			Integer projectId = parseProjectId(path);
+
+			if (Objects.isNull(projectId)) {
+				switch (method) {
+				case "GET":
+					listProjects(exchange);
+					break;
+
+				case "POST":
+					createProject(exchange);
+					break;
+
+				default:
+					sendError(exchange, 405, "Method " + method + " is not allowed.");
+					break;
+				}
+			} else {
+				switch (method) {
+				case "GET":
+					getProject(exchange, projectId);
+					break;
+
+				case "PUT":
+					updateProject(exchange, projectId);
+					break;
+
+				case "DELETE":
+					deleteProject(exchange, projectId);
+					break;
+
+				default:
+					sendError(exchange, 405, "Method " + method + " is not allowed.");
+					break;
+				}
+			}
+		} catch (NoSuchElementException e) {
+			sendError(exchange, 404, e.getMessage());
+		} catch (OptimisticLockException e) {
+			sendError(exchange, 409, e.getMessage());
+		} catch (OverloadException e) {
+			sendError(exchange, 503, e.getMessage());
+		} catch (DeadlineExceededException e) {
+			sendError(exchange, 504, e.getMessage());
+		} catch (DbException e) {
+			if (isConstraintViolation(e)) {
+				sendError(exchange, 400, "Invalid request: " + rootCause(e).getMessage());
+			} else {
+				sendError(exchange, 500, e.toString());
+			}
+		} catch (IllegalArgumentException | ClassCastException | ArithmeticException e) {
+			sendError(exchange, 400, "Invalid request: " + e.getMessage());
+		} catch (RuntimeException e) {
+			sendError(exchange, 500, e.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void listProjects(HttpExchange exchange) throws IOException {
+		List<Project> projects = projectService.fetchAllProjects(requestDeadline(exchange));
+		JsonWriter json = beginJson(exchange, 200);
+
+		json.beginArray();
+
+		for (Project project : projects) {
+			json.project(project, false);
+		}
+
+		json.endArray().flush();
+	}
+
+	private void getProject(HttpExchange exchange, Integer projectId) throws IOException {
+		Project project = projectService.fetchProjectById(projectId, requestDeadline(exchange));
+		beginJson(exchange, 200).project(project, true).flush();
+	}
+
+	private void createProject(HttpExchange exchange) throws IOException {
+		Map<String, Object> body = readBody(exchange);
+		Project project = new Project();
+
+		checkFields(body, false);
+
+		if (!(body.get("projectName") instanceof String) || ((String) body.get("projectName")).isBlank()) {
+			throw new IllegalArgumentException("projectName is required.");
+		}
+
+		applyFields(project, body);
+
+		Project dbProject = projectService.addProject(project, requestDeadline(exchange));
+
+		exchange.getResponseHeaders().set("Location", BASE_PATH + "/" + dbProject.getProjectId());
+		beginJson(exchange, 201).project(dbProject, false).flush();
+	}
+
+	/*
+	 * Only the members present in the body are changed, so the DAO updates just
+	 * those columns. Each one is marked changed, even a null, because the setters
+	 * of a new project only notice values that differ from null.
+	 */
+	private void updateProject(HttpExchange exchange, Integer projectId) throws IOException {
+		Map<String, Object> body = readBody(exchange);
+		Project project = new Project();
+
+		checkFields(body, true);
+
+		if (body.containsKey("actualHours")) {
+			throw new IllegalArgumentException("actualHours is the total of the work log and cannot be updated.");
+		}
+
+		if (body.keySet().stream().noneMatch(COLUMNS::containsKey)) {
+			throw new IllegalArgumentException("The body changes nothing.");
+		}
+
+		project.setProjectId(projectId);
+		project.setVersion(requestVersion(exchange, body));
+		applyFields(project, body);
+
+		for (String field : body.keySet()) {
+			if (COLUMNS.containsKey(field)) {
+				project.markColumnDirty(COLUMNS.get(field));
+			}
+		}
+
+		projectService.modifyProjectDetails(project, requestDeadline(exchange));
+
+		JsonWriter json = beginJson(exchange, 200);
+		json.beginObject().name("projectId").value(projectId).name("version").value(project.getVersion()).endObject()
+				.flush();
+	}
+
+	private void logWork(HttpExchange exchange, Integer projectId) throws IOException {
+		Map<String, Object> body = readBody(exchange);
+
+		for (String field : body.keySet()) {
+			if (!field.equals("hours")) {
+				throw new IllegalArgumentException("Unknown field " + field + ".");
+			}
+		}
+
+		WorkLogEntry entry = projectService.logWork(projectId, toDecimal(body.get("hours")), requestDeadline(exchange));
+
+		beginJson(exchange, 201).workLogEntry(entry).flush();
+	}
+
+	private void deleteProject(HttpExchange exchange, Integer projectId) throws IOException {
+		projectService.deleteProject(projectId, requestVersion(exchange, Map.of()), requestDeadline(exchange));
+		sendHeaders(exchange, 204, -1);
+	}
+
+	private static void applyFields(Project project, Map<String, Object> body) {
+		if (body.containsKey("projectName")) {
+			project.setProjectName((String) body.get("projectName"));
+		}
+
+		if (body.containsKey("estimatedHours")) {
+			project.setEstimatedHours(toDecimal(body.get("estimatedHours")));
+		}
+
+		if (body.containsKey("actualHours")) {
+			project.setActualHours(toDecimal(body.get("actualHours")));
+		}
+
+		if (body.containsKey("difficulty")) {
+			project.setDifficulty(toInteger(body.get("difficulty")));
+		}
+
+		if (body.containsKey("notes")) {
+			project.setNotes((String) body.get("notes"));
+		}
+	}
+
+	/* Reject members that are not project fields. */
+	private static void checkFields(Map<String, Object> body, boolean versioned) {
+		for (String field : body.keySet()) {
+			if (!COLUMNS.containsKey(field) && !(versioned && field.equals(VERSION))) {
+				throw new IllegalArgumentException("Unknown field " + field + ".");
+			}
+		}
+	}
+
+	private static Integer requestVersion(HttpExchange exchange, Map<String, Object> body) {
+		String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+
+		if (Objects.nonNull(ifMatch)) {
+			return Integer.valueOf(ifMatch.replace("\"", "").trim());
+		}
+
+		return toInteger(body.get(VERSION));
+	}
+
+	/*
+	 * Clients may bound a request with an X-Timeout-Millis header. The deadline
+	 * is passed down to the DAO, and 504 is returned if it passes.
+	 */
+	private static Deadline requestDeadline(HttpExchange exchange) {
+		String timeout = exchange.getRequestHeaders().getFirst("X-Timeout-Millis");
+
+		return Objects.isNull(timeout) ? Deadline.NONE
+				: Deadline.after(Duration.ofMillis(Long.parseLong(timeout.trim())));
+	}
+
+	/* A missing required value or a broken reference is the client's fault. */
+	private static boolean isConstraintViolation(DbException e) {
+		for (Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+			if (cause instanceof SQLIntegrityConstraintViolationException) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static Throwable rootCause(Throwable e) {
+		Throwable cause = e;
+
+		while (Objects.nonNull(cause.getCause())) {
+			cause = cause.getCause();
+		}
+
+		return cause;
+	}
+
+	private static BigDecimal toDecimal(Object value) {
+		return Objects.isNull(value) ? null : ((BigDecimal) value).setScale(2);
+	}
+
+	private static Integer toInteger(Object value) {
+		return Objects.isNull(value) ? null : ((BigDecimal) value).intValueExact();
+	}
+
+	private static Integer parseProjectId(String path) {
+		String rest = path.substring(BASE_PATH.length());
+
+		if (rest.isEmpty() || rest.equals("/")) {
+			return null;
+		}
+
+		if (!rest.startsWith("/")) {
+			throw new NoSuchElementException("No resource at " + path);
+		}
+
+		try {
+			return Integer.valueOf(rest.substring(1));
+		} catch (NumberFormatException e) {
+			throw new NoSuchElementException("No resource at " + path);
+		}
+	}
+
+	private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			return JsonReader.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+
+	/*
+	 * Send the headers with chunked transfer encoding and return a writer that
+	 * streams the body. The caller flushes the writer and the exchange is closed
+	 * by the handler, which keeps the connection open for the next request.
+	 */
+	private static JsonWriter beginJson(HttpExchange exchange, int status) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		sendHeaders(exchange, status, 0);
+
+		return new JsonWriter(
+				new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)));
+	}
+
+	/* Send the headers, with the session's write token if it has one. */
+	private static void sendHeaders(HttpExchange exchange, int status, long length) throws IOException {
+		String token = DbConnection.currentSession().getToken();
+
+		if (Objects.nonNull(token)) {
+			exchange.getResponseHeaders().set(WRITE_TOKEN_HEADER, token);
+		}
+
+		exchange.sendResponseHeaders(status, length);
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		if (exchange.getResponseCode() != -1) {
+			/* The headers were already sent, so the connection is simply closed. */
+			return;
+		}
+
+		JsonWriter json = beginJson(exchange, status);
+		json.beginObject().name("error").value(message).endObject().flush();
+	}
+}
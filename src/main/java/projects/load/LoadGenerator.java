@@ -0,0 +1,351 @@
+package projects.load;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import projects.dao.DbConnection;
+import projects.entity.Project;
+import projects.service.ProjectService;
+
+/**
+ * This class drives {@link ProjectService} with many concurrent users and
+ * reports throughput and latency for each operation. It inserts and deletes
+ * projects, so it only runs against a scratch schema named by its {@code url}
+ * argument, never the application's own schema. It migrates that schema, then
+ * seeds it with projects.
+ *
+ * Arrivals are open-loop: operations are scheduled at a fixed rate whether or
+ * not earlier ones have finished. Latency is measured from the time an
+ * operation was scheduled to start, not from when a user thread picked it up,
+ * so time spent queued behind a slow database is counted. This corrects for
+ * coordinated omission. Failed operations are timed separately, so quick
+ * failures do not make the successful ones look faster.
+ *
+ * Arguments are {@code key=value} pairs, for example:
+ *
+ * <pre>
+ * url=jdbc:mysql://localhost:3306/projects_load?user=...&amp;password=... users=16 rate=200 duration=30 seed=100
+ *     mix=add:10,list:20,fetch:50,modify:15,delete:5
+ * </pre>
+ */
+public class LoadGenerator {
+	/**
+	 * The service operations that can be mixed into a run.
+	 */
+	public enum Operation {
+		ADD, LIST, FETCH, MODIFY, DELETE
+	}
+
+	private final ProjectService projectService;
+	private final int users;
+	private final double rate;
+	private final long durationNanos;
+	private final Operation[] mixTable;
+
+	private final Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+	private final List<Integer> projectIds = new ArrayList<>();
+
+	/**
+	 * @param projectService The service under test.
+	 * @param users          The number of concurrent user threads.
+	 * @param rate           The arrival rate in operations per second.
+	 * @param durationSecs   How long to generate load.
+	 * @param mix            The relative weight of each operation.
+	 */
+	public LoadGenerator(ProjectService projectService, int users, double rate, int durationSecs,
+			Map<Operation, Integer> mix) {
+		this.projectService = projectService;
+		this.users = users;
+		this.rate = rate;
+		this.durationNanos = TimeUnit.SECONDS.toNanos(durationSecs);
+		this.mixTable = buildMixTable(mix);
+
+		for (Operation operation : Operation.values()) {
+			recorders.put(operation, new LatencyRecorder());
+		}
+	}
+
+	/**
+	 * Parse the arguments, seed the database, run the load and print the report.
+	 *
+	 * @param args {@code key=value} settings. See the class comment.
+	 * @throws InterruptedException Thrown if the run is interrupted.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> settings = new HashMap<>();
+
+		for (String arg : args) {
+			String[] pair = arg.split("=", 2);
+			settings.put(pair[0], pair.length > 1 ? pair[1] : "");
+		}
+
+		String url = settings.get("url");
+		String schema = Objects.isNull(url) ? null : schemaOf(url);
+
+		if (Objects.isNull(schema) || schema.equalsIgnoreCase(DbConnection.getDefaultSchema())) {
+			System.out.println("Usage: LoadGenerator url=<JDBC URL of a scratch schema> [users=16 rate=200 ...]");
+			System.out.println("The schema must not be the application's schema, '" + DbConnection.getDefaultSchema()
+					+ "'.");
+			System.exit(2);
+		}
+
+		DbConnection.configure(url, List.of(), DbConnection.ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(1));
+
+		ProjectService projectService = new ProjectService();
+
+		projectService.migrateSchema();
+
+		LoadGenerator generator = new LoadGenerator(projectService,
+				Integer.parseInt(settings.getOrDefault("users", "16")),
+				Double.parseDouble(settings.getOrDefault("rate", "200")),
+				Integer.parseInt(settings.getOrDefault("duration", "30")),
+				parseMix(settings.getOrDefault("mix", "add:10,list:20,fetch:50,modify:15,delete:5")));
+
+		generator.seed(Integer.parseInt(settings.getOrDefault("seed", "100")));
+		generator.run();
+		generator.printReport(System.out);
+	}
+
+	/**
+	 * Insert projects for the fetch, modify and delete operations to work on.
+	 *
+	 * @param count The number of projects to insert.
+	 */
+	public void seed(int count) {
+		for (int i = 0; i < count; i++) {
+			addProject();
+		}
+	}
+
+	/**
+	 * Generate load for the configured duration and wait for every scheduled
+	 * operation to finish.
+	 *
+	 * @throws InterruptedException Thrown if interrupted while waiting.
+	 */
+	public void run() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(users);
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		long start = System.nanoTime();
+
+		for (long i = 0;; i++) {
+			long intended = start + i * intervalNanos;
+
+			if (intended - start >= durationNanos) {
+				break;
+			}
+
+			long wait = intended - System.nanoTime();
+
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+
+			Operation operation = mixTable[ThreadLocalRandom.current().nextInt(mixTable.length)];
+			pool.execute(() -> execute(operation, intended));
+		}
+
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+	}
+
+	/**
+	 * Print throughput and p50, p99 and max latency for each operation.
+	 *
+	 * @param out Where to print the report.
+	 */
+	public void printReport(PrintStream out) {
+		double seconds = durationNanos / 1e9;
+
+		out.printf("%n%-8s %8s %10s %10s %10s %10s %7s %10s %10s%n", "op", "count", "ops/sec", "p50 ms", "p99 ms",
+				"max ms", "errors", "err p50", "err p99");
+
+		for (Operation operation : Operation.values()) {
+			LatencyRecorder recorder = recorders.get(operation);
+			long[] sorted = recorder.sortedSamples(false);
+			long[] errors = recorder.sortedSamples(true);
+
+			out.printf("%-8s %8d %10.1f %10.2f %10.2f %10.2f %7d %10.2f %10.2f%n", operation, sorted.length,
+					sorted.length / seconds, percentile(sorted, 0.50), percentile(sorted, 0.99),
+					percentile(sorted, 1.0), errors.length, percentile(errors, 0.50), percentile(errors, 0.99));
+		}
+
+		out.println("\nRetries: " + projectService.getRetryPolicy());
+		out.println("Fetch coalescing: " + projectService.getFetchCoalescingStats());
+	}
+
+	private void execute(Operation operation, long intendedStart) {
+		LatencyRecorder recorder = recorders.get(operation);
+		boolean failed = false;
+
+		try {
+			switch (operation) {
+			case ADD:
+				addProject();
+				break;
+
+			case LIST:
+				projectService.fetchAllProjects();
+				break;
+
+			case FETCH:
+				projectService.fetchProjectById(pickProjectId(false));
+				break;
+
+			case MODIFY:
+				Project project = new Project();
+				project.setProjectId(pickProjectId(false));
+				project.setEstimatedHours(randomHours());
+				projectService.modifyProjectDetails(project);
+				break;
+
+			case DELETE:
+				projectService.deleteProject(pickProjectId(true));
+				break;
+			}
+		} catch (RuntimeException e) {
+			failed = true;
+		}
+
+		recorder.record(System.nanoTime() - intendedStart, failed);
+	}
+
+	private void addProject() {
+		Project project = new Project();
+		project.setProjectName("Load test project " + ThreadLocalRandom.current().nextInt(1_000_000));
+		project.setEstimatedHours(randomHours());
+		project.setActualHours(randomHours());
+		project.setDifficulty(ThreadLocalRandom.current().nextInt(1, 6));
+		project.setNotes("Inserted by the load generator.");
+
+		Integer projectId = projectService.addProject(project).getProjectId();
+
+		synchronized (projectIds) {
+			projectIds.add(projectId);
+		}
+	}
+
+	/*
+	 * Pick a random known project. Deleted projects are removed from the pool so
+	 * later operations do not target them.
+	 */
+	private Integer pickProjectId(boolean remove) {
+		synchronized (projectIds) {
+			if (projectIds.isEmpty()) {
+				throw new IllegalStateException("There are no projects left to work on.");
+			}
+
+			int index = ThreadLocalRandom.current().nextInt(projectIds.size());
+			Integer projectId = projectIds.get(index);
+
+			if (remove) {
+				projectIds.set(index, projectIds.get(projectIds.size() - 1));
+				projectIds.remove(projectIds.size() - 1);
+			}
+
+			return projectId;
+		}
+	}
+
+	private static BigDecimal randomHours() {
+		return BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(100, 10_000), 2);
+	}
+
+	/* The schema named in a JDBC URL, or null if it names none. */
+	private static String schemaOf(String url) {
+		Matcher matcher = Pattern.compile("jdbc:mysql://[^/]*/([^?;]*)").matcher(url);
+		return matcher.lookingAt() && !matcher.group(1).isBlank() ? matcher.group(1) : null;
+	}
+
+	private static double percentile(long[] sorted, double fraction) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(index, 0)] / 1e6;
+	}
+
+	/*
+	 * Expand the weights into a table with one entry per unit of weight, so an
+	 * operation can be chosen with a single random index.
+	 */
+	private static Operation[] buildMixTable(Map<Operation, Integer> mix) {
+		List<Operation> table = new ArrayList<>();
+
+		mix.forEach((operation, weight) -> {
+			for (int i = 0; i < weight; i++) {
+				table.add(operation);
+			}
+		});
+
+		if (table.isEmpty()) {
+			throw new IllegalArgumentException("The operation mix must have at least one positive weight.");
+		}
+
+		return table.toArray(new Operation[0]);
+	}
+
+	private static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+
+		Arrays.stream(mix.split(",")).map(String::trim).filter(entry -> !entry.isEmpty()).forEach(entry -> {
+			String[] pair = entry.split(":");
+			weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+		});
+
+		return weights;
+	}
+
+	/*
+	 * Collects every latency sample for one operation, successes and failures
+	 * apart. Exact percentiles are affordable because a run produces at most a
+	 * few million samples.
+	 */
+	private static class LatencyRecorder {
+		private final Samples successes = new Samples();
+		private final Samples failures = new Samples();
+
+		synchronized void record(long nanos, boolean failed) {
+			(failed ? failures : successes).add(nanos);
+		}
+
+		synchronized long[] sortedSamples(boolean failed) {
+			return (failed ? failures : successes).sorted();
+		}
+	}
+
+	private static class Samples {
+		private long[] samples = new long[1024];
+		private int count;
+
+		void add(long nanos) {
+			if (count == samples.length) {
+				samples = Arrays.copyOf(samples, count * 2);
+			}
+
+			samples[count++] = nanos;
+		}
+
+		long[] sorted() {
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package projects.search;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the projects that contain one term, compressed. Entries are
+ * kept in project ID order and each is stored as two variable-length integers:
+ * the gap from the previous project ID and the number of times the term occurs.
+ * Most gaps and counts fit in one byte, so an entry usually takes two bytes
+ * instead of eight.
+ *
+ * New projects have the highest IDs, so adding them is an append. Changing or
+ * removing an entry in the middle re-encodes the list, which only touches the
+ * terms of the project being changed.
+ */
+class PostingList {
+	private byte[] data = new byte[8];
+	private int length;
+	private int count;
+	private int lastProjectId = -1;
+
+	/**
+	 * @return The number of projects that contain the term.
+	 */
+	int count() {
+		return count;
+	}
+
+	/**
+	 * @return The number of bytes the encoded entries use.
+	 */
+	int byteSize() {
+		return length;
+	}
+
+	/**
+	 * Record how often the term occurs in a project, replacing any earlier count.
+	 *
+	 * @param projectId The project ID.
+	 * @param frequency The number of occurrences. Must be positive.
+	 */
+	void put(int projectId, int frequency) {
+		if (projectId > lastProjectId) {
+			append(projectId, frequency);
+			return;
+		}
+
+		Cursor cursor = cursor();
+		PostingList rebuilt = new PostingList();
+		boolean written = false;
+
+		while (cursor.next()) {
+			if (!written && projectId <= cursor.projectId) {
+				rebuilt.append(projectId, frequency);
+				written = true;
+
+				if (projectId == cursor.projectId) {
+					continue;
+				}
+			}
+
+			rebuilt.append(cursor.projectId, cursor.frequency);
+		}
+
+		if (!written) {
+			rebuilt.append(projectId, frequency);
+		}
+
+		replaceWith(rebuilt);
+	}
+
+	/**
+	 * Remove a project from the list.
+	 *
+	 * @param projectId The project ID.
+	 */
+	void remove(int projectId) {
+		Cursor cursor = cursor();
+		PostingList rebuilt = new PostingList();
+
+		while (cursor.next()) {
+			if (cursor.projectId != projectId) {
+				rebuilt.append(cursor.projectId, cursor.frequency);
+			}
+		}
+
+		replaceWith(rebuilt);
+	}
+
+	/**
+	 * @return A cursor positioned before the first entry.
+	 */
+	Cursor cursor() {
+		return new Cursor();
+	}
+
+	private void append(int projectId, int frequency) {
+		if (length + 10 > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+		}
+
+		writeVarInt(projectId - lastProjectId);
+		writeVarInt(frequency);
+		lastProjectId = projectId;
+		count++;
+	}
+
+	private void replaceWith(PostingList other) {
+		data = other.data;
+		length = other.length;
+		count = other.count;
+		lastProjectId = other.lastProjectId;
+	}
+
+	/* Seven bits per byte, low bits first, with the high bit set on all but the last byte. */
+	private void writeVarInt(int value) {
+		while ((value & ~0x7F) != 0) {
+			data[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		data[length++] = (byte) value;
+	}
+
+	/**
+	 * Decodes the entries one at a time.
+	 */
+	class Cursor {
+		private int position;
+		int projectId = -1;
+		int frequency;
+
+		/**
+		 * @return {@code true} if the cursor moved to another entry.
+		 */
+		boolean next() {
+			if (position >= length) {
+				return false;
+			}
+
+			projectId += readVarInt();
+			frequency = readVarInt();
+			return true;
+		}
+
+		private int readVarInt() {
+			int value = 0;
+
+			for (int shift = 0;; shift += 7) {
+				byte b = data[position++];
+				value |= (b & 0x7F) << shift;
+
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+	}
+}
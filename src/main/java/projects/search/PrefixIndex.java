@@ -0,0 +1,264 @@
+package projects.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import projects.entity.Material;
+import projects.entity.Project;
+
+/**
+ * This class completes the start of a project or material name. Names are kept
+ * in one sorted array of lower-case keys with parallel arrays for the original
+ * name, the kind and the project ID, so a lookup is a binary search followed by
+ * a short forward scan, and the index costs a few dozen bytes per name.
+ *
+ * Lookups read an immutable copy of the arrays and never block. Changes build
+ * a new copy and publish it, which costs time in proportion to the index size
+ * but keeps lookups consistent; names change far less often than they are
+ * looked up.
+ */
+public class PrefixIndex {
+	private static final byte PROJECT = 0;
+	private static final byte MATERIAL = 1;
+
+	private static final Comparator<Entry> ENTRY_ORDER = Comparator.comparing((Entry entry) -> entry.key)
+			.thenComparingInt(entry -> entry.kind).thenComparingInt(entry -> entry.projectId);
+
+	private volatile Entries entries = new Entries(new String[0], new String[0], new byte[0], new int[0]);
+
+	/**
+	 * Build an index from projects and their materials.
+	 *
+	 * @param projects Projects with their materials.
+	 * @return The index.
+	 */
+	public static PrefixIndex build(List<Project> projects) {
+		List<Entry> added = new ArrayList<>();
+		projects.forEach(project -> addEntries(project, added));
+
+		PrefixIndex index = new PrefixIndex();
+		index.entries = index.entries.replace(null, false, added);
+		return index;
+	}
+
+	/**
+	 * Add or replace the names of a project and all of its materials.
+	 *
+	 * @param project The project with its materials.
+	 */
+	public synchronized void put(Project project) {
+		List<Entry> added = new ArrayList<>();
+		addEntries(project, added);
+		entries = entries.replace(project.getProjectId(), true, added);
+	}
+
+	/**
+	 * Replace the name of a project, keeping the names of its materials.
+	 *
+	 * @param projectId   The project ID.
+	 * @param projectName The new name.
+	 */
+	public synchronized void rename(Integer projectId, String projectName) {
+		List<Entry> added = new ArrayList<>();
+		addEntry(projectName, PROJECT, projectId, added);
+		entries = entries.replace(projectId, false, added);
+	}
+
+	/**
+	 * Remove the names of a project and its materials.
+	 *
+	 * @param projectId The project ID.
+	 */
+	public synchronized void remove(Integer projectId) {
+		entries = entries.replace(projectId, true, List.of());
+	}
+
+	/**
+	 * Find the names that start with a prefix, ignoring case.
+	 *
+	 * @param prefix The start of a name. Leading blanks are ignored.
+	 * @param limit  The most suggestions to return.
+	 * @return The suggestions in name order, projects before materials of the
+	 *         same name.
+	 */
+	public List<Suggestion> suggest(String prefix, int limit) {
+		String key = normalize(prefix);
+		List<Suggestion> suggestions = new ArrayList<>();
+
+		if (Objects.isNull(key) || key.isEmpty() || limit <= 0) {
+			return suggestions;
+		}
+
+		Entries current = entries;
+		int i = current.lowerBound(key);
+
+		while (i < current.keys.length && current.keys[i].startsWith(key) && suggestions.size() < limit) {
+			String groupKey = current.keys[i];
+			byte groupKind = current.kinds[i];
+			String name = current.names[i];
+			List<Integer> projectIds = new ArrayList<>();
+
+			for (; i < current.keys.length && current.kinds[i] == groupKind && current.keys[i].equals(groupKey); i++) {
+				projectIds.add(current.projectIds[i]);
+			}
+
+			suggestions.add(new Suggestion(groupKind == PROJECT ? Suggestion.Kind.PROJECT : Suggestion.Kind.MATERIAL,
+					name, projectIds));
+		}
+
+		return suggestions;
+	}
+
+	/**
+	 * @return The number of names indexed.
+	 */
+	public int size() {
+		return entries.keys.length;
+	}
+
+	@Override
+	public String toString() {
+		return "names=" + size();
+	}
+
+	private static void addEntries(Project project, List<Entry> added) {
+		addEntry(project.getProjectName(), PROJECT, project.getProjectId(), added);
+
+		for (Material material : project.getMaterials()) {
+			addEntry(material.getMaterialName(), MATERIAL, project.getProjectId(), added);
+		}
+	}
+
+	private static void addEntry(String name, byte kind, Integer projectId, List<Entry> added) {
+		String key = normalize(name);
+
+		if (Objects.nonNull(key) && !key.isEmpty()) {
+			added.add(new Entry(key, name.strip(), kind, projectId));
+		}
+	}
+
+	private static String normalize(String name) {
+		return Objects.isNull(name) ? null : name.strip().toLowerCase(Locale.ROOT);
+	}
+
+	/* One name before it is merged into the arrays. */
+	private static class Entry {
+		private final String key;
+		private final String name;
+		private final byte kind;
+		private final int projectId;
+
+		Entry(String key, String name, byte kind, int projectId) {
+			this.key = key;
+			this.name = name;
+			this.kind = kind;
+			this.projectId = projectId;
+		}
+	}
+
+	/* An immutable, sorted copy of the index. */
+	private static class Entries {
+		private final String[] keys;
+		private final String[] names;
+		private final byte[] kinds;
+		private final int[] projectIds;
+
+		Entries(String[] keys, String[] names, byte[] kinds, int[] projectIds) {
+			this.keys = keys;
+			this.names = names;
+			this.kinds = kinds;
+			this.projectIds = projectIds;
+		}
+
+		/* The first position whose key is not less than the given key. */
+		int lowerBound(String key) {
+			int low = 0;
+			int high = keys.length;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+
+				if (keys[mid].compareTo(key) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			return low;
+		}
+
+		/*
+		 * Return a copy without the project's names (only its project name unless
+		 * withMaterials is set) and with the added names merged in. A null project ID
+		 * removes nothing.
+		 */
+		Entries replace(Integer projectId, boolean withMaterials, List<Entry> added) {
+			Entry[] sorted = added.toArray(new Entry[0]);
+			Arrays.sort(sorted, ENTRY_ORDER);
+
+			int kept = 0;
+
+			for (int i = 0; i < keys.length; i++) {
+				if (!removes(i, projectId, withMaterials)) {
+					kept++;
+				}
+			}
+
+			int size = kept + sorted.length;
+			Entries result = new Entries(new String[size], new String[size], new byte[size], new int[size]);
+			int from = 0;
+			int next = 0;
+
+			for (int to = 0; to < size; to++) {
+				while (from < keys.length && removes(from, projectId, withMaterials)) {
+					from++;
+				}
+
+				if (from < keys.length && (next == sorted.length || compare(from, sorted[next]) <= 0)) {
+					result.set(to, keys[from], names[from], kinds[from], projectIds[from]);
+					from++;
+				} else {
+					Entry entry = sorted[next++];
+					result.set(to, entry.key, entry.name, entry.kind, entry.projectId);
+				}
+			}
+
+			return result;
+		}
+
+		private boolean removes(int i, Integer projectId, boolean withMaterials) {
+			return Objects.nonNull(projectId) && projectIds[i] == projectId && (withMaterials || kinds[i] == PROJECT);
+		}
+
+		private int compare(int i, Entry entry) {
+			int result = keys[i].compareTo(entry.key);
+
+			if (result == 0) {
+				result = Byte.compare(kinds[i], entry.kind);
+			}
+
+			return result == 0 ? Integer.compare(projectIds[i], entry.projectId) : result;
+		}
+
+		/* Equal neighbours share one String, so repeated material names are stored once. */
+		private void set(int i, String key, String name, byte kind, int projectId) {
+			if (i > 0 && keys[i - 1].equals(key)) {
+				key = keys[i - 1];
+
+				if (names[i - 1].equals(name)) {
+					name = names[i - 1];
+				}
+			}
+
+			keys[i] = key;
+			names[i] = name.equals(key) ? key : name;
+			kinds[i] = kind;
+			projectIds[i] = projectId;
+		}
+	}
+}
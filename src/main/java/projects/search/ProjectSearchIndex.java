@@ -0,0 +1,317 @@
+package projects.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import projects.entity.Project;
+import projects.entity.Step;
+
+/**
+ * This class is an in-memory inverted index over project notes and step text.
+ * Each word maps to a compressed {@link PostingList} of the projects that
+ * contain it, so a search reads a few posting lists instead of scanning TEXT
+ * columns with {@code LIKE '%word%'}.
+ *
+ * Queries may have several words. A project matches if it contains any of them
+ * and is ranked with BM25, which favours projects that contain more of the
+ * words, contain rare words, and are short.
+ *
+ * The index is built once from the full project graph and then kept up to date
+ * as projects are added, changed and deleted. Searches may run concurrently
+ * with each other; updates are exclusive.
+ */
+public class ProjectSearchIndex {
+	/* BM25 term-frequency saturation. */
+	private static final double K1 = 1.2;
+	/* BM25 document-length normalization. */
+	private static final double B = 0.75;
+
+	// Words too common to help rank results.
+	private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "for",
+			"from", "in", "is", "it", "of", "on", "or", "the", "to", "with");
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, PostingList> postings = new HashMap<>();
+	private final Map<Integer, Document> documents = new HashMap<>();
+	private long totalLength;
+
+	/**
+	 * Build an index from project graphs.
+	 *
+	 * @param projects Projects with their steps.
+	 * @return The index.
+	 */
+	public static ProjectSearchIndex build(List<Project> projects) {
+		ProjectSearchIndex index = new ProjectSearchIndex();
+
+		/* Adding in ID order makes every posting list update an append. */
+		List<Project> ordered = new ArrayList<>(projects);
+		ordered.sort((a, b) -> Integer.compare(a.getProjectId(), b.getProjectId()));
+		ordered.forEach(index::index);
+
+		return index;
+	}
+
+	/**
+	 * Add or replace a project, including the text of its steps.
+	 *
+	 * @param project The project with its steps.
+	 */
+	public void index(Project project) {
+		Map<String, Integer> stepTerms = new HashMap<>();
+
+		for (Step step : project.getSteps()) {
+			tokenize(step.getStepText(), stepTerms);
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			replace(project.getProjectId(), project.getProjectName(), tokenize(project.getNotes(), new HashMap<>()),
+					stepTerms);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply the changed name and notes of a project. Only columns marked as
+	 * changed are applied, so this can be given the same partial project as
+	 * {@code modifyProjectDetails}. Projects not in the index are ignored.
+	 *
+	 * @param changes A project with its changed columns.
+	 */
+	public void update(Project changes) {
+		Set<String> columns = changes.getDirtyColumns();
+
+		if (!columns.contains("project_name") && !columns.contains("notes")) {
+			return;
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			Document old = documents.get(changes.getProjectId());
+
+			if (Objects.isNull(old)) {
+				return;
+			}
+
+			String name = columns.contains("project_name") ? changes.getProjectName() : old.name;
+			Map<String, Integer> noteTerms = columns.contains("notes") ? tokenize(changes.getNotes(), new HashMap<>())
+					: old.noteTerms;
+
+			replace(changes.getProjectId(), name, noteTerms, old.stepTerms);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a project from the index.
+	 *
+	 * @param projectId The project ID.
+	 */
+	public void remove(Integer projectId) {
+		lock.writeLock().lock();
+
+		try {
+			Document old = documents.remove(projectId);
+
+			if (Objects.nonNull(old)) {
+				totalLength -= old.length;
+
+				for (String term : old.terms.keySet()) {
+					PostingList list = postings.get(term);
+					list.remove(projectId);
+
+					if (list.count() == 0) {
+						postings.remove(term);
+					}
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the projects that best match the words of a query.
+	 *
+	 * @param query The words to look for.
+	 * @param limit The most results to return.
+	 * @return The matches, best first.
+	 */
+	public List<SearchHit> search(String query, int limit) {
+		Map<String, Integer> queryTerms = tokenize(query, new HashMap<>());
+
+		if (queryTerms.isEmpty() || limit <= 0) {
+			return List.of();
+		}
+
+		lock.readLock().lock();
+
+		try {
+			int documentCount = documents.size();
+			double averageLength = documentCount == 0 ? 0 : (double) totalLength / documentCount;
+			Map<Integer, Double> scores = new HashMap<>();
+
+			for (String term : queryTerms.keySet()) {
+				PostingList list = postings.get(term);
+
+				if (Objects.isNull(list)) {
+					continue;
+				}
+
+				double idf = Math.log(1 + (documentCount - list.count() + 0.5) / (list.count() + 0.5));
+				PostingList.Cursor cursor = list.cursor();
+
+				while (cursor.next()) {
+					int length = documents.get(cursor.projectId).length;
+					double norm = K1 * (1 - B + B * length / averageLength);
+					double score = idf * cursor.frequency * (K1 + 1) / (cursor.frequency + norm);
+
+					scores.merge(cursor.projectId, score, Double::sum);
+				}
+			}
+
+			/* Keep the best results in a min-heap of the requested size. */
+			PriorityQueue<SearchHit> best = new PriorityQueue<>(limit + 1,
+					(a, b) -> Double.compare(a.getScore(), b.getScore()));
+
+			scores.forEach((projectId, score) -> {
+				if (best.size() < limit || score > best.peek().getScore()) {
+					best.add(new SearchHit(projectId, documents.get(projectId).name, score));
+
+					if (best.size() > limit) {
+						best.poll();
+					}
+				}
+			});
+
+			List<SearchHit> hits = new ArrayList<>(best);
+			hits.sort(Collections.reverseOrder((a, b) -> Double.compare(a.getScore(), b.getScore())));
+			return hits;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of indexed projects.
+	 */
+	public int size() {
+		lock.readLock().lock();
+
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of distinct words and the bytes used by their posting
+	 *         lists.
+	 */
+	@Override
+	public String toString() {
+		lock.readLock().lock();
+
+		try {
+			long bytes = postings.values().stream().mapToLong(PostingList::byteSize).sum();
+			return "projects=" + documents.size() + ", terms=" + postings.size() + ", postingBytes=" + bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Replace a project's document and update only the posting lists whose counts
+	 * changed. The caller holds the write lock.
+	 */
+	private void replace(Integer projectId, String name, Map<String, Integer> noteTerms,
+			Map<String, Integer> stepTerms) {
+		Document document = new Document(name, noteTerms, stepTerms);
+		Document old = documents.put(projectId, document);
+		Map<String, Integer> oldTerms = Objects.isNull(old) ? Map.of() : old.terms;
+
+		totalLength += document.length - (Objects.isNull(old) ? 0 : old.length);
+
+		for (String term : oldTerms.keySet()) {
+			if (!document.terms.containsKey(term)) {
+				PostingList list = postings.get(term);
+				list.remove(projectId);
+
+				if (list.count() == 0) {
+					postings.remove(term);
+				}
+			}
+		}
+
+		document.terms.forEach((term, frequency) -> {
+			if (!frequency.equals(oldTerms.get(term))) {
+				postings.computeIfAbsent(term, key -> new PostingList()).put(projectId, frequency);
+			}
+		});
+	}
+
+	/*
+	 * Split text into lower-case words of letters and digits, skipping stop words,
+	 * and add each word's count to the map.
+	 */
+	static Map<String, Integer> tokenize(String text, Map<String, Integer> counts) {
+		if (Objects.isNull(text)) {
+			return counts;
+		}
+
+		int start = -1;
+
+		for (int i = 0; i <= text.length(); i++) {
+			boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+			if (wordChar && start < 0) {
+				start = i;
+			} else if (!wordChar && start >= 0) {
+				String word = text.substring(start, i).toLowerCase();
+
+				if (!STOP_WORDS.contains(word)) {
+					counts.merge(word, 1, Integer::sum);
+				}
+
+				start = -1;
+			}
+		}
+
+		return counts;
+	}
+
+	/*
+	 * What the index knows about one project. The note and step terms are kept
+	 * apart so a notes update does not need the steps again.
+	 */
+	private static class Document {
+		private final String name;
+		private final Map<String, Integer> noteTerms;
+		private final Map<String, Integer> stepTerms;
+		private final Map<String, Integer> terms = new HashMap<>();
+		private final int length;
+
+		Document(String name, Map<String, Integer> noteTerms, Map<String, Integer> stepTerms) {
+			this.name = name;
+			this.noteTerms = noteTerms;
+			this.stepTerms = stepTerms;
+
+			terms.putAll(noteTerms);
+			stepTerms.forEach((term, frequency) -> terms.merge(term, frequency, Integer::sum));
+			length = terms.values().stream().mapToInt(Integer::intValue).sum();
+		}
+	}
+}
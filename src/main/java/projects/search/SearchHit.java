@@ -0,0 +1,43 @@
+package projects.search;
+
+/**
+ * This class is one result of a project search.
+ */
+public class SearchHit {
+	private final Integer projectId;
+	private final String projectName;
+	private final double score;
+
+	SearchHit(Integer projectId, String projectName, double score) {
+		this.projectId = projectId;
+		this.projectName = projectName;
+		this.score = score;
+	}
+
+	/**
+	 * @return The ID of the matching project.
+	 */
+	public Integer getProjectId() {
+		return projectId;
+	}
+
+	/**
+	 * @return The name of the matching project.
+	 */
+	public String getProjectName() {
+		return projectName;
+	}
+
+	/**
+	 * @return The relevance score. Higher is better. Scores are only comparable
+	 *         within one search.
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	@Override
+	public String toString() {
+		return "ID=" + projectId + ", name=" + projectName + ", score=" + String.format("%.3f", score);
+	}
+}
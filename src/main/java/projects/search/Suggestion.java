@@ -0,0 +1,53 @@
+package projects.search;
+
+import java.util.List;
+
+/**
+ * This class is one completion of a name prefix. Materials with the same name
+ * in several projects are one suggestion that lists all of those projects.
+ */
+public class Suggestion {
+	/**
+	 * What a suggested name belongs to.
+	 */
+	public enum Kind {
+		PROJECT, MATERIAL
+	}
+
+	private final Kind kind;
+	private final String name;
+	private final List<Integer> projectIds;
+
+	Suggestion(Kind kind, String name, List<Integer> projectIds) {
+		this.kind = kind;
+		this.name = name;
+		this.projectIds = List.copyOf(projectIds);
+	}
+
+	/**
+	 * @return Whether the name is a project name or a material name.
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return The full name, spelled as in the first of the projects.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The IDs of the projects with this name, or with a material of this
+	 *         name, in ascending order.
+	 */
+	public List<Integer> getProjectIds() {
+		return projectIds;
+	}
+
+	@Override
+	public String toString() {
+		return kind + ": " + name + " " + projectIds;
+	}
+}
@@ -0,0 +1,222 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import projects.dao.Deadline;
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+
+/**
+ * This class collects single-project lookups from many threads and loads them
+ * together. Requests that arrive within a short window, or until the batch is
+ * full, are fetched with one {@code IN (...)} query per table, so a burst of N
+ * lookups costs four queries instead of 4N. Each caller waits only for its own
+ * result, up to its own deadline.
+ */
+class ProjectBatchLoader implements AutoCloseable {
+	private final ProjectDao projectDao;
+	private final long windowNanos;
+	private final int maxBatch;
+	private final UnaryOperator<Project> copier;
+
+	private final ScheduledExecutorService timer;
+	private final ExecutorService workers;
+
+	private List<Request> pending = new ArrayList<>();
+	private boolean closed;
+
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+
+	/**
+	 * @param projectDao The DAO that runs the batched queries.
+	 * @param window     How long the first request of a batch waits for others.
+	 * @param maxBatch   The most project IDs per batch. A full batch is sent at
+	 *                   once.
+	 * @param copier     Copies a project for a second caller that asked for the
+	 *                   same ID in the same batch.
+	 */
+	ProjectBatchLoader(ProjectDao projectDao, Duration window, int maxBatch, UnaryOperator<Project> copier) {
+		this.projectDao = projectDao;
+		this.windowNanos = window.toNanos();
+		this.maxBatch = Math.max(1, maxBatch);
+		this.copier = copier;
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "project-batch-timer"));
+		this.workers = Executors.newCachedThreadPool(runnable -> daemon(runnable, "project-batch-loader"));
+	}
+
+	/**
+	 * Load one project as part of the next batch.
+	 *
+	 * @param projectId The project ID.
+	 * @param deadline  The caller's deadline.
+	 * @return The project, or empty if it does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 * @throws IllegalStateException     Thrown if the loader is closed.
+	 */
+	Optional<Project> load(Integer projectId, Deadline deadline) {
+		Request request = new Request(projectId, deadline);
+		List<Request> full = null;
+
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The batch loader is closed.");
+			}
+
+			pending.add(request);
+
+			if (pending.size() >= maxBatch) {
+				full = pending;
+				pending = new ArrayList<>();
+			} else if (pending.size() == 1) {
+				List<Request> batch = pending;
+				timer.schedule(() -> dispatch(batch), windowNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		if (Objects.nonNull(full)) {
+			send(full);
+		}
+
+		return await(request);
+	}
+
+	/**
+	 * @return The number of batches sent to the database.
+	 */
+	long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * @return The number of lookups served by those batches.
+	 */
+	long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Stop the loader. Lookups already queued are still sent; later ones are
+	 * refused.
+	 */
+	@Override
+	public void close() {
+		List<Request> batch;
+
+		synchronized (this) {
+			closed = true;
+			batch = pending;
+			pending = new ArrayList<>();
+		}
+
+		if (!batch.isEmpty()) {
+			run(batch);
+		}
+
+		timer.shutdown();
+		workers.shutdown();
+	}
+
+	/* Send the batch the timer was started for, unless it was already sent because it filled up. */
+	private void dispatch(List<Request> batch) {
+		synchronized (this) {
+			if (pending != batch) {
+				return;
+			}
+
+			pending = new ArrayList<>();
+		}
+
+		send(batch);
+	}
+
+	/*
+	 * Hand a batch to a worker. A batch taken just before the loader closed can
+	 * reach the workers after they stopped; it is then run on this thread, so
+	 * its callers are not left waiting.
+	 */
+	private void send(List<Request> batch) {
+		try {
+			workers.execute(() -> run(batch));
+		} catch (RejectedExecutionException e) {
+			run(batch);
+		}
+	}
+
+	private void run(List<Request> batch) {
+		Map<Integer, List<Request>> requestsById = new HashMap<>();
+		batch.forEach(request -> requestsById.computeIfAbsent(request.projectId, key -> new ArrayList<>()).add(request));
+
+		batches.increment();
+		requests.add(batch.size());
+
+		try {
+			Map<Integer, Project> projects = projectDao.fetchProjectsByIds(requestsById.keySet(),
+					Deadline.latest(batch.stream().map(request -> request.deadline).toList()));
+
+			requestsById.forEach((projectId, waiting) -> {
+				Project project = projects.get(projectId);
+
+				for (int i = 0; i < waiting.size(); i++) {
+					Project result = Objects.isNull(project) || i == 0 ? project : copier.apply(project);
+					waiting.get(i).future.complete(Optional.ofNullable(result));
+				}
+			});
+		} catch (RuntimeException e) {
+			batch.forEach(request -> request.future.completeExceptionally(e));
+		}
+	}
+
+	private static Optional<Project> await(Request request) {
+		Deadline deadline = request.deadline;
+
+		try {
+			return deadline.isBounded()
+					? request.future.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS)
+					: request.future.get();
+		} catch (TimeoutException e) {
+			throw new DeadlineExceededException("Deadline exceeded waiting for a batched fetch.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a batched fetch.", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new DbException(e.getCause());
+		}
+	}
+
+	private static Thread daemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private static class Request {
+		private final Integer projectId;
+		private final Deadline deadline;
+		private final CompletableFuture<Optional<Project>> future = new CompletableFuture<>();
+
+		Request(Integer projectId, Deadline deadline) {
+			this.projectId = projectId;
+			this.deadline = deadline;
+		}
+	}
+}
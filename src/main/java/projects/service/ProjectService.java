@@ -1,17 +1,430 @@
 package projects.service;
 
-import recipes.exception.DbException;
-
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
+import projects.dao.ChangeFeed;
+import projects.dao.DbConnection;
+import projects.dao.Deadline;
+import projects.dao.FetchPlan;
 import projects.dao.ProjectDao;
+import projects.dao.ProjectPurger;
+import projects.dao.ProjectSnapshot;
+import projects.dao.RetryPolicy;
+import projects.dao.UpsertResult;
+import projects.entity.Category;
+import projects.entity.Material;
 import projects.entity.Project;
+import projects.entity.ProjectChange;
+import projects.entity.Step;
+import projects.entity.WorkLogEntry;
+import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+import projects.exception.OptimisticLockException;
+import projects.search.PrefixIndex;
+import projects.search.ProjectSearchIndex;
+import projects.search.SearchHit;
+import projects.search.Suggestion;
 
 public class ProjectService {
+	// The most work-log entries written in one transaction.
+	private static final int WORK_LOG_MAX_GROUP = 500;
+
 	// Initialize the project DAO to perform database operations.
 	private ProjectDao projectDao = new ProjectDao();
 
+	// When set, project reads are served from this memory-mapped snapshot instead
+	// of the database. Writes always go to the database.
+	private ProjectSnapshot snapshot;
+
+	// When set, detail updates are buffered and written in the background.
+	private volatile WriteBehindBuffer writeBehind;
+
+	// Reads the change records that every write adds to the outbox.
+	private ChangeFeed changeFeed = projectDao.createChangeFeed();
+
+	// Lets concurrent fetches of the same project share one database load.
+	private final SingleFlight<Integer, Optional<Project>> projectLoads = new SingleFlight<>();
+
+	// When set, concurrent lookups of different projects are fetched together.
+	private volatile ProjectBatchLoader batchLoader;
+
+	// When set, removes the rows of soft-deleted projects in the background.
+	private ProjectPurger purger;
+
+	// When set, answers searchProjects and is updated by every write.
+	private volatile ProjectSearchIndex searchIndex;
+
+	// When set, answers suggest and is updated by every write.
+	private volatile PrefixIndex nameIndex;
+
+	// Writes work-log entries with group commit. Started on first use.
+	private WorkLogWriter workLogWriter;
+
+	/**
+	 * Create the service. If the system property {@code projects.snapshot} names
+	 * an existing snapshot file, reads are served from that snapshot.
+	 */
+	public ProjectService() {
+		String snapshotFile = System.getProperty("projects.snapshot");
+
+		if (Objects.nonNull(snapshotFile) && Files.isReadable(Path.of(snapshotFile))) {
+			useSnapshot(Path.of(snapshotFile));
+		}
+
+		if (Boolean.getBoolean("projects.searchIndex")) {
+			enableSearchIndex();
+		}
+	}
+
+	/**
+	 * Apply the schema migrations that the database does not have yet. The
+	 * applications call this once at startup, before serving anything, and stop
+	 * if it fails.
+	 *
+	 * @return The number of migrations applied.
+	 * @throws DbException Thrown if a migration fails.
+	 */
+	public int migrateSchema() {
+		return projectDao.migrateSchema();
+	}
+
+	/**
+	 * Serve project reads from a snapshot file. The snapshot is not updated by
+	 * writes made through this service, so it is intended for read-only tooling
+	 * and for fast startup before the database is reachable.
+	 * 
+	 * @param path The snapshot file, or {@code null} to read from the database
+	 *             again.
+	 */
+	public void useSnapshot(Path path) {
+		snapshot = Objects.isNull(path) ? null : ProjectSnapshot.open(path);
+	}
+
+	/**
+	 * Buffer project detail updates and write them in batches. Updates to the same
+	 * project within the window are merged into one. Reads through this service
+	 * see buffered updates immediately. Row versions are checked when an update is
+	 * buffered and again when it is written, and the caller's project is given
+	 * the version it will have. Updates that cannot be written are reported and
+	 * dropped; see {@link WriteBehindBuffer}.
+	 * 
+	 * @param window     How long an update may wait before it is written.
+	 * @param maxPending The most projects that may be buffered at once.
+	 */
+	public synchronized void enableWriteBehind(Duration window, int maxPending) {
+		disableWriteBehind();
+		writeBehind = new WriteBehindBuffer(projectDao, window, maxPending);
+	}
+
+	/**
+	 * Write any buffered updates and return to writing each update immediately.
+	 */
+	public synchronized void disableWriteBehind() {
+		if (Objects.nonNull(writeBehind)) {
+			writeBehind.close();
+			writeBehind = null;
+		}
+	}
+
+	/**
+	 * Collect project lookups from concurrent callers and fetch them together,
+	 * with one query per table for the whole batch instead of four queries per
+	 * project.
+	 * 
+	 * @param window   How long the first lookup of a batch waits for others.
+	 * @param maxBatch The most projects per batch. A full batch is fetched at
+	 *                 once.
+	 */
+	public synchronized void enableFetchBatching(Duration window, int maxBatch) {
+		disableFetchBatching();
+		batchLoader = new ProjectBatchLoader(projectDao, window, maxBatch, ProjectService::copyProject);
+	}
+
+	/**
+	 * Go back to fetching each project on its own.
+	 */
+	public synchronized void disableFetchBatching() {
+		ProjectBatchLoader loader = batchLoader;
+		batchLoader = null;
+
+		if (Objects.nonNull(loader)) {
+			loader.close();
+		}
+	}
+
+	/**
+	 * Store long notes and step text compressed from now on, and compress the
+	 * text already stored. Fetched projects decompress the text only when it is
+	 * read.
+	 * 
+	 * @param threshold The smallest text size, in bytes, to compress.
+	 * @param batchSize The most existing rows compressed per transaction.
+	 * @param pause     How long to wait between those transactions.
+	 * @return The number of existing rows compressed.
+	 * @throws DbException Thrown if the threshold is not positive or the
+	 *                     migration fails. Rows written after the failure are
+	 *                     still compressed.
+	 */
+	public long enableTextCompression(int threshold, int batchSize, Duration pause) {
+		projectDao.setTextCompressionThreshold(threshold);
+		return projectDao.createTextCompressionMigration(batchSize).run(pause);
+	}
+
+	/**
+	 * Write notes and step text uncompressed from now on. Text that is already
+	 * compressed is still read correctly and is written uncompressed the next
+	 * time it changes.
+	 */
+	public void disableTextCompression() {
+		projectDao.setTextCompressionThreshold(0);
+	}
+
+	/**
+	 * Soft-delete projects and purge their rows in the background. Deleting a
+	 * project then only flags it, so the delete is fast no matter how many
+	 * materials and steps it has. The purger removes child rows in chunks, pausing
+	 * between chunks so other writers are not held up.
+	 * 
+	 * @param chunkSize The most child rows deleted per transaction.
+	 * @param pause     How long the purger waits between chunks.
+	 * @param interval  How long the purger waits between runs.
+	 */
+	public synchronized void enableSoftDelete(int chunkSize, Duration pause, Duration interval) {
+		disableSoftDelete();
+		projectDao.setSoftDelete(true);
+		purger = projectDao.createPurger(chunkSize, pause);
+		purger.start(interval);
+	}
+
+	/**
+	 * Go back to deleting projects immediately and stop the purger. Projects that
+	 * are already flagged stay hidden until a purger runs again.
+	 */
+	public synchronized void disableSoftDelete() {
+		projectDao.setSoftDelete(false);
+
+		if (Objects.nonNull(purger)) {
+			purger.close();
+			purger = null;
+		}
+	}
+
+	/**
+	 * @return The running purger, whose counters show its progress, or
+	 *         {@code null} if soft delete is off.
+	 */
+	public synchronized ProjectPurger getPurger() {
+		return purger;
+	}
+
+	/**
+	 * Build the full-text index from the database. From then on, writes made
+	 * through this service keep it up to date. The index is also built on the
+	 * first search, or at startup if the system property
+	 * {@code projects.searchIndex} is {@code true}.
+	 */
+	public synchronized void enableSearchIndex() {
+		searchIndex = ProjectSearchIndex.build(projectDao.fetchAllProjectGraphs());
+	}
+
+	/**
+	 * Find projects whose notes or step text contain the words of a query,
+	 * without querying the database.
+	 * 
+	 * @param query The words to look for.
+	 * @param limit The most results to return.
+	 * @return The matches, best first.
+	 */
+	public List<SearchHit> searchProjects(String query, int limit) {
+		ProjectSearchIndex index = searchIndex;
+
+		if (Objects.isNull(index)) {
+			synchronized (this) {
+				if (Objects.isNull(searchIndex)) {
+					enableSearchIndex();
+				}
+
+				index = searchIndex;
+			}
+		}
+
+		return index.search(query, limit);
+	}
+
+	/**
+	 * Build the project and material name index from the database. From then on,
+	 * writes made through this service keep it up to date. The index is also
+	 * built on the first call to {@link #suggest(String, int)}.
+	 */
+	public synchronized void enableNameSuggestions() {
+		nameIndex = PrefixIndex.build(projectDao.fetchProjectAndMaterialNames());
+	}
+
+	/**
+	 * Complete the start of a project or material name from memory, without
+	 * querying the database.
+	 * 
+	 * @param prefix The start of a name, in any case.
+	 * @param limit  The most suggestions to return.
+	 * @return The matching names in alphabetical order, each with the projects it
+	 *         belongs to.
+	 */
+	public List<Suggestion> suggest(String prefix, int limit) {
+		PrefixIndex index = nameIndex;
+
+		if (Objects.isNull(index)) {
+			synchronized (this) {
+				if (Objects.isNull(nameIndex)) {
+					enableNameSuggestions();
+				}
+
+				index = nameIndex;
+			}
+		}
+
+		return index.suggest(prefix, limit);
+	}
+
+	/**
+	 * Read the changes made to projects after a sequence number. Consumers keep
+	 * the sequence number of the last change they processed and poll again from
+	 * there. With shards, this reads the first shard's feed; use
+	 * {@link #getChangeFeed()} to read the others.
+	 * 
+	 * @param afterSequence The last sequence number already processed, or 0 to
+	 *                      start from the oldest change kept.
+	 * @param limit         The most changes to return.
+	 * @return The changes in sequence order, or an empty list if there are none
+	 *         yet.
+	 */
+	public List<ProjectChange> fetchChanges(long afterSequence, int limit) {
+		return changeFeed.fetchChanges(afterSequence, limit);
+	}
+
+	/**
+	 * @return The change feed, for reading each shard and for pruning.
+	 */
+	public ChangeFeed getChangeFeed() {
+		return changeFeed;
+	}
+
+	/**
+	 * Delete change records older than the retention period in the background.
+	 * 
+	 * @param retention How long change records are kept.
+	 * @param interval  The delay between pruning runs.
+	 */
+	public void startChangeFeedPruning(Duration retention, Duration interval) {
+		changeFeed.startPruning(retention, interval);
+	}
+
+	/**
+	 * Write the full project graph from the database to a snapshot file.
+	 * 
+	 * @param path The snapshot file to create or replace.
+	 * @return The number of projects written.
+	 */
+	public int writeSnapshot(Path path) {
+		return projectDao.writeSnapshot(path);
+	}
+
+	/**
+	 * @return How many project fetches reached the database, how many shared
+	 *         another caller's fetch and, with batching, how many batches served
+	 *         how many lookups.
+	 */
+	public String getFetchCoalescingStats() {
+		ProjectBatchLoader loader = batchLoader;
+		String stats = "loads=" + projectLoads.getLoads() + ", shared=" + projectLoads.getShared();
+
+		if (Objects.nonNull(loader)) {
+			stats += ", batches=" + loader.getBatches() + ", batchedLookups=" + loader.getRequests();
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Record time spent on a project. Entries from concurrent callers are written
+	 * together in one transaction, and each transaction adds the new hours to the
+	 * projects' actual hours, so logging time never reads and rewrites a project
+	 * from the caller's side.
+	 * 
+	 * @param projectId The project ID.
+	 * @param hours     The hours worked, or a negative number to correct an
+	 *                  earlier entry.
+	 * @return The entry, once it is committed.
+	 * @throws IllegalArgumentException Thrown if the project ID or the hours are
+	 *                                  missing, or the hours are out of range.
+	 * @throws NoSuchElementException   Thrown if the project does not exist.
+	 * @throws DbException              Thrown if the entry cannot be written.
+	 */
+	public WorkLogEntry logWork(Integer projectId, BigDecimal hours) {
+		return logWork(projectId, hours, Deadline.NONE);
+	}
+
+	/**
+	 * Record time spent on a project within a deadline.
+	 * 
+	 * @param projectId The project ID.
+	 * @param hours     The hours worked.
+	 * @param deadline  The caller's deadline.
+	 * @return The entry, once it is committed.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public WorkLogEntry logWork(Integer projectId, BigDecimal hours, Deadline deadline) {
+		WorkLogEntry entry = new WorkLogEntry();
+		entry.setProjectId(projectId);
+		entry.setHours(hours);
+
+		return workLogWriter().append(entry, deadline);
+	}
+
+	/**
+	 * Read the latest work-log entries of a project.
+	 * 
+	 * @param projectId The project ID.
+	 * @param limit     The most entries to return.
+	 * @return The entries, newest first.
+	 */
+	public List<WorkLogEntry> fetchWorkLog(Integer projectId, int limit) {
+		return projectDao.fetchWorkLog(projectId, limit);
+	}
+
+	/**
+	 * @return How many transactions the work log was written with and how many
+	 *         entries they held.
+	 */
+	public synchronized String getWorkLogStats() {
+		return Objects.isNull(workLogWriter) ? "commits=0, entries=0"
+				: "commits=" + workLogWriter.getCommits() + ", entries=" + workLogWriter.getEntries();
+	}
+
+	private synchronized WorkLogWriter workLogWriter() {
+		if (Objects.isNull(workLogWriter)) {
+			workLogWriter = new WorkLogWriter(projectDao, WORK_LOG_MAX_GROUP);
+		}
+
+		return workLogWriter;
+	}
+
+	/**
+	 * @return The DAO's retry policy, whose counters show how much contention
+	 *         the database is under.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return projectDao.getRetryPolicy();
+	}
+
 	/*
 	 * This method calls the project DAO to get all project details, including
 	 * materials, steps, and categories. If the project ID is invalid, it throws an
@@ -26,7 +439,79 @@ public class ProjectService {
 	 */
 
 	public Project fetchProjectById(Integer projectId) {
-		return projectDao.fetchProjectById(projectId).orElseThrow(
+		return fetchProjectById(projectId, Deadline.NONE);
+	}
+
+	/**
+	 * Fetch a project with its details within a deadline.
+	 * 
+	 * @param projectId The project ID.
+	 * @param deadline  The caller's deadline.
+	 * @return The project.
+	 * @throws NoSuchElementException    Thrown if the project does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Project fetchProjectById(Integer projectId, Deadline deadline) {
+		/* The load map cannot hold a null key, and no project has a null ID. */
+		if (Objects.isNull(projectId)) {
+			throw new NoSuchElementException("Project with project ID=null does not exist.");
+		}
+
+		Optional<Project> project = Objects.isNull(snapshot)
+				? projectLoads.execute(projectId, deadline, () -> loadProject(projectId, deadline),
+						loaded -> loaded.map(ProjectService::copyProject))
+				: snapshot.fetchProjectById(projectId);
+		WriteBehindBuffer buffer = writeBehind;
+
+		if (Objects.nonNull(buffer)) {
+			project = project.map(buffer::overlay);
+		}
+
+		return project.orElseThrow(
+				() -> new NoSuchElementException("Project with project ID=" + projectId + " does not exist."));
+	}
+
+	/**
+	 * Fetch a project with only the details the plan names, for example
+	 * {@code fetchProjectById(id, FetchPlan.of(Association.STEPS))}.
+	 * 
+	 * @param projectId The project ID.
+	 * @param plan      The details to fetch, and whether the others load on first
+	 *                  use.
+	 * @return The project.
+	 * @throws NoSuchElementException Thrown if the project does not exist.
+	 */
+	public Project fetchProjectById(Integer projectId, FetchPlan plan) {
+		return fetchProjectById(projectId, plan, Deadline.NONE);
+	}
+
+	/**
+	 * Fetch a project with only the details the plan names, within a deadline.
+	 * Only fetches of every detail share loads with other threads, because a
+	 * shared load must suit every caller. A snapshot holds whole projects, so
+	 * with a snapshot every detail is present whatever the plan.
+	 * 
+	 * @param projectId The project ID.
+	 * @param plan      The details to fetch, and whether the others load on first
+	 *                  use.
+	 * @param deadline  The caller's deadline.
+	 * @return The project.
+	 * @throws NoSuchElementException    Thrown if the project does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Project fetchProjectById(Integer projectId, FetchPlan plan, Deadline deadline) {
+		if (plan.equals(FetchPlan.ALL) || Objects.nonNull(snapshot)) {
+			return fetchProjectById(projectId, deadline);
+		}
+
+		Optional<Project> project = projectDao.fetchProjectById(projectId, plan, deadline);
+		WriteBehindBuffer buffer = writeBehind;
+
+		if (Objects.nonNull(buffer)) {
+			project = project.map(buffer::overlay);
+		}
+
+		return project.orElseThrow(
 				() -> new NoSuchElementException("Project with project ID=" + projectId + " does not exist."));
 	}
 
@@ -37,7 +522,119 @@ public class ProjectService {
 	 * @return The project object with the newly generated primary key value.
 	 */
 	public Project addProject(Project project) {
-		return projectDao.insertProject(project);
+		return addProject(project, Deadline.NONE);
+	}
+
+	/**
+	 * Insert a project row within a deadline.
+	 * 
+	 * @param project  The {@link Project} object.
+	 * @param deadline The caller's deadline.
+	 * @return The project object with the newly generated primary key value.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Project addProject(Project project, Deadline deadline) {
+		Project dbProject = projectDao.insertProject(project, deadline);
+		ProjectSearchIndex index = searchIndex;
+		PrefixIndex names = nameIndex;
+
+		if (Objects.nonNull(index)) {
+			index.index(dbProject);
+		}
+
+		if (Objects.nonNull(names)) {
+			names.put(dbProject);
+		}
+
+		return dbProject;
+	}
+
+	/**
+	 * Create a project from a template. The template's materials, steps and
+	 * categories are copied in the database without reading them first.
+	 * 
+	 * @param templateId The ID of the project to copy.
+	 * @param overrides  A project whose changed details replace the template's,
+	 *                   or {@code null} to keep the template's details.
+	 * @return The new project with its details.
+	 * @throws NoSuchElementException Thrown if the template does not exist.
+	 */
+	public Project cloneProject(Integer templateId, Project overrides) {
+		return cloneProject(templateId, overrides, Deadline.NONE);
+	}
+
+	/**
+	 * Create a project from a template within a deadline.
+	 * 
+	 * @param templateId The ID of the project to copy.
+	 * @param overrides  A project whose changed details replace the template's,
+	 *                   or {@code null} to keep the template's details.
+	 * @param deadline   The caller's deadline, which also covers reading back
+	 *                   the new project.
+	 * @return The new project with its details.
+	 * @throws NoSuchElementException    Thrown if the template does not exist.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public Project cloneProject(Integer templateId, Project overrides, Deadline deadline) {
+		Integer projectId = projectDao.cloneProject(templateId, overrides, deadline).orElseThrow(
+				() -> new NoSuchElementException("Project with project ID=" + templateId + " does not exist."));
+
+		Project project = projectDao.fetchProjectById(projectId, deadline).orElseThrow(
+				() -> new NoSuchElementException("Project with project ID=" + projectId + " does not exist."));
+		ProjectSearchIndex index = searchIndex;
+		PrefixIndex names = nameIndex;
+
+		if (Objects.nonNull(index)) {
+			index.index(project);
+		}
+
+		if (Objects.nonNull(names)) {
+			names.put(project);
+		}
+
+		return project;
+	}
+
+	/**
+	 * Insert a project or update the one with the same external key, together
+	 * with its materials and steps, in one round trip per table.
+	 * 
+	 * @param project The project and its children, each with an external key.
+	 * @return What happened to each row.
+	 */
+	public UpsertResult upsertProject(Project project) {
+		return upsertProjects(List.of(project)).get(0);
+	}
+
+	/**
+	 * Upsert many projects from an external catalogue in one transaction.
+	 * 
+	 * @param projects The projects and their children, each with an external key.
+	 * @return What happened to each project, in the order given.
+	 */
+	public List<UpsertResult> upsertProjects(List<Project> projects) {
+		List<UpsertResult> results = projectDao.upsertProjects(projects);
+		ProjectSearchIndex index = searchIndex;
+		PrefixIndex names = nameIndex;
+
+		if (Objects.nonNull(index) || Objects.nonNull(names)) {
+			/* Children that were not sent are kept, so reindex from the stored graph. */
+			for (UpsertResult result : results) {
+				if (result.isChanged()) {
+					projectDao.fetchProjectById(result.getProjectId()).ifPresent(stored -> {
+						if (Objects.nonNull(index)) {
+							index.index(stored);
+						}
+
+						if (Objects.nonNull(names)) {
+							names.put(stored);
+						}
+					});
+				}
+			}
+		}
+
+		return results;
 	}
 
 	/**
@@ -47,26 +644,216 @@ public class ProjectService {
 	 * @return A list of project records.
 	 */
 	public List<Project> fetchAllProjects() {
-		return projectDao.fetchAllProjects();
+		return fetchAllProjects(Deadline.NONE);
 	}
 
-	// This method modifies the details of a project in the database. If the project
-	// does not exist, it throws a DbException.
+	/**
+	 * Retrieve all project rows without details within a deadline.
+	 * 
+	 * @param deadline The caller's deadline.
+	 * @return A list of project records.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public List<Project> fetchAllProjects(Deadline deadline) {
+		List<Project> projects = Objects.isNull(snapshot) ? projectDao.fetchAllProjects(deadline)
+				: snapshot.fetchAllProjects();
+		WriteBehindBuffer buffer = writeBehind;
+
+		if (Objects.nonNull(buffer)) {
+			projects.forEach(buffer::overlay);
+		}
+
+		return projects;
+	}
+
+	// This method modifies the details of a project in the database. If the
+	// project does not exist, it throws a NoSuchElementException. If the project
+	// was changed by someone else since it was read, the DAO throws an
+	// OptimisticLockException.
 	public void modifyProjectDetails(Project project) {
-		if (!projectDao.modifyProjectDetails(project)) {
-			throw new DbException("Project with ID=" + project.getProjectId() + " does not exist.");
+		modifyProjectDetails(project, Deadline.NONE);
+	}
+
+	// This method modifies the details of a project within a deadline. A
+	// DeadlineExceededException is thrown if the deadline passes first.
+	public void modifyProjectDetails(Project project, Deadline deadline) {
+		WriteBehindBuffer buffer = writeBehind;
+		ProjectSearchIndex index = searchIndex;
+		PrefixIndex names = nameIndex;
+
+		/* The DAO clears the changed columns, so the indexes need their own copy. */
+		Project changes = Objects.isNull(index) ? null : searchableChanges(project);
+		String newName = project.getDirtyColumns().contains("project_name") ? project.getProjectName() : null;
+
+		if (Objects.nonNull(buffer)) {
+			buffer.submit(project);
+		} else if (!projectDao.modifyProjectDetails(project, deadline)) {
+			throw new NoSuchElementException("Project with ID=" + project.getProjectId() + " does not exist.");
+		}
+
+		if (Objects.nonNull(changes)) {
+			index.update(changes);
+		}
+
+		if (Objects.nonNull(names) && Objects.nonNull(newName)) {
+			names.rename(project.getProjectId(), newName);
+		}
+	}
+
+	// Load a project, batched with other threads' lookups when batching is on. A
+	// thread that wrote recently loads on its own so the read goes to the
+	// primary.
+	private Optional<Project> loadProject(Integer projectId, Deadline deadline) {
+		ProjectBatchLoader loader = batchLoader;
+
+		if (Objects.nonNull(loader) && !DbConnection.wroteRecently()) {
+			try {
+				return loader.load(projectId, deadline);
+			} catch (IllegalStateException e) {
+				/* Batching was turned off after we read the loader. */
+			}
 		}
+
+		return projectDao.fetchProjectById(projectId, deadline);
+	}
+
+	// Copy a project and its details, so callers sharing a load can each change
+	// their own.
+	private static Project copyProject(Project project) {
+		Project copy = new Project();
+
+		copy.setProjectId(project.getProjectId());
+		copy.setProjectName(project.getProjectName());
+		copy.setEstimatedHours(project.getEstimatedHours());
+		copy.setActualHours(project.getActualHours());
+		copy.setDifficulty(project.getDifficulty());
+		copy.copyNotesFrom(project);
+		copy.setVersion(project.getVersion());
+		copy.setExternalKey(project.getExternalKey());
+		copy.clearDirtyColumns();
+
+		for (Material material : project.getMaterials()) {
+			Material materialCopy = new Material();
+			materialCopy.setMaterialId(material.getMaterialId());
+			materialCopy.setProjectId(material.getProjectId());
+			materialCopy.setMaterialName(material.getMaterialName());
+			materialCopy.setNumRequired(material.getNumRequired());
+			materialCopy.setCost(material.getCost());
+			materialCopy.setExternalKey(material.getExternalKey());
+			copy.getMaterials().add(materialCopy);
+		}
+
+		for (Step step : project.getSteps()) {
+			Step stepCopy = new Step();
+			stepCopy.setStepId(step.getStepId());
+			stepCopy.setProjectId(step.getProjectId());
+			stepCopy.copyStepTextFrom(step);
+			stepCopy.setStepOrder(step.getStepOrder());
+			stepCopy.setExternalKey(step.getExternalKey());
+			copy.getSteps().add(stepCopy);
+		}
+
+		for (Category category : project.getCategories()) {
+			Category categoryCopy = new Category();
+			categoryCopy.setCategoryId(category.getCategoryId());
+			categoryCopy.setCategoryName(category.getCategoryName());
+			copy.getCategories().add(categoryCopy);
+		}
+
+		return copy;
+	}
+
+	// Copy the changed name and notes of a project, the only details the search
+	// index holds.
+	private static Project searchableChanges(Project project) {
+		Project changes = new Project();
+		changes.setProjectId(project.getProjectId());
+
+		if (project.getDirtyColumns().contains("project_name")) {
+			changes.setProjectName(project.getProjectName());
+			changes.markColumnDirty("project_name");
+		}
+
+		if (project.getDirtyColumns().contains("notes")) {
+			changes.setNotes(project.getNotes());
+			changes.markColumnDirty("notes");
+		}
+
+		return changes;
+	}
+
+	/**
+	 * Replace a project's categories. Only the links that differ from the current
+	 * ones are written.
+	 * 
+	 * @param projectId   The project ID.
+	 * @param categoryIds The IDs of the categories the project should have.
+	 * @return The number of links added or removed.
+	 */
+	public int setProjectCategories(Integer projectId, Set<Integer> categoryIds) {
+		return projectDao.setProjectCategories(projectId, categoryIds);
+	}
+
+	/**
+	 * Replace the categories of many projects at once.
+	 * 
+	 * @param categoryIdsByProject The category IDs each project should have,
+	 *                             keyed by project ID.
+	 * @return The number of links added or removed.
+	 */
+	public int setProjectCategories(Map<Integer, Set<Integer>> categoryIdsByProject) {
+		return projectDao.setProjectCategories(categoryIdsByProject);
 	}
 
 	/**
 	 * This method deletes a project from the database by its ID. If the project
-	 * does not exist, it throws a DbException.
+	 * does not exist, it throws a NoSuchElementException.
 	 * 
 	 * @param projectId
 	 */
 	public void deleteProject(Integer projectId) {
-		if (!projectDao.deleteProject(projectId)) {
-			throw new DbException("Project with ID=" + projectId + " does not exist.");
+		deleteProject(projectId, null);
+	}
+
+	/**
+	 * This method deletes a project only if it still has the version that the
+	 * caller read. If the project does not exist, it throws a
+	 * NoSuchElementException.
+	 * 
+	 * @param projectId The project ID.
+	 * @param version   The version that was read, or {@code null} to delete
+	 *                  regardless of version.
+	 * @throws OptimisticLockException Thrown if the project was changed by
+	 *                                 someone else.
+	 */
+	public void deleteProject(Integer projectId, Integer version) {
+		deleteProject(projectId, version, Deadline.NONE);
+	}
+
+	/**
+	 * This method deletes a project within a deadline. If the project does not
+	 * exist, it throws a NoSuchElementException.
+	 * 
+	 * @param projectId The project ID.
+	 * @param version   The version that was read, or {@code null} to delete
+	 *                  regardless of version.
+	 * @param deadline  The caller's deadline.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first.
+	 */
+	public void deleteProject(Integer projectId, Integer version, Deadline deadline) {
+		if (!projectDao.deleteProject(projectId, version, deadline)) {
+			throw new NoSuchElementException("Project with ID=" + projectId + " does not exist.");
+		}
+
+		ProjectSearchIndex index = searchIndex;
+		PrefixIndex names = nameIndex;
+
+		if (Objects.nonNull(index)) {
+			index.remove(projectId);
+		}
+
+		if (Objects.nonNull(names)) {
+			names.remove(projectId);
 		}
 	}
 }
@@ -0,0 +1,122 @@
+package projects.service;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import projects.dao.DbConnection;
+import projects.dao.Deadline;
+import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+
+/**
+ * This class merges concurrent loads of the same key. The first caller for a
+ * key runs the load; callers that arrive while it is running wait for it and
+ * receive a copy of its result instead of running the same queries again. Once
+ * the load finishes, the next caller starts a fresh one, so results are never
+ * older than the load they joined.
+ *
+ * A caller that wrote after a load started does not join it, because that load
+ * may have read the row before the write.
+ *
+ * @param <K> The key type.
+ * @param <V> The result type.
+ */
+class SingleFlight<K, V> {
+	private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder shared = new LongAdder();
+
+	/**
+	 * Load a value, sharing any load of the same key that is already running.
+	 *
+	 * @param key      The key. It must not be {@code null}.
+	 * @param deadline The caller's deadline. A caller waiting on another caller's
+	 *                 load gives up when its own deadline passes.
+	 * @param loader   Loads the value.
+	 * @param copier   Copies a shared result for each waiting caller, so callers
+	 *                 can change what they receive.
+	 * @return The value.
+	 */
+	V execute(K key, Deadline deadline, Supplier<V> loader, UnaryOperator<V> copier) {
+		while (true) {
+			Flight<V> mine = new Flight<>();
+			Flight<V> running = flights.putIfAbsent(key, mine);
+
+			if (Objects.isNull(running)) {
+				return lead(key, mine, loader);
+			}
+
+			if (DbConnection.wroteSince(running.startNanos)) {
+				loads.increment();
+				return loader.get();
+			}
+
+			try {
+				V value = await(running, deadline);
+				shared.increment();
+				return copier.apply(value);
+			} catch (DeadlineExceededException e) {
+				/* The leader's deadline may be shorter than ours. Try again if ours allows. */
+				if (deadline.isExpired()) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of loads that reached the database.
+	 */
+	long getLoads() {
+		return loads.sum();
+	}
+
+	/**
+	 * @return The number of callers that received another caller's result.
+	 */
+	long getShared() {
+		return shared.sum();
+	}
+
+	private V lead(K key, Flight<V> flight, Supplier<V> loader) {
+		loads.increment();
+
+		try {
+			V value = loader.get();
+			flight.future.complete(value);
+			return value;
+		} catch (RuntimeException e) {
+			flight.future.completeExceptionally(e);
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+		}
+	}
+
+	private V await(Flight<V> flight, Deadline deadline) {
+		try {
+			return deadline.isBounded() ? flight.future.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS)
+					: flight.future.get();
+		} catch (TimeoutException e) {
+			throw new DeadlineExceededException("Deadline exceeded waiting for a shared load.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a shared load.", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new DbException(e.getCause());
+		}
+	}
+
+	private static class Flight<V> {
+		private final CompletableFuture<V> future = new CompletableFuture<>();
+		private final long startNanos = System.nanoTime();
+	}
+}
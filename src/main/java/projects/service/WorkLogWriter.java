@@ -0,0 +1,264 @@
+package projects.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.dao.DbConnection;
+import projects.dao.Deadline;
+import projects.dao.ProjectDao;
+import projects.dao.Session;
+import projects.entity.WorkLogEntry;
+import projects.exception.DbException;
+import projects.exception.DeadlineExceededException;
+
+/**
+ * This class writes work-log entries from many threads with group commit. One
+ * writer thread takes every entry that is waiting and writes them all in one
+ * transaction; entries that arrive while it is writing wait for the next one.
+ * Under light load each entry is written at once, and under heavy load the
+ * groups grow, so the number of commits stays close to what the database can
+ * sustain instead of one per entry. Callers wait until their own entry is
+ * committed.
+ *
+ * Entries are checked before they join a group. If a group still fails, its
+ * entries are written one at a time, so an entry the database rejects fails
+ * only its own caller.
+ */
+class WorkLogWriter implements AutoCloseable {
+	/* The largest magnitude work_log.hours, a DECIMAL(7,2), can hold. */
+	private static final BigDecimal MAX_HOURS = new BigDecimal("99999.99");
+
+	private final ProjectDao projectDao;
+	private final int maxGroup;
+	private final Thread writer;
+
+	private List<Request> pending = new ArrayList<>();
+	private boolean closed;
+
+	private final LongAdder commits = new LongAdder();
+	private final LongAdder entries = new LongAdder();
+
+	/**
+	 * Create a writer and start its thread.
+	 *
+	 * @param projectDao The DAO that writes the entries.
+	 * @param maxGroup   The most entries written in one transaction.
+	 */
+	WorkLogWriter(ProjectDao projectDao, int maxGroup) {
+		this.projectDao = projectDao;
+		this.maxGroup = Math.max(1, maxGroup);
+		this.writer = new Thread(this::run, "work-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Write an entry as part of the next group.
+	 *
+	 * @param entry    The entry.
+	 * @param deadline The caller's deadline.
+	 * @return The entry with its ID, once it is committed.
+	 * @throws DeadlineExceededException Thrown if the deadline passes first. An
+	 *                                   entry whose group had already started is
+	 *                                   still written.
+	 * @throws IllegalArgumentException  Thrown if the entry is invalid.
+	 * @throws NoSuchElementException    Thrown if the project does not exist.
+	 * @throws DbException               Thrown if the entry cannot be written.
+	 */
+	WorkLogEntry append(WorkLogEntry entry, Deadline deadline) {
+		checkEntry(entry);
+
+		Request request = new Request(entry, deadline);
+
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The work log writer is closed.");
+			}
+
+			pending.add(request);
+			notifyAll();
+		}
+
+		return await(request);
+	}
+
+	/**
+	 * @return The number of transactions committed.
+	 */
+	long getCommits() {
+		return commits.sum();
+	}
+
+	/**
+	 * @return The number of entries written by those transactions.
+	 */
+	long getEntries() {
+		return entries.sum();
+	}
+
+	/**
+	 * Stop the writer. Entries already waiting are still written.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		while (true) {
+			List<Request> group;
+
+			synchronized (this) {
+				while (pending.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				if (pending.isEmpty()) {
+					return;
+				}
+
+				if (pending.size() <= maxGroup) {
+					group = pending;
+					pending = new ArrayList<>();
+				} else {
+					group = new ArrayList<>(pending.subList(0, maxGroup));
+					pending = new ArrayList<>(pending.subList(maxGroup, pending.size()));
+				}
+			}
+
+			write(group);
+		}
+	}
+
+	private void write(List<Request> group) {
+		List<Request> live = new ArrayList<>(group.size());
+
+		/* A caller that has given up is told so, and its entry is not written. */
+		for (Request request : group) {
+			if (request.deadline.isExpired()) {
+				request.future.completeExceptionally(
+						new DeadlineExceededException("Deadline exceeded before the work log entry was written."));
+			} else {
+				live.add(request);
+			}
+		}
+
+		if (live.isEmpty()) {
+			return;
+		}
+
+		try {
+			writeGroup(live);
+		} catch (RuntimeException e) {
+			/*
+			 * With shards, the shards before the failing one were committed and their
+			 * entries have IDs. Nothing else was written. Unless the deadline passed,
+			 * write the rest one at a time to find the entry at fault.
+			 */
+			boolean retry = live.size() > 1 && !(e instanceof DeadlineExceededException);
+
+			for (Request request : live) {
+				if (Objects.nonNull(request.entry.getWorkLogId())) {
+					complete(request);
+				} else if (!retry) {
+					request.future.completeExceptionally(e);
+				} else {
+					try {
+						writeGroup(List.of(request));
+					} catch (RuntimeException single) {
+						request.future.completeExceptionally(single);
+					}
+				}
+			}
+		}
+	}
+
+	/* Write the entries in one transaction per shard and complete their callers. */
+	private void writeGroup(List<Request> live) {
+		projectDao.appendWorkLog(live.stream().map(request -> request.entry).toList(),
+				Deadline.latest(live.stream().map(request -> request.deadline).toList()));
+
+		commits.increment();
+		live.forEach(this::complete);
+	}
+
+	/* Tell a caller whether its entry was written. */
+	private void complete(Request request) {
+		if (Objects.nonNull(request.entry.getWorkLogId())) {
+			/* The write happened on this thread; make the caller's session read it. */
+			request.session.recordWrite();
+			entries.increment();
+			request.future.complete(request.entry);
+		} else {
+			request.future.completeExceptionally(
+					new NoSuchElementException("Project with ID=" + request.entry.getProjectId() + " does not exist."));
+		}
+	}
+
+	/* Reject entries that would make the whole group's INSERT fail. */
+	private static void checkEntry(WorkLogEntry entry) {
+		if (Objects.isNull(entry.getProjectId())) {
+			throw new IllegalArgumentException("A work log entry needs a project ID.");
+		}
+
+		if (Objects.isNull(entry.getHours())) {
+			throw new IllegalArgumentException("The hours worked on project " + entry.getProjectId() + " are missing.");
+		}
+
+		if (entry.getHours().abs().compareTo(MAX_HOURS) > 0) {
+			throw new IllegalArgumentException("The hours worked on project " + entry.getProjectId() + " must be between -"
+					+ MAX_HOURS + " and " + MAX_HOURS + ".");
+		}
+	}
+
+	private static WorkLogEntry await(Request request) {
+		Deadline deadline = request.deadline;
+
+		try {
+			return deadline.isBounded()
+					? request.future.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS)
+					: request.future.get();
+		} catch (TimeoutException e) {
+			throw new DeadlineExceededException("Deadline exceeded waiting for the work log to be written.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for the work log to be written.", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new DbException(e.getCause());
+		}
+	}
+
+	private static class Request {
+		private final WorkLogEntry entry;
+		private final Deadline deadline;
+		private final Session session = DbConnection.currentSession();
+		private final CompletableFuture<WorkLogEntry> future = new CompletableFuture<>();
+
+		Request(WorkLogEntry entry, Deadline deadline) {
+			this.entry = entry;
+			this.deadline = deadline;
+		}
+	}
+}
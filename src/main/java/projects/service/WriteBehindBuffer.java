@@ -0,0 +1,508 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import projects.dao.DbConnection;
+import projects.dao.ProjectDao;
+import projects.dao.Session;
+import projects.entity.Project;
+import projects.exception.DbException;
+import projects.exception.OptimisticLockException;
+
+/**
+ * This class buffers project detail updates and writes them in the background.
+ * Updates to the same project within the flush window are merged, so a project
+ * whose name, estimate or notes are edited many times a second, for example by
+ * an editor that saves as the user types, is written once per window. Each
+ * flush writes all buffered projects in one batched transaction.
+ *
+ * Actual hours are the total of the work log and cannot be buffered; record
+ * time with {@link ProjectService#logWork}, which groups concurrent entries
+ * into shared commits instead.
+ *
+ * The buffer holds at most {@code maxPending} projects, counting those being
+ * written. When it is full, the caller flushes it before adding more, which
+ * bounds memory and slows callers down to the rate the database can absorb.
+ *
+ * A flush counts as a write by every session that submitted one of its
+ * updates, so those callers read their own writes from the primary afterwards.
+ *
+ * An update that carries a row version is checked twice: when it is submitted,
+ * against the version of any update already buffered for the project, and when
+ * it is written, against the row. On submit, the caller's project is given the
+ * version the row will have once the update is written, so the caller can go
+ * on making checked updates. Updates without a version are last-writer-wins.
+ *
+ * If a batch fails, its updates are written one at a time, so one bad update
+ * does not hold back the others. An update that fails is put back and tried
+ * again with the next flush, up to {@code maxAttempts} times. An update that
+ * can never succeed is given to the dead-letter handler instead, with the
+ * reason. That covers an update whose project does not exist, one whose
+ * version no longer matches, and one that has used up its attempts.
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+	/* How often an update is tried before it is given up, unless told otherwise. */
+	private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	private final ProjectDao projectDao;
+	private final int maxPending;
+	private final int maxAttempts;
+	private final BiConsumer<Project, RuntimeException> deadLetters;
+	private final ScheduledExecutorService flusher;
+	private final Thread shutdownHook;
+
+	/* Updates not yet sent to the database, keyed by project ID. */
+	private Map<Integer, Project> pending = new LinkedHashMap<>();
+	/* Updates being written by the current flush. Reads still see them. */
+	private Map<Integer, Project> flushing = Map.of();
+	/* The sessions that submitted the pending updates. */
+	private Set<Session> pendingSessions = new HashSet<>();
+	/* The failed attempts of pending updates that have failed before. */
+	private final Map<Integer, Integer> failedAttempts = new HashMap<>();
+
+	private final Object flushLock = new Object();
+	private boolean closed;
+	private long flushedUpdates;
+	private long coalescedUpdates;
+	private long deadLetterCount;
+	private RuntimeException lastFailure;
+
+	/**
+	 * Create a buffer and start its background flusher. The buffer is also
+	 * flushed when the JVM shuts down. Updates that cannot be written are
+	 * reported on standard output.
+	 *
+	 * @param projectDao The DAO that writes the updates.
+	 * @param window     How long an update may wait before it is written.
+	 * @param maxPending The most projects that may be buffered at once.
+	 */
+	public WriteBehindBuffer(ProjectDao projectDao, Duration window, int maxPending) {
+		this(projectDao, window, maxPending, DEFAULT_MAX_ATTEMPTS,
+				(project, reason) -> System.out.println("Dropped buffered update of project "
+						+ project.getProjectId() + " " + project.getDirtyColumns() + ": " + reason));
+	}
+
+	/**
+	 * Create a buffer and start its background flusher. The buffer is also
+	 * flushed when the JVM shuts down.
+	 *
+	 * @param projectDao  The DAO that writes the updates.
+	 * @param window      How long an update may wait before it is written.
+	 * @param maxPending  The most projects that may be buffered at once.
+	 * @param maxAttempts How often an update is tried before it is given up.
+	 * @param deadLetters Receives each update that is given up, with the reason.
+	 *                    It is called on the flushing thread.
+	 */
+	public WriteBehindBuffer(ProjectDao projectDao, Duration window, int maxPending, int maxAttempts,
+			BiConsumer<Project, RuntimeException> deadLetters) {
+		this.projectDao = projectDao;
+		this.maxPending = Math.max(1, maxPending);
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.deadLetters = deadLetters;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "project-write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long windowMillis = Math.max(1, window.toMillis());
+		flusher.scheduleWithFixedDelay(this::flushQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+
+		shutdownHook = new Thread(this::flush, "project-write-behind-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Buffer the changed columns of a project. If the project already has a
+	 * buffered update, the new changes are merged into it. If the project carries
+	 * a version, it is given the version the row will have once the update is
+	 * written.
+	 *
+	 * @param project The project with its changed columns.
+	 * @throws OptimisticLockException Thrown if the project's version is neither
+	 *                                 the version of the buffered update nor the
+	 *                                 one it will write.
+	 * @throws DbException             Thrown if the project changes its actual
+	 *                                 hours, which only the work log may do.
+	 */
+	public void submit(Project project) {
+		if (!project.isDirty()) {
+			return;
+		}
+
+		ProjectDao.checkUpdatableColumns(project);
+
+		while (true) {
+			synchronized (this) {
+				if (closed) {
+					throw new IllegalStateException("The write-behind buffer is closed.");
+				}
+
+				Project buffered = pending.get(project.getProjectId());
+
+				if (Objects.nonNull(buffered)) {
+					mergeVersion(project, buffered);
+					copyChanges(project, buffered);
+					pendingSessions.add(DbConnection.currentSession());
+					coalescedUpdates++;
+					return;
+				}
+
+				/* Updates being written count too, so a failed flush can always put them back. */
+				if (pending.size() + flushing.size() < maxPending) {
+					Project copy = new Project();
+					copy.setProjectId(project.getProjectId());
+					copy.setVersion(expectedVersion(project));
+					copyChanges(project, copy);
+					pending.put(copy.getProjectId(), copy);
+					pendingSessions.add(DbConnection.currentSession());
+
+					if (Objects.nonNull(copy.getVersion())) {
+						project.setVersion(copy.getVersion() + 1);
+					}
+
+					return;
+				}
+			}
+
+			/*
+			 * The buffer is full. Write it out on the caller's thread, then retry. Only
+			 * fail this caller if that made no room.
+			 */
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					if (pending.size() + flushing.size() >= maxPending) {
+						throw e;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Apply buffered changes to a project that was just read from the database,
+	 * so a caller in this JVM sees its own writes before they are flushed.
+	 *
+	 * @param project The project read from the database.
+	 * @return The same project, with any buffered changes applied.
+	 */
+	public synchronized Project overlay(Project project) {
+		Project inFlight = flushing.get(project.getProjectId());
+		Project buffered = pending.get(project.getProjectId());
+
+		if (Objects.nonNull(inFlight)) {
+			copyChanges(inFlight, project);
+		}
+
+		if (Objects.nonNull(buffered)) {
+			copyChanges(buffered, project);
+		}
+
+		if (Objects.nonNull(inFlight) || Objects.nonNull(buffered)) {
+			/* The values are what the database will hold, not local edits. */
+			project.clearDirtyColumns();
+		}
+
+		return project;
+	}
+
+	/**
+	 * Write every buffered update in one batched transaction. Only one flush runs
+	 * at a time. If the batch fails, each update is written on its own. Updates
+	 * that still fail are put back, unless they have used up their attempts, and
+	 * the last failure is rethrown once the others are written.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			Map<Integer, Project> batch;
+			Set<Session> sessions;
+
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+
+				batch = pending;
+				sessions = pendingSessions;
+				flushing = batch;
+				pending = new LinkedHashMap<>();
+				pendingSessions = new HashSet<>();
+			}
+
+			Map<Integer, Project> retry = new LinkedHashMap<>();
+			Map<Integer, RuntimeException> reasons = new HashMap<>();
+			Map<Project, RuntimeException> given = new LinkedHashMap<>();
+			RuntimeException failure = null;
+			int written = 0;
+
+			try {
+				List<Project> updates = copies(batch);
+
+				try {
+					projectDao.modifyProjectDetails(updates);
+
+					/* The DAO clears the columns of the rows it updated; the rest matched no row. */
+					for (Project update : updates) {
+						if (update.isDirty()) {
+							given.put(batch.get(update.getProjectId()), notWritten(update));
+						} else {
+							written++;
+						}
+					}
+				} catch (RuntimeException e) {
+					for (Project update : copies(batch)) {
+						Project buffered = batch.get(update.getProjectId());
+
+						try {
+							if (projectDao.modifyProjectDetails(update)) {
+								written++;
+							} else {
+								given.put(buffered, notWritten(update));
+							}
+						} catch (OptimisticLockException conflict) {
+							given.put(buffered, conflict);
+						} catch (RuntimeException single) {
+							failure = single;
+							retry.put(buffered.getProjectId(), buffered);
+							reasons.put(buffered.getProjectId(), single);
+						}
+					}
+				}
+
+				if (written > 0) {
+					sessions.forEach(Session::recordWrite);
+				}
+			} finally {
+				synchronized (this) {
+					for (Project buffered : batch.values()) {
+						Integer projectId = buffered.getProjectId();
+
+						if (!retry.containsKey(projectId)) {
+							failedAttempts.remove(projectId);
+						} else if (failedAttempts.merge(projectId, 1, Integer::sum) >= maxAttempts) {
+							failedAttempts.remove(projectId);
+							retry.remove(projectId);
+							given.put(buffered, reasons.get(projectId));
+						}
+					}
+
+					requeue(retry);
+
+					if (!retry.isEmpty()) {
+						pendingSessions.addAll(sessions);
+					}
+
+					flushing = Map.of();
+					flushedUpdates += written;
+					deadLetterCount += given.size();
+					lastFailure = failure;
+				}
+			}
+
+			given.forEach(deadLetters);
+
+			if (Objects.nonNull(failure)) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Stop the background flusher and write whatever is still buffered.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+
+		flusher.shutdown();
+
+		try {
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		flush();
+
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			/* The JVM is already shutting down and has run or will run the hook. */
+		}
+	}
+
+	/**
+	 * @return The number of project updates written by flushes.
+	 */
+	public synchronized long getFlushedUpdates() {
+		return flushedUpdates;
+	}
+
+	/**
+	 * @return The number of updates merged into an already buffered update.
+	 */
+	public synchronized long getCoalescedUpdates() {
+		return coalescedUpdates;
+	}
+
+	/**
+	 * @return The number of projects waiting to be written.
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * @return The number of updates given to the dead-letter handler.
+	 */
+	public synchronized long getDeadLetterCount() {
+		return deadLetterCount;
+	}
+
+	/**
+	 * @return The failure of the most recent flush, or {@code null} if it
+	 *         succeeded.
+	 */
+	public synchronized RuntimeException getLastFailure() {
+		return lastFailure;
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			System.out.println("Unable to flush buffered project updates: " + e);
+		}
+	}
+
+	/*
+	 * Put failed updates back under any newer updates for the same project. The
+	 * older update keeps its version, which is what the row still has.
+	 */
+	private void requeue(Map<Integer, Project> failed) {
+		Map<Integer, Project> merged = new LinkedHashMap<>(failed);
+
+		for (Project newer : pending.values()) {
+			Project older = merged.get(newer.getProjectId());
+
+			if (Objects.isNull(older)) {
+				merged.put(newer.getProjectId(), newer);
+			} else {
+				if (Objects.isNull(older.getVersion())) {
+					older.setVersion(newer.getVersion());
+				}
+
+				copyChanges(newer, older);
+			}
+		}
+
+		pending = merged;
+	}
+
+	/*
+	 * The version a new buffered update expects the row to have. A caller that
+	 * read the row before the update being written for it commits expects the
+	 * version that update will leave.
+	 */
+	private Integer expectedVersion(Project project) {
+		Integer version = project.getVersion();
+		Project inFlight = flushing.get(project.getProjectId());
+
+		if (Objects.nonNull(version) && Objects.nonNull(inFlight) && version.equals(inFlight.getVersion())) {
+			return version + 1;
+		}
+
+		return version;
+	}
+
+	/*
+	 * Check a submitted version against the buffered update it joins. The caller
+	 * may hold the version the row has now, or the one the buffered update will
+	 * write. An unversioned buffered update takes the caller's version.
+	 */
+	private static void mergeVersion(Project project, Project buffered) {
+		Integer version = project.getVersion();
+		Integer expected = buffered.getVersion();
+
+		if (Objects.isNull(version)) {
+			return;
+		}
+
+		if (Objects.isNull(expected)) {
+			buffered.setVersion(version);
+		} else if (!version.equals(expected) && version != expected + 1) {
+			throw new OptimisticLockException("Project with ID=" + project.getProjectId() + " has version "
+					+ (expected + 1) + " once its buffered update is written, not " + version + ".");
+		}
+
+		project.setVersion(buffered.getVersion() + 1);
+	}
+
+	/* The DAO clears the dirty columns it writes, so it gets copies. */
+	private static List<Project> copies(Map<Integer, Project> batch) {
+		List<Project> copies = new ArrayList<>(batch.size());
+
+		for (Project buffered : batch.values()) {
+			Project copy = new Project();
+			copy.setProjectId(buffered.getProjectId());
+			copy.setVersion(buffered.getVersion());
+			copyChanges(buffered, copy);
+			copies.add(copy);
+		}
+
+		return copies;
+	}
+
+	private static RuntimeException notWritten(Project update) {
+		return Objects.isNull(update.getVersion())
+				? new DbException("Project with ID=" + update.getProjectId() + " does not exist.")
+				: new OptimisticLockException("Project with ID=" + update.getProjectId()
+						+ " does not exist or no longer has version " + update.getVersion() + ".");
+	}
+
+	/* Copy the changed columns of one project onto another. */
+	private static void copyChanges(Project from, Project to) {
+		List<String> columns = new ArrayList<>(from.getDirtyColumns());
+
+		for (String column : columns) {
+			switch (column) {
+			case "project_name":
+				to.setProjectName(from.getProjectName());
+				break;
+
+			case "estimated_hours":
+				to.setEstimatedHours(from.getEstimatedHours());
+				break;
+
+			case "difficulty":
+				to.setDifficulty(from.getDifficulty());
+				break;
+
+			case "notes":
+				to.setNotes(from.getNotes());
+				break;
+
+			default:
+				break;
+			}
+
+			to.markColumnDirty(column);
+		}
+	}
+}
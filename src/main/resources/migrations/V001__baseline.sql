@@ -1,16 +1,15 @@
-DROP TABLE IF EXISTS material;
-DROP TABLE IF EXISTS step;
-DROP TABLE IF EXISTS project_category;
-DROP TABLE IF EXISTS project;
-DROP TABLE IF EXISTS category;
+-- The schema as the original projects-schema.sql created it. The statements do
+-- nothing to tables that already exist, so a database built with that script
+-- adopts this version as it is and is brought up to date by the migrations
+-- that follow.
 
-CREATE TABLE category (
+CREATE TABLE IF NOT EXISTS category (
 	category_id INT AUTO_INCREMENT NOT NULL,
 	category_name VARCHAR(128) NOT NULL,
 	PRIMARY KEY (category_id)
 );
 
-CREATE TABLE project (
+CREATE TABLE IF NOT EXISTS project (
 	project_id INT AUTO_INCREMENT NOT NULL,
 	project_name VARCHAR(128) NOT NULL,
 	estimated_hours DECIMAL(7,2),
@@ -20,7 +19,7 @@ CREATE TABLE project (
 	PRIMARY KEY (project_id)
 );
 
-CREATE TABLE project_category (
+CREATE TABLE IF NOT EXISTS project_category (
 	project_id INT NOT NULL,
 	category_id INT NOT NULL,
 	FOREIGN KEY (project_id) REFERENCES project(project_id) ON DELETE CASCADE,
@@ -28,7 +27,7 @@ CREATE TABLE project_category (
 	UNIQUE KEY (project_id, category_id)
 );
 
-CREATE TABLE step (
+CREATE TABLE IF NOT EXISTS step (
 	step_id INT AUTO_INCREMENT NOT NULL,
 	project_id INT NOT NULL,
 	step_text TEXT,
@@ -37,7 +36,7 @@ CREATE TABLE step (
 	FOREIGN KEY (project_id) REFERENCES project(project_id) ON DELETE CASCADE
 );
 
-CREATE TABLE material (
+CREATE TABLE IF NOT EXISTS material (
 	material_id INT AUTO_INCREMENT NOT NULL,
 	project_id INT NOT NULL,
 	material_name VARCHAR(128) NOT NULL,
@@ -46,5 +45,3 @@ CREATE TABLE material (
 	PRIMARY KEY (material_id),
 	FOREIGN KEY (project_id) REFERENCES project(project_id) ON DELETE CASCADE
 );
-
-
@@ -0,0 +1,5 @@
+-- The row version for optimistic concurrency control. Every update that
+-- checks it also increments it.
+
+ALTER TABLE project
+	ADD COLUMN version INT NOT NULL DEFAULT 0 AFTER notes;
@@ -0,0 +1,9 @@
+-- Hands out project IDs that are unique across shards. Only the first shard's
+-- row is used; unsharded schemas use AUTO_INCREMENT instead. It starts after
+-- the projects an existing schema already has.
+
+CREATE TABLE project_id_sequence (
+	next_id INT NOT NULL
+);
+
+INSERT INTO project_id_sequence (next_id) SELECT COALESCE(MAX(project_id), 0) + 1 FROM project;
@@ -0,0 +1,5 @@
+-- Set when a project is soft-deleted. Its rows are purged in the background.
+
+ALTER TABLE project
+	ADD COLUMN deleted_at TIMESTAMP NULL AFTER version,
+	ADD KEY (deleted_at);
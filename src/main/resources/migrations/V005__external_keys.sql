@@ -0,0 +1,15 @@
+-- Keys of projects, materials and steps in an external catalogue, used by
+-- upserts to find the existing rows. Material and step keys are unique within
+-- their project.
+
+ALTER TABLE project
+	ADD COLUMN external_key VARCHAR(128) AFTER deleted_at,
+	ADD UNIQUE KEY (external_key);
+
+ALTER TABLE step
+	ADD COLUMN external_key VARCHAR(128),
+	ADD UNIQUE KEY (project_id, external_key);
+
+ALTER TABLE material
+	ADD COLUMN external_key VARCHAR(128),
+	ADD UNIQUE KEY (project_id, external_key);
@@ -0,0 +1,12 @@
+-- The change outbox. Every mutation writes a record here in its own
+-- transaction, and consumers poll it in change_seq order.
+
+CREATE TABLE project_change (
+	change_seq BIGINT AUTO_INCREMENT NOT NULL,
+	entity VARCHAR(32) NOT NULL,
+	entity_id INT NOT NULL,
+	operation VARCHAR(16) NOT NULL,
+	changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+	PRIMARY KEY (change_seq),
+	KEY (changed_at)
+);
@@ -0,0 +1,9 @@
+-- Notes and step text longer than the DAO's compression threshold, compressed.
+-- The first byte names the codec. At most one of the plain and compressed
+-- columns is set.
+
+ALTER TABLE project
+	ADD COLUMN notes_compressed MEDIUMBLOB AFTER notes;
+
+ALTER TABLE step
+	ADD COLUMN step_text_compressed MEDIUMBLOB AFTER step_text;
@@ -0,0 +1,12 @@
+-- Time spent on projects. Rows are only ever inserted; each insert also adds
+-- its hours to project.actual_hours in the same transaction.
+
+CREATE TABLE work_log (
+	work_log_id BIGINT AUTO_INCREMENT NOT NULL,
+	project_id INT NOT NULL,
+	hours DECIMAL(7,2) NOT NULL,
+	logged_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+	PRIMARY KEY (work_log_id),
+	KEY (project_id, logged_at),
+	FOREIGN KEY (project_id) REFERENCES project(project_id) ON DELETE CASCADE
+);
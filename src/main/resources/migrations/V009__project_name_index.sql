@@ -0,0 +1,9 @@
+-- Live projects are listed by name. With only KEY (deleted_at) MySQL read every
+-- live row and sorted them; this index returns them in name order, and the
+-- name list for suggestions reads nothing else. Its first column is
+-- deleted_at, so it also serves the purger's scan of deleted projects and
+-- replaces the old key.
+
+ALTER TABLE project
+	ADD KEY project_live_name (deleted_at, project_name),
+	DROP KEY deleted_at;
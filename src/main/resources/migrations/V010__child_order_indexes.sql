@@ -0,0 +1,10 @@
+-- Steps and materials are read by project in display order. The unique keys on
+-- (project_id, external_key) find a project's rows but not in that order, so
+-- every read sorted them. InnoDB appends the primary key to a secondary key,
+-- so KEY (project_id) orders materials by material_id.
+
+ALTER TABLE step
+	ADD KEY step_project_order (project_id, step_order);
+
+ALTER TABLE material
+	ADD KEY material_project (project_id);
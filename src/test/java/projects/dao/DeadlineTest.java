@@ -0,0 +1,36 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DeadlineTest {
+	@BeforeEach
+	void resetSchema() {
+		TestDatabase.reset();
+	}
+
+	@Test
+	void statementIsCancelledAtTheDeadline() throws SQLException {
+		Deadline deadline = Deadline.after(Duration.ofMillis(100));
+		long start = System.nanoTime();
+
+		try (Connection conn = DbConnection.getConnection(deadline);
+				PreparedStatement stmt = conn.prepareStatement("SELECT SLEEP(5)")) {
+			deadline.applyTo(stmt);
+			assertThrows(SQLException.class, stmt::executeQuery);
+		}
+
+		/* The one-second query timeout would have let it run much longer. */
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(elapsedMillis < 700, "The statement ran for " + elapsedMillis + " ms.");
+	}
+}
@@ -0,0 +1,44 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import projects.entity.Material;
+import projects.entity.Project;
+
+class ProjectSnapshotTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	void readsBackDecimalsOfAnySize() {
+		/* 200 bytes unscaled, more than a byte length can hold. */
+		BigDecimal large = new BigDecimal(BigInteger.ONE.shiftLeft(1600 - 2), 2);
+		BigDecimal negative = large.negate();
+
+		Project project = new Project();
+		project.setProjectId(1);
+		project.setProjectName("Snapshot");
+		project.setEstimatedHours(large);
+
+		Material material = new Material();
+		material.setMaterialName("Wood");
+		material.setCost(negative);
+		project.getMaterials().add(material);
+
+		Path path = dir.resolve("projects.snapshot");
+		ProjectSnapshot.write(path, List.of(project));
+
+		Project read = ProjectSnapshot.open(path).fetchProjectById(1).orElseThrow();
+
+		assertEquals(large, read.getEstimatedHours());
+		assertEquals(negative, read.getMaterials().get(0).getCost());
+	}
+}
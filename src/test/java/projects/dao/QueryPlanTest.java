@@ -0,0 +1,351 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.entity.WorkLogEntry;
+import projects.exception.DbException;
+
+/**
+ * This test checks that every query the DAOs run is served by an index. It
+ * rebuilds the scratch schema from the migrations, seeds it, calls every DAO
+ * operation while recording the statements they prepare, and then runs EXPLAIN
+ * on each one with the parameters it was run with. A statement fails if MySQL
+ * would scan a whole table or index, or sort rows with a filesort. Operations
+ * that read every live project may do either: reading the name index and then
+ * every row costs more than scanning and sorting, so the optimizer is right to
+ * choose that. Scans of tables too small to matter are allowed.
+ *
+ * It needs a scratch schema; see {@link TestDatabase}.
+ */
+class QueryPlanTest {
+	// Tables with fewer rows than this may be scanned.
+	private static final long SMALL_TABLE_ROWS = 100;
+
+	private static final int PROJECT_COUNT = 2000;
+	private static final int CATEGORY_COUNT = 20;
+	private static final int MATERIALS_PER_PROJECT = 4;
+	private static final int STEPS_PER_PROJECT = 6;
+	private static final int UPSERT_BATCH_SIZE = 250;
+
+	// Operations that read every live project, so a scan and sort is the right
+	// plan.
+	// @formatter:off
+	private static final Set<String> WHOLE_TABLE_READS = Set.of(
+			"ProjectDao.fetchAllProjects",
+			"ProjectDao.fetchAllProjectGraphs",
+			"ProjectDao.fetchProjectAndMaterialNames");
+	// @formatter:on
+
+	// The classes whose statements are checked.
+	// @formatter:off
+	private static final Set<String> DAO_CLASSES = Set.of(
+			ProjectDao.class.getName(),
+			ChangeFeed.class.getName(),
+			ProjectPurger.class.getName(),
+			TextCompressionMigration.class.getName());
+	// @formatter:on
+
+	private final ProjectDao projectDao = new ProjectDao(null);
+	private final Map<String, Statement> statements = new LinkedHashMap<>();
+
+	@BeforeEach
+	void resetSchema() {
+		TestDatabase.reset();
+
+		List<String> categories = new ArrayList<>();
+
+		for (int i = 1; i <= CATEGORY_COUNT; i++) {
+			categories.add("INSERT INTO category (category_name) VALUES ('Category " + i + "')");
+		}
+
+		TestDatabase.execute(categories);
+	}
+
+	@Test
+	void everyStatementUsesAnIndex() {
+		DbConnection.observeStatements(this::record);
+
+		try {
+			exercise();
+		} finally {
+			DbConnection.observeStatements(null);
+		}
+
+		analyzeTables();
+
+		assertFalse(statements.isEmpty(), "No statements were recorded.");
+
+		List<String> failures = checkPlans();
+		assertTrue(failures.isEmpty(), String.join("\n", failures));
+	}
+
+	/* Call every DAO operation at least once, against enough rows for real plans. */
+	private void exercise() {
+		List<Integer> projectIds = seed();
+		Integer projectId = projectIds.get(projectIds.size() / 2);
+
+		projectDao.fetchAllProjects();
+		projectDao.fetchAllProjectGraphs();
+		projectDao.fetchProjectAndMaterialNames();
+		projectDao.fetchProjectsByIds(projectIds.subList(0, 50), Deadline.NONE);
+		projectDao.fetchWorkLog(projectId, 20);
+
+		Project project = projectDao.fetchProjectById(projectId).orElseThrow();
+		project.setProjectName(project.getProjectName() + " (renamed)");
+		projectDao.modifyProjectDetails(project);
+
+		List<Project> changed = new ArrayList<>();
+
+		for (Integer id : projectIds.subList(50, 53)) {
+			Project other = projectDao.fetchProjectById(id).orElseThrow();
+			other.setDifficulty(5);
+			changed.add(other);
+		}
+
+		projectDao.modifyProjectDetails(changed);
+		projectDao.setProjectCategories(projectId, Set.of(1, 3));
+
+		Project overrides = new Project();
+		overrides.setProjectName("Clone of " + projectId);
+		projectDao.cloneProject(projectId, overrides);
+
+		Project added = new Project();
+		added.setProjectName("Added project");
+		projectDao.insertProject(added);
+
+		projectDao.setSoftDelete(false);
+		projectDao.deleteProject(added.getProjectId());
+		projectDao.setSoftDelete(true);
+
+		for (int i = 0; i < projectIds.size(); i += 10) {
+			projectDao.deleteProject(projectIds.get(i));
+		}
+
+		projectDao.createPurger(500, Duration.ZERO).purge();
+
+		projectDao.setTextCompressionThreshold(64);
+		projectDao.createTextCompressionMigration(200).run();
+
+		ChangeFeed changeFeed = projectDao.createChangeFeed();
+		changeFeed.setSettleTime(Duration.ZERO);
+		changeFeed.fetchChanges(0, 100);
+		changeFeed.prune(Duration.ZERO);
+	}
+
+	/* Insert the projects with their children, categories and work log. */
+	private List<Integer> seed() {
+		List<Integer> projectIds = new ArrayList<>();
+		List<Project> batch = new ArrayList<>();
+
+		for (int i = 1; i <= PROJECT_COUNT; i++) {
+			batch.add(seedProject(i));
+
+			if (batch.size() == UPSERT_BATCH_SIZE || i == PROJECT_COUNT) {
+				projectDao.upsertProjects(batch).forEach(result -> projectIds.add(result.getProjectId()));
+				batch.clear();
+			}
+		}
+
+		Map<Integer, Set<Integer>> categoryIds = new HashMap<>();
+		List<WorkLogEntry> entries = new ArrayList<>();
+
+		for (Integer projectId : projectIds) {
+			categoryIds.put(projectId, Set.of(1 + projectId % CATEGORY_COUNT, 1 + (projectId + 7) % CATEGORY_COUNT));
+
+			for (int i = 0; i < 3; i++) {
+				WorkLogEntry entry = new WorkLogEntry();
+				entry.setProjectId(projectId);
+				entry.setHours(new BigDecimal("1.50"));
+				entries.add(entry);
+			}
+		}
+
+		for (int from = 0; from < projectIds.size(); from += UPSERT_BATCH_SIZE) {
+			Map<Integer, Set<Integer>> batchIds = new HashMap<>();
+
+			for (Integer projectId : projectIds.subList(from, Math.min(from + UPSERT_BATCH_SIZE, projectIds.size()))) {
+				batchIds.put(projectId, categoryIds.get(projectId));
+			}
+
+			projectDao.setProjectCategories(batchIds);
+		}
+
+		for (int from = 0; from < entries.size(); from += UPSERT_BATCH_SIZE) {
+			projectDao.appendWorkLog(entries.subList(from, Math.min(from + UPSERT_BATCH_SIZE, entries.size())),
+					Deadline.NONE);
+		}
+
+		return projectIds;
+	}
+
+	private Project seedProject(int i) {
+		Project project = new Project();
+		project.setExternalKey("plan-check-" + i);
+		project.setProjectName("Project " + Integer.toString(i * 7919 % PROJECT_COUNT, 36));
+		project.setEstimatedHours(new BigDecimal(i % 40 + 1));
+		project.setDifficulty(i % 5 + 1);
+		project.setNotes(i % 3 == 0 ? "Notes that are long enough to be compressed. ".repeat(4) : "Short notes");
+
+		for (int m = 1; m <= MATERIALS_PER_PROJECT; m++) {
+			Material material = new Material();
+			material.setExternalKey("material-" + m);
+			material.setMaterialName("Material " + (i * m % 500));
+			material.setNumRequired(m);
+			material.setCost(new BigDecimal(m * 3));
+			project.getMaterials().add(material);
+		}
+
+		for (int s = 1; s <= STEPS_PER_PROJECT; s++) {
+			Step step = new Step();
+			step.setExternalKey("step-" + s);
+			step.setStepText("Step " + s + " of project " + i);
+			step.setStepOrder(STEPS_PER_PROJECT - s + 1);
+			project.getSteps().add(step);
+		}
+
+		return project;
+	}
+
+	/* Called for every statement run. Only the first run of each SQL string is kept. */
+	private synchronized void record(String sql, List<Object> parameters) {
+		if (!statements.containsKey(sql)) {
+			statements.put(sql, new Statement(caller(), sql, parameters));
+		}
+	}
+
+	/* The DAO method that ran the statement. */
+	private static String caller() {
+		return StackWalker.getInstance()
+				.walk(frames -> frames
+						.filter(frame -> DAO_CLASSES.contains(frame.getClassName())
+								&& !frame.getMethodName().startsWith("lambda$"))
+						.findFirst()
+						.map(frame -> frame.getClassName().substring(frame.getClassName().lastIndexOf('.') + 1) + "."
+								+ frame.getMethodName())
+						.orElse("unknown"));
+	}
+
+	private void analyzeTables() {
+		List<String> sql = new ArrayList<>();
+
+		for (String table : List.of("category", "project", "project_category", "step", "material", "work_log",
+				"project_change")) {
+			sql.add("ANALYZE TABLE " + table);
+		}
+
+		TestDatabase.execute(sql);
+	}
+
+	/* One line per statement that failed. */
+	private List<String> checkPlans() {
+		List<String> failures = new ArrayList<>();
+
+		try (Connection conn = DbConnection.getConnection()) {
+			for (Statement statement : statements.values()) {
+				if (!statement.isExplainable()) {
+					continue;
+				}
+
+				List<String> problems = explain(conn, statement);
+
+				if (!problems.isEmpty()) {
+					failures.add(statement.caller + ": " + String.join("; ", problems) + " in " + statement.sql);
+				}
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+
+		return failures;
+	}
+
+	private List<String> explain(Connection conn, Statement statement) throws SQLException {
+		List<String> problems = new ArrayList<>();
+
+		try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + statement.sql)) {
+			for (int i = 0; i < statement.parameters.size(); i++) {
+				Object value = statement.parameters.get(i);
+
+				if (Objects.isNull(value)) {
+					stmt.setNull(i + 1, Types.NULL);
+				} else {
+					stmt.setObject(i + 1, value);
+				}
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					String table = rs.getString("table");
+					String type = rs.getString("type");
+					long rows = rs.getLong("rows");
+					String extra = Objects.toString(rs.getString("Extra"), "");
+
+					/* The row for the table an INSERT ... SELECT writes to is not a read. */
+					if ("INSERT".equals(rs.getString("select_type"))) {
+						continue;
+					}
+
+					boolean scan = "ALL".equals(type) || "index".equals(type);
+
+					if (scan && rows >= SMALL_TABLE_ROWS && !WHOLE_TABLE_READS.contains(statement.caller)) {
+						problems.add("full " + ("ALL".equals(type) ? "table" : "index") + " scan of " + table + " ("
+								+ rows + " rows)");
+					}
+
+					if (extra.contains("Using filesort") && !WHOLE_TABLE_READS.contains(statement.caller)) {
+						problems.add("filesort on " + table);
+					}
+				}
+			}
+		}
+
+		return problems;
+	}
+
+	/* A recorded statement and the parameters of its first run. */
+	private static class Statement {
+		private final String caller;
+		private final String sql;
+		private final List<Object> parameters;
+
+		Statement(String caller, String sql, List<Object> parameters) {
+			this.caller = caller;
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+
+		/* Reads, updates and deletes can be explained. Inserts of values read no rows. */
+		boolean isExplainable() {
+			String verb = sql.strip().split("\\s+", 2)[0].toUpperCase(Locale.ROOT);
+
+			if (verb.equals("INSERT")) {
+				return sql.toUpperCase(Locale.ROOT).contains(" SELECT ");
+			}
+
+			return verb.equals("SELECT") || verb.equals("UPDATE") || verb.equals("DELETE");
+		}
+	}
+}
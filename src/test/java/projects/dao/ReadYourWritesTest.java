@@ -0,0 +1,91 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Project;
+import projects.service.WriteBehindBuffer;
+
+/**
+ * Reads after a write go to the primary for the session that wrote, on any
+ * thread, and to the replica for everyone else. The replica never receives
+ * the writes, so a read that reaches it does not find them.
+ */
+class ReadYourWritesTest {
+	private final ProjectDao projectDao = new ProjectDao(null);
+
+	@BeforeEach
+	void resetSchemas() {
+		TestDatabase.resetWithReplica();
+	}
+
+	@Test
+	void sessionReadsItsWriteOnAnotherThread() {
+		Session session = new Session();
+		Project project = DbConnection.callInSession(session, () -> projectDao.insertProject(newProject("Written")));
+
+		assertTrue(onAnotherThread(session, () -> projectDao.fetchProjectById(project.getProjectId())).isPresent());
+		assertFalse(onAnotherThread(new Session(), () -> projectDao.fetchProjectById(project.getProjectId()))
+				.isPresent());
+	}
+
+	@Test
+	void tokenCarriesTheWriteToAnotherRequest() {
+		Session session = new Session();
+		Project project = DbConnection.callInSession(session, () -> projectDao.insertProject(newProject("Written")));
+		Session nextRequest = Session.fromToken(session.getToken());
+
+		assertTrue(onAnotherThread(nextRequest, () -> projectDao.fetchProjectById(project.getProjectId())).isPresent());
+		assertFalse(Session.fromToken(null).wroteRecently());
+		assertFalse(Session.fromToken("not a token").wroteRecently());
+	}
+
+	@Test
+	void writeBehindFlushCountsForTheSubmitter() {
+		Project project = projectDao.insertProject(newProject("Before"));
+		Session session = new Session();
+
+		try (WriteBehindBuffer buffer = new WriteBehindBuffer(projectDao, Duration.ofHours(1), 10)) {
+			Project update = new Project();
+			update.setProjectId(project.getProjectId());
+			update.setProjectName("After");
+
+			DbConnection.callInSession(session, () -> {
+				buffer.submit(update);
+				return null;
+			});
+
+			assertFalse(session.wroteRecently());
+
+			/* The flusher's thread and session are not the submitter's. */
+			onAnotherThread(new Session(), () -> {
+				buffer.flush();
+				return null;
+			});
+		}
+
+		assertTrue(session.wroteRecently());
+
+		Optional<Project> read = onAnotherThread(session, () -> projectDao.fetchProjectById(project.getProjectId()));
+		assertEquals("After", read.orElseThrow().getProjectName());
+	}
+
+	private static Project newProject(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		return project;
+	}
+
+	private static <T> T onAnotherThread(Session session, Supplier<T> call) {
+		return CompletableFuture.supplyAsync(() -> DbConnection.callInSession(session, call)).join();
+	}
+}
@@ -0,0 +1,101 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assumptions;
+
+import projects.exception.DbException;
+
+/**
+ * This class points {@link DbConnection} at the scratch schema named by the
+ * {@code projects.test.url} system property and rebuilds it from the
+ * migrations. Tests that need a database call {@link #reset()} first; they are
+ * skipped when the property is not set. Every table in the schema is dropped.
+ *
+ * Tests of read/write splitting call {@link #resetWithReplica()}, which also
+ * needs a second scratch schema in {@code projects.test.replicaUrl}. Nothing
+ * copies rows to it, so it stands in for a replica that lags behind forever.
+ */
+public class TestDatabase {
+	public static final String URL_PROPERTY = "projects.test.url";
+	public static final String REPLICA_URL_PROPERTY = "projects.test.replicaUrl";
+
+	/* Long enough that a test never outlives it. */
+	public static final Duration READ_YOUR_WRITES_WINDOW = Duration.ofMinutes(5);
+
+	private TestDatabase() {
+	}
+
+	/**
+	 * Skip the test if no scratch schema is configured. Otherwise drop its tables
+	 * and migrate it.
+	 */
+	public static void reset() {
+		String url = System.getProperty(URL_PROPERTY, "");
+		Assumptions.assumeFalse(url.isBlank(), "Set -D" + URL_PROPERTY + " to run the database tests.");
+
+		DbConnection.configure(url, List.of(), DbConnection.ReplicaSelection.ROUND_ROBIN, Duration.ZERO);
+		dropTables();
+		new ProjectDao(null).migrateSchema();
+	}
+
+	/**
+	 * Skip the test unless both scratch schemas are configured. Otherwise rebuild
+	 * both and route reads to the replica.
+	 */
+	public static void resetWithReplica() {
+		String replicaUrl = System.getProperty(REPLICA_URL_PROPERTY, "");
+		Assumptions.assumeFalse(replicaUrl.isBlank(),
+				"Set -D" + REPLICA_URL_PROPERTY + " to run the read/write splitting tests.");
+
+		DbConnection.configure(replicaUrl, List.of(), DbConnection.ReplicaSelection.ROUND_ROBIN, Duration.ZERO);
+		dropTables();
+		new ProjectDao(null).migrateSchema();
+
+		reset();
+		DbConnection.configure(System.getProperty(URL_PROPERTY), List.of(replicaUrl),
+				DbConnection.ReplicaSelection.ROUND_ROBIN, READ_YOUR_WRITES_WINDOW);
+	}
+
+	/**
+	 * Run statements on the primary.
+	 *
+	 * @param sql The statements.
+	 */
+	public static void execute(List<String> sql) {
+		try (Connection conn = DbConnection.getConnection()) {
+			for (String statement : sql) {
+				try (PreparedStatement stmt = conn.prepareStatement(statement)) {
+					stmt.execute();
+				}
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private static void dropTables() {
+		List<String> sql = new ArrayList<>();
+		sql.add("SET FOREIGN_KEY_CHECKS = 0");
+
+		try (Connection conn = DbConnection.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(
+						"SELECT table_name FROM information_schema.tables WHERE table_schema = DATABASE()");
+				ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				sql.add("DROP TABLE `" + rs.getString(1) + "`");
+			}
+		} catch (SQLException e) {
+			throw new DbException(e);
+		}
+
+		sql.add("SET FOREIGN_KEY_CHECKS = 1");
+		execute(sql);
+	}
+}
@@ -0,0 +1,80 @@
+package projects.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import projects.exception.DbException;
+
+class TextCodecTest {
+	private static final String LONG_TEXT = "Sand the board, then sand it again. ".repeat(50);
+
+	@Test
+	void roundTripsLongText() {
+		byte[] stored = TextCodec.compress(LONG_TEXT, 64);
+
+		assertNotNull(stored);
+		assertEquals(TextCodec.DEFLATE, stored[0]);
+		assertTrue(stored.length < LONG_TEXT.length());
+		assertEquals(LONG_TEXT, TextCodec.decompress(stored));
+	}
+
+	@Test
+	void leavesTextBelowTheThresholdAlone() {
+		String text = "a".repeat(63);
+
+		assertNull(TextCodec.compress(text, 64));
+		assertNotNull(TextCodec.compress(text + "a", 64));
+		assertNull(TextCodec.compress(LONG_TEXT, 0));
+		assertNull(TextCodec.compress(null, 64));
+	}
+
+	@Test
+	void leavesTextThatDoesNotShrinkAlone() {
+		/* Every character differs, so DEFLATE plus the marker byte is larger. */
+		StringBuilder text = new StringBuilder();
+
+		for (int i = 0; i < 94; i++) {
+			text.append((char) ('!' + i));
+		}
+
+		assertNull(TextCodec.compress(text.toString(), 1));
+	}
+
+	@Test
+	void thresholdCountsUtf8BytesAndMultiByteTextRoundTrips() {
+		/* Japanese text, three bytes per character in UTF-8, and a four-byte emoji. */
+		String text = "\u6728\u6750\u3092\u78e8\u304f \ud83e\udeb5 ".repeat(40);
+
+		assertEquals(text, TextCodec.decompress(TextCodec.compress(text, 64)));
+
+		String shortText = "\u6728".repeat(22);
+		assertEquals(66, shortText.getBytes(StandardCharsets.UTF_8).length);
+		assertNull(TextCodec.compress(shortText.substring(0, 21), 64));
+	}
+
+	@Test
+	void rejectsAnUnknownMarker() {
+		byte[] stored = TextCodec.compress(LONG_TEXT, 64);
+		stored[0] = 2;
+
+		DbException e = assertThrows(DbException.class, () -> TextCodec.decompress(stored));
+		assertTrue(e.getMessage().contains("Unknown text codec 2"));
+		assertThrows(DbException.class, () -> TextCodec.decompress(new byte[0]));
+	}
+
+	@Test
+	void rejectsTruncatedInput() {
+		byte[] stored = TextCodec.compress(LONG_TEXT, 64);
+
+		assertThrows(DbException.class, () -> TextCodec.decompress(Arrays.copyOf(stored, stored.length / 2)));
+		assertThrows(DbException.class, () -> TextCodec.decompress(new byte[] { TextCodec.DEFLATE }));
+	}
+}
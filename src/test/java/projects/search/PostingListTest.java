@@ -0,0 +1,77 @@
+package projects.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class PostingListTest {
+	@Test
+	void outOfOrderPutsKeepProjectIdOrder() {
+		PostingList list = new PostingList();
+
+		list.put(300, 1);
+		list.put(5, 2);
+		/* Gaps and counts of several varint bytes. */
+		list.put(1_000_000, 70_000);
+		list.put(42, 200);
+		list.put(5, 3);
+		list.put(0, 1);
+
+		assertEquals(Map.of(0, 1, 5, 3, 42, 200, 300, 1, 1_000_000, 70_000), entries(list));
+		assertEquals(5, list.count());
+		assertEquals("[0, 5, 42, 300, 1000000]", entries(list).keySet().toString());
+	}
+
+	@Test
+	void appendsAfterAnOutOfOrderPut() {
+		PostingList list = new PostingList();
+
+		list.put(10, 1);
+		list.put(3, 1);
+		list.put(11, 4);
+
+		assertEquals("{3=1, 10=1, 11=4}", entries(list).toString());
+	}
+
+	@Test
+	void removeDownToAnEmptyList() {
+		PostingList list = new PostingList();
+
+		list.put(1, 1);
+		list.put(2, 2);
+		list.put(130, 3);
+
+		list.remove(2);
+		assertEquals("{1=1, 130=3}", entries(list).toString());
+
+		/* Removing a project that is not there changes nothing. */
+		list.remove(7);
+		assertEquals(2, list.count());
+
+		list.remove(130);
+		list.remove(1);
+
+		assertEquals(0, list.count());
+		assertEquals(0, list.byteSize());
+		assertFalse(list.cursor().next());
+
+		/* An emptied list starts again from the first ID. */
+		list.put(4, 1);
+		assertEquals("{4=1}", entries(list).toString());
+	}
+
+	private static Map<Integer, Integer> entries(PostingList list) {
+		Map<Integer, Integer> entries = new LinkedHashMap<>();
+		PostingList.Cursor cursor = list.cursor();
+
+		while (cursor.next()) {
+			entries.put(cursor.projectId, cursor.frequency);
+		}
+
+		return entries;
+	}
+}
@@ -0,0 +1,89 @@
+package projects.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Material;
+import projects.entity.Project;
+
+class PrefixIndexTest {
+	@Test
+	void renameKeepsMaterialNames() {
+		PrefixIndex index = PrefixIndex.build(List.of(project(1, "Bookshelf", "Birch plywood", "Brass hinge")));
+
+		index.rename(1, "Bench");
+
+		assertEquals(List.of("PROJECT Bench [1]", "MATERIAL Birch plywood [1]", "MATERIAL Brass hinge [1]"),
+				describe(index.suggest("b", 10)));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	void removeDropsMaterialNames() {
+		PrefixIndex index = PrefixIndex.build(List.of(project(1, "Bookshelf", "Birch plywood"),
+				project(2, "Birdhouse", "Birch plywood")));
+
+		index.remove(1);
+
+		assertEquals(List.of("MATERIAL Birch plywood [2]", "PROJECT Birdhouse [2]"), describe(index.suggest("bi", 10)));
+		assertTrue(index.suggest("book", 10).isEmpty());
+	}
+
+	@Test
+	void duplicateNamesAreGroupedProjectsFirst() {
+		PrefixIndex index = PrefixIndex.build(List.of(project(3, "Oak table", "Oak table", "Oak board"),
+				project(1, "Oak table", "Oak board"), project(2, "Pine table", "Oak board")));
+
+		assertEquals(List.of("MATERIAL Oak board [1, 2, 3]", "PROJECT Oak table [1, 3]", "MATERIAL Oak table [3]"),
+				describe(index.suggest("oak", 10)));
+	}
+
+	@Test
+	void ignoresCaseAndLeadingBlanks() {
+		PrefixIndex index = PrefixIndex.build(List.of(project(1, "  Walnut Desk", "walnut oil"),
+				project(2, "WALNUT desk")));
+
+		List<Suggestion> suggestions = index.suggest("   wALnut d", 10);
+
+		/* Both spellings share a key; the group shows the name it met first. */
+		assertEquals(1, suggestions.size());
+		assertEquals(List.of(1, 2), suggestions.get(0).getProjectIds());
+		assertEquals("Walnut Desk", suggestions.get(0).getName());
+		assertEquals(2, index.suggest(" WALNUT", 10).size());
+	}
+
+	@Test
+	void limitCountsGroups() {
+		PrefixIndex index = PrefixIndex.build(List.of(project(1, "Cedar chest", "Cedar board"),
+				project(2, "Cedar chest", "Cedar oil"), project(3, "Cedar planter")));
+
+		assertEquals(List.of("MATERIAL Cedar board [1]", "PROJECT Cedar chest [1, 2]"),
+				describe(index.suggest("cedar", 2)));
+		assertTrue(index.suggest("cedar", 0).isEmpty());
+		assertTrue(index.suggest("  ", 10).isEmpty());
+	}
+
+	private static Project project(int projectId, String name, String... materialNames) {
+		Project project = new Project();
+		project.setProjectId(projectId);
+		project.setProjectName(name);
+
+		for (String materialName : materialNames) {
+			Material material = new Material();
+			material.setMaterialName(materialName);
+			project.getMaterials().add(material);
+		}
+
+		return project;
+	}
+
+	private static List<String> describe(List<Suggestion> suggestions) {
+		return suggestions.stream()
+				.map(suggestion -> suggestion.getKind() + " " + suggestion.getName() + " " + suggestion.getProjectIds())
+				.toList();
+	}
+}
@@ -0,0 +1,86 @@
+package projects.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Project;
+import projects.entity.Step;
+
+class ProjectSearchIndexTest {
+	@Test
+	void ranksMoreOccurrencesInShorterTextFirst() {
+		ProjectSearchIndex index = ProjectSearchIndex.build(List.of(
+				project(1, "Long", "oak table with chair bench stool lamp shelf"),
+				project(2, "Dense", "oak oak oak"),
+				project(3, "Other", "pine shelf")));
+
+		assertEquals(List.of(2, 1), ids(index.search("oak", 10)));
+	}
+
+	@Test
+	void ranksProjectsWithMoreOfTheWordsFirst() {
+		ProjectSearchIndex index = ProjectSearchIndex.build(List.of(
+				project(1, "Oak", "oak"),
+				project(2, "Both", "oak walnut"),
+				project(3, "Walnut", "walnut"),
+				project(4, "Filler", "pine")));
+
+		List<SearchHit> hits = index.search("Walnut OAK", 10);
+
+		assertEquals(2, hits.get(0).getProjectId());
+		assertEquals(3, hits.size());
+		assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+	}
+
+	@Test
+	void rareWordsOutrankCommonOnes() {
+		ProjectSearchIndex index = ProjectSearchIndex.build(List.of(
+				project(1, "Common", "glue"),
+				project(2, "Common too", "glue"),
+				project(3, "Rare", "dovetail"),
+				project(4, "Common again", "glue")));
+
+		assertEquals(4, index.search("glue dovetail", 10).size());
+		assertEquals(3, ids(index.search("glue dovetail", 10)).get(0));
+		assertEquals(List.of(3), ids(index.search("glue dovetail", 1)));
+	}
+
+	@Test
+	void stepsAreSearchedAndChangesApplied() {
+		Project withStep = project(1, "Stepped", null);
+		Step step = new Step();
+		step.setStepText("Sand the edges");
+		withStep.getSteps().add(step);
+
+		ProjectSearchIndex index = ProjectSearchIndex.build(List.of(withStep, project(2, "Plain", "paint")));
+
+		assertEquals(List.of(1), ids(index.search("sand", 10)));
+
+		Project changes = new Project();
+		changes.setProjectId(2);
+		changes.setNotes("sand and paint");
+		index.update(changes);
+
+		assertEquals(2, ids(index.search("sand", 10)).size());
+
+		index.remove(1);
+		assertEquals(List.of(2), ids(index.search("sand", 10)));
+		assertEquals(1, index.size());
+	}
+
+	private static Project project(int projectId, String name, String notes) {
+		Project project = new Project();
+		project.setProjectId(projectId);
+		project.setProjectName(name);
+		project.setNotes(notes);
+		return project;
+	}
+
+	private static List<Integer> ids(List<SearchHit> hits) {
+		return hits.stream().map(SearchHit::getProjectId).toList();
+	}
+}
@@ -0,0 +1,88 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.Deadline;
+import projects.dao.ProjectDao;
+import projects.dao.TestDatabase;
+import projects.entity.Project;
+
+class ProjectBatchLoaderTest {
+	private final ProjectDao projectDao = new ProjectDao(null);
+
+	@BeforeEach
+	void resetSchema() {
+		TestDatabase.reset();
+	}
+
+	@Test
+	void loadAfterCloseIsRefused() {
+		Integer projectId = insert("Closed");
+		ProjectBatchLoader loader = newLoader();
+
+		assertEquals("Closed", loader.load(projectId, Deadline.NONE).orElseThrow().getProjectName());
+		loader.close();
+
+		assertThrows(IllegalStateException.class, () -> loader.load(projectId, Deadline.NONE));
+	}
+
+	@Test
+	void loadsRacingCloseAllFinish() throws Exception {
+		Integer projectId = insert("Racing");
+
+		for (int round = 0; round < 20; round++) {
+			ProjectBatchLoader loader = newLoader();
+			ExecutorService callers = Executors.newFixedThreadPool(8);
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Boolean>> results = new ArrayList<>();
+
+			for (int i = 0; i < 32; i++) {
+				results.add(callers.submit(() -> {
+					start.await();
+
+					try {
+						return loader.load(projectId, Deadline.NONE).isPresent();
+					} catch (IllegalStateException e) {
+						return true;
+					}
+				}));
+			}
+
+			start.countDown();
+			loader.close();
+
+			/* A lookup queued after the final drain would never finish. */
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				for (Future<Boolean> result : results) {
+					assertTrue(result.get());
+				}
+			});
+
+			callers.shutdown();
+		}
+	}
+
+	private ProjectBatchLoader newLoader() {
+		return new ProjectBatchLoader(projectDao, Duration.ofMillis(1), 4, project -> project);
+	}
+
+	private Integer insert(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		return projectDao.insertProject(project).getProjectId();
+	}
+}
@@ -0,0 +1,120 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.Deadline;
+import projects.dao.ProjectDao;
+import projects.dao.TestDatabase;
+import projects.entity.Project;
+import projects.entity.WorkLogEntry;
+import projects.exception.DbException;
+
+class WorkLogWriterTest {
+	private final ProjectDao projectDao = new ProjectDao(null);
+
+	@BeforeEach
+	void resetSchema() {
+		TestDatabase.reset();
+	}
+
+	@Test
+	void entryTheDatabaseRejectsFailsOnlyItsCaller() throws Exception {
+		/* Another 10 hours overflow the DECIMAL(7,2) actual_hours of this project. */
+		Integer full = insert("Full", new BigDecimal("99995.00"));
+		Integer open = insert("Open", null);
+
+		try (WorkLogWriter writer = new WorkLogWriter(projectDao, 16)) {
+			ExecutorService callers = Executors.newFixedThreadPool(8);
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<WorkLogEntry>> good = new ArrayList<>();
+
+			Future<WorkLogEntry> bad = callers.submit(() -> {
+				start.await();
+				return writer.append(entry(full, "10"), Deadline.NONE);
+			});
+
+			for (int i = 0; i < 7; i++) {
+				good.add(callers.submit(() -> {
+					start.await();
+					return writer.append(entry(open, "1.5"), Deadline.NONE);
+				}));
+			}
+
+			start.countDown();
+
+			ExecutionException failure = assertThrows(ExecutionException.class, bad::get);
+			assertEquals(DbException.class, failure.getCause().getClass());
+
+			for (Future<WorkLogEntry> result : good) {
+				result.get();
+			}
+
+			callers.shutdown();
+		}
+
+		assertEquals(0, new BigDecimal("10.50").compareTo(actualHours(open)));
+		assertEquals(0, new BigDecimal("99995.00").compareTo(actualHours(full)));
+	}
+
+	@Test
+	void invalidEntryIsRejectedBeforeItJoinsAGroup() {
+		Integer projectId = insert("Checked", null);
+
+		try (WorkLogWriter writer = new WorkLogWriter(projectDao, 16)) {
+			assertThrows(IllegalArgumentException.class, () -> writer.append(entry(projectId, null), Deadline.NONE));
+			assertThrows(IllegalArgumentException.class, () -> writer.append(entry(null, "1"), Deadline.NONE));
+			assertThrows(IllegalArgumentException.class, () -> writer.append(entry(projectId, "100000"), Deadline.NONE));
+			assertEquals(0, writer.getCommits());
+		}
+	}
+
+	@Test
+	void editsNeitherConflictWithNorOverwriteLoggedHours() {
+		Project project = projectDao.fetchProjectById(insert("Logged", null)).orElseThrow();
+
+		try (WorkLogWriter writer = new WorkLogWriter(projectDao, 16)) {
+			writer.append(entry(project.getProjectId(), "2"), Deadline.NONE);
+		}
+
+		/* Logging leaves the version alone, so an edit made with the version read before still succeeds. */
+		project.setProjectName("Edited");
+		assertTrue(projectDao.modifyProjectDetails(project));
+
+		project.setActualHours(BigDecimal.ZERO);
+		assertThrows(DbException.class, () -> projectDao.modifyProjectDetails(project));
+		assertEquals(0, new BigDecimal("2.00").compareTo(actualHours(project.getProjectId())));
+	}
+
+	private Integer insert(String name, BigDecimal actualHours) {
+		Project project = new Project();
+		project.setProjectName(name);
+		project.setActualHours(actualHours);
+		return projectDao.insertProject(project).getProjectId();
+	}
+
+	private static WorkLogEntry entry(Integer projectId, String hours) {
+		WorkLogEntry entry = new WorkLogEntry();
+		entry.setProjectId(projectId);
+		entry.setHours(Objects.isNull(hours) ? null : new BigDecimal(hours));
+		return entry;
+	}
+
+	private BigDecimal actualHours(Integer projectId) {
+		return projectDao.fetchProjectById(projectId).orElseThrow().getActualHours();
+	}
+}
@@ -0,0 +1,137 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.ProjectDao;
+import projects.dao.TestDatabase;
+import projects.entity.Project;
+import projects.exception.OptimisticLockException;
+
+class WriteBehindBufferTest {
+	/* Long enough that only the test flushes. */
+	private static final Duration WINDOW = Duration.ofHours(1);
+
+	private final ProjectDao projectDao = new ProjectDao(null);
+	private final Map<Integer, RuntimeException> deadLetters = new LinkedHashMap<>();
+
+	@BeforeEach
+	void resetSchema() {
+		TestDatabase.reset();
+	}
+
+	@Test
+	void badUpdateIsGivenUpWithoutHoldingBackTheOthers() {
+		Integer bad = insert("Bad");
+		Integer good = insert("Good");
+
+		try (WriteBehindBuffer buffer = newBuffer(10)) {
+			buffer.submit(rename(bad, null));
+			buffer.submit(rename(good, "Renamed"));
+
+			assertThrows(RuntimeException.class, buffer::flush);
+			assertEquals("Renamed", name(good));
+			assertEquals(1, buffer.getPendingCount());
+			assertTrue(deadLetters.isEmpty());
+
+			assertThrows(RuntimeException.class, buffer::flush);
+			assertEquals(0, buffer.getPendingCount());
+			assertEquals(1, buffer.getDeadLetterCount());
+			assertTrue(deadLetters.containsKey(bad));
+		}
+	}
+
+	@Test
+	void fullBufferWithBadUpdateMakesRoomOnceItIsGivenUp() {
+		Integer bad = insert("Bad");
+		Integer good = insert("Good");
+
+		try (WriteBehindBuffer buffer = newBuffer(1)) {
+			buffer.submit(rename(bad, null));
+
+			/* The first flush keeps the bad update for another try, so there is no room yet. */
+			assertThrows(RuntimeException.class, () -> buffer.submit(rename(good, "Renamed")));
+
+			buffer.submit(rename(good, "Renamed"));
+			buffer.flush();
+		}
+
+		assertEquals("Renamed", name(good));
+		assertTrue(deadLetters.containsKey(bad));
+	}
+
+	@Test
+	void callerKeepsAVersionItCanUpdateWith() {
+		Project project = projectDao.fetchProjectById(insert("Versioned")).orElseThrow();
+
+		try (WriteBehindBuffer buffer = newBuffer(10)) {
+			project.setProjectName("First");
+			buffer.submit(project);
+			assertEquals(1, project.getVersion());
+
+			project.setProjectName("Second");
+			buffer.submit(project);
+			assertEquals(1, project.getVersion());
+
+			Project stale = rename(project.getProjectId(), "Stale");
+			stale.setVersion(5);
+			assertThrows(OptimisticLockException.class, () -> buffer.submit(stale));
+
+			buffer.flush();
+		}
+
+		project.setProjectName("Third");
+		assertTrue(projectDao.modifyProjectDetails(project));
+		assertEquals("Third", name(project.getProjectId()));
+	}
+
+	@Test
+	void conflictFoundWhenWrittenIsGivenUp() {
+		Project project = projectDao.fetchProjectById(insert("Versioned")).orElseThrow();
+		Project other = projectDao.fetchProjectById(project.getProjectId()).orElseThrow();
+
+		try (WriteBehindBuffer buffer = newBuffer(10)) {
+			project.setProjectName("Buffered");
+			buffer.submit(project);
+
+			other.setProjectName("Direct");
+			projectDao.modifyProjectDetails(other);
+
+			buffer.flush();
+		}
+
+		assertEquals("Direct", name(project.getProjectId()));
+		assertTrue(deadLetters.get(project.getProjectId()) instanceof OptimisticLockException);
+	}
+
+	private WriteBehindBuffer newBuffer(int maxPending) {
+		return new WriteBehindBuffer(projectDao, WINDOW, maxPending, 2,
+				(project, reason) -> deadLetters.put(project.getProjectId(), reason));
+	}
+
+	private Integer insert(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		return projectDao.insertProject(project).getProjectId();
+	}
+
+	private static Project rename(Integer projectId, String name) {
+		Project project = new Project();
+		project.setProjectId(projectId);
+		project.setProjectName(name);
+		project.markColumnDirty("project_name");
+		return project;
+	}
+
+	private String name(Integer projectId) {
+		return projectDao.fetchProjectById(projectId).orElseThrow().getProjectName();
+	}
+}